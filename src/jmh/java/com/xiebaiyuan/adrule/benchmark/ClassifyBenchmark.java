@@ -0,0 +1,109 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import cn.hutool.core.util.CharUtil;
+import com.xiebaiyuan.adrule.Util;
+import com.xiebaiyuan.adrule.classifier.RuleClassifier;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.pipeline.ByteLineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 清理、分类和拆分行，每次操作处理全部测试数据一遍
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifyBenchmark {
+
+    private String[] lines;
+
+    private byte[] content;
+
+    private RuleClassifier classifier;
+
+    @Setup
+    public void setup() {
+        lines = Fixtures.lines();
+        content = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+        classifier = RuleClassifier.getDefault();
+    }
+
+    @Benchmark
+    public void clearRule(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(Util.clearRule(line));
+        }
+    }
+
+    @Benchmark
+    public void classify(Blackhole bh) {
+        for (String line : lines) {
+            bh.consume(classifier.classify(line));
+        }
+    }
+
+    /**
+     * 逐行解码为字符串，原来的读取方式
+     */
+    @Benchmark
+    public void readLinesDecoded(Blackhole bh) throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bh.consume(line);
+            }
+        }
+    }
+
+    /**
+     * 在字节上拆分行，纯 ASCII 的注释直接拒绝，其余行才解码
+     */
+    @Benchmark
+    public void splitBytesQuickReject(Blackhole bh) throws Exception {
+        new ByteLineReader(new ByteArrayInputStream(content)).forEach((data, off, len) -> {
+            int from = off;
+            int to = off + len;
+            boolean ascii = true;
+            for (int i = from; i < to; i++) {
+                ascii &= data[i] >= 0;
+            }
+            while (from < to && CharUtil.isBlankChar(data[from])) {
+                from++;
+            }
+            while (to > from && CharUtil.isBlankChar(data[to - 1])) {
+                to--;
+            }
+            if (from == to) {
+                return;
+            }
+            RejectReason reason = ascii ? classifier.quickReject(data, from, to) : null;
+            if (reason != null) {
+                bh.consume(reason);
+            } else {
+                bh.consume(new String(data, off, len, StandardCharsets.UTF_8));
+            }
+        });
+    }
+}
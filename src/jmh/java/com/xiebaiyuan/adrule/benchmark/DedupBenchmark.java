@@ -0,0 +1,76 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.xiebaiyuan.adrule.dedup.RuleCanonicalizer;
+import com.xiebaiyuan.adrule.dedup.RuleDeduplicator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 去重：当前的精确去重与原来的布隆过滤器，每次操作从空表开始插入全部有效规则
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DedupBenchmark {
+
+    private String[] rules;
+
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+        rules = Fixtures.acceptedRules().toArray(new String[0]);
+        keys = Arrays.stream(rules).map(RuleCanonicalizer::key).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void canonicalize(Blackhole bh) {
+        for (String rule : rules) {
+            bh.consume(RuleCanonicalizer.parse(rule));
+        }
+    }
+
+    @Benchmark
+    public long exact() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        for (String key : keys) {
+            deduplicator.add(key);
+        }
+        return deduplicator.size();
+    }
+
+    /**
+     * 原实现：容量 100 万、误判率 1% 的布隆过滤器
+     */
+    @Benchmark
+    public long bloomFilter() {
+        BloomFilter<String> filter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), 1000000, 0.01);
+        long added = 0;
+        for (String key : keys) {
+            if (filter.put(key)) {
+                added++;
+            }
+        }
+        return added;
+    }
+}
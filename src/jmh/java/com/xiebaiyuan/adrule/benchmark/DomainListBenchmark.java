@@ -0,0 +1,62 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.xiebaiyuan.adrule.DomainListExtractor;
+import com.xiebaiyuan.adrule.classifier.RuleClassifier;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 从 domain.txt 提取域名黑白名单
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomainListBenchmark {
+
+    private File dir;
+
+    @Setup
+    public void setup() throws IOException {
+        RuleClassifier classifier = RuleClassifier.getDefault();
+        List<String> domains = Arrays.stream(Fixtures.lines())
+                .filter(line -> classifier.classify(line).getType() == RuleType.DOMAIN)
+                .collect(Collectors.toList());
+        dir = Files.createTempDirectory("adrule-domain").toFile();
+        Files.write(new File(dir, "domain.txt").toPath(), domains, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.del(dir);
+    }
+
+    @Benchmark
+    public void extractDomainLists() {
+        DomainListExtractor.extractDomainLists(dir.getPath());
+    }
+}
@@ -0,0 +1,108 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.thread.ExecutorBuilder;
+import com.xiebaiyuan.adrule.RuleBuild;
+import com.xiebaiyuan.adrule.config.JunkConfig;
+import com.xiebaiyuan.adrule.config.OutputConfig;
+import com.xiebaiyuan.adrule.config.PipelineConfig;
+import com.xiebaiyuan.adrule.config.RegexConfig;
+import com.xiebaiyuan.adrule.config.RuleConfig;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 端到端：以 rule/ 中的规则文件作为本地规则源，运行与应用相同的 {@link RuleBuild} 阶段图，
+ * 生成与默认配置相同的输出文件、域名列表和运行报告
+ * <p>
+ * 每次运行使用新的快照目录，不会命中上次的解析快照。
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private List<String> sources;
+
+    private File dir;
+
+    private ThreadPoolExecutor executor;
+
+    @Setup
+    public void setup() throws IOException {
+        sources = Fixtures.files().stream().map(File::getAbsolutePath).collect(Collectors.toList());
+        dir = Files.createTempDirectory("adrule-e2e").toFile();
+        int n = Runtime.getRuntime().availableProcessors();
+        executor = ExecutorBuilder.create()
+                .setCorePoolSize(2 * n)
+                .setMaxPoolSize(2 * n)
+                .setHandler(new ThreadPoolExecutor.CallerRunsPolicy())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+        FileUtil.del(dir);
+    }
+
+    @Benchmark
+    public int build() throws Exception {
+        File out = new File(dir, "rule");
+        RuleConfig ruleConfig = new RuleConfig();
+        ruleConfig.setRemote(Collections.emptyList());
+        ruleConfig.setLocal(sources);
+        OutputConfig outputConfig = new OutputConfig();
+        outputConfig.setPath(out.getPath());
+        Map<String, List<RuleType>> files = new LinkedHashMap<>();
+        files.put("all.txt", List.of(RuleType.values()));
+        files.put("adgh.txt", List.of(RuleType.DOMAIN, RuleType.REGEX));
+        files.put("hosts.txt", List.of(RuleType.HOSTS));
+        files.put("regex.txt", List.of(RuleType.REGEX));
+        files.put("domain.txt", List.of(RuleType.DOMAIN));
+        files.put("modify.txt", List.of(RuleType.MODIFY));
+        outputConfig.setFiles(files);
+
+        int exitCode = RuleBuild.builder()
+                .ruleConfig(ruleConfig)
+                .outputConfig(outputConfig)
+                .junkConfig(new JunkConfig())
+                .pipelineConfig(new PipelineConfig())
+                .regexConfig(new RegexConfig())
+                .executor(executor)
+                .ruleDir(out.getPath())
+                .snapshotDir(new File(dir, "snapshot-" + System.nanoTime()))
+                .build()
+                .run();
+        if (exitCode != 0) {
+            throw new IllegalStateException("Build failed with exit code " + exitCode);
+        }
+        return exitCode;
+    }
+}
@@ -0,0 +1,76 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.xiebaiyuan.adrule.model.RuleStats;
+import com.xiebaiyuan.adrule.output.RuleFileFinalizer;
+import com.xiebaiyuan.adrule.output.RuleFileWriter;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 输出文件：写入线程写临时正文，再排序、加文件头并替换正式文件
+ * <p>
+ * 取代原来的 {@code Util.write} 与 {@code updateFileHeader}
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FinalizeBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private List<String> rules;
+
+    private RuleStats stats;
+
+    private File dir;
+
+    @Setup
+    public void setup() throws IOException {
+        rules = Fixtures.acceptedRules();
+        RuleStatsCollector collector = new RuleStatsCollector();
+        collector.start(Collections.singletonList(Fixtures.DIR));
+        stats = collector.build();
+        dir = Files.createTempDirectory("adrule-finalize").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.del(dir);
+    }
+
+    @Benchmark
+    public long writeAndFinalize() throws IOException, InterruptedException {
+        RuleFileWriter writer = new RuleFileWriter(new File(dir, "all.txt"), 64, new LatencyHistogram());
+        writer.start();
+        for (int i = 0; i < rules.size(); i += BATCH_SIZE) {
+            writer.submit(rules.subList(i, Math.min(rules.size(), i + BATCH_SIZE)));
+        }
+        writer.close();
+        new RuleFileFinalizer(writer, stats, Collections.emptySet(), 256L << 20).run();
+        return writer.getWritten();
+    }
+}
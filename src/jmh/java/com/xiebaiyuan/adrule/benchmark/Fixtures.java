@@ -0,0 +1,85 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.LineHandler;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.Constant;
+import com.xiebaiyuan.adrule.classifier.RuleClassifier;
+import com.xiebaiyuan.adrule.model.Classification;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 基准测试数据，使用仓库中 rule/ 目录下已提交的规则文件
+ * <p>
+ * 可以通过 -Dbenchmark.rules=目录 指定其他目录
+ *
+ * @author xiebaiyuan
+ */
+final class Fixtures {
+
+    static final String DIR = System.getProperty("benchmark.rules", Constant.LOCAL_RULE_SUFFIX);
+
+    private static final List<String> FILES = Arrays.asList(
+            "hosts.txt", "regex.txt", "filtered-http-regex.txt", "mylist.txt", "domain_allow.txt");
+
+    static {
+        // 不经过 Spring 时 logback 使用默认配置输出 DEBUG，基准测试中只保留警告
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    private Fixtures() {
+    }
+
+    /**
+     * @return 存在的规则文件
+     */
+    static List<File> files() {
+        List<File> files = FILES.stream()
+                .map(name -> FileUtil.file(DIR, name))
+                .filter(File::isFile)
+                .collect(Collectors.toList());
+        if (files.isEmpty()) {
+            throw new IllegalStateException("No rule fixtures found in " + DIR);
+        }
+        return files;
+    }
+
+    /**
+     * @return 所有规则文件的非空行
+     */
+    static String[] lines() {
+        List<String> lines = new ArrayList<>();
+        for (File file : files()) {
+            FileUtil.readLines(file, StandardCharsets.UTF_8, (LineHandler) line -> {
+                if (StrUtil.isNotBlank(line)) {
+                    lines.add(line);
+                }
+            });
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * @return 分类为有效规则的原始行
+     */
+    static List<String> acceptedRules() {
+        RuleClassifier classifier = RuleClassifier.getDefault();
+        List<String> rules = new ArrayList<>();
+        for (String line : lines()) {
+            Classification result = classifier.classify(line);
+            if (result.getType() != null) {
+                rules.add(line);
+            }
+        }
+        return rules;
+    }
+}
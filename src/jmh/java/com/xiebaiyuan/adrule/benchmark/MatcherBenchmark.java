@@ -0,0 +1,111 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import com.xiebaiyuan.adrule.dedup.RuleCanonicalizer;
+import com.xiebaiyuan.adrule.matcher.RuleMatcher;
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 规则匹配器的查询吞吐，单位为每秒查询数
+ * <p>
+ * 查询混合：四分之一是规则中的域名，其中一半加上 www. 等子域名前缀，其余是随机生成的普通域名，
+ * 大多数查询不命中任何规则，与解析器上的实际分布接近。{@code lookup} 为单核吞吐，
+ * {@code lookupAllCores} 在每个核上各跑一个线程，除以核数即为多线程下的单核吞吐。
+ * 配合 -prof gc 检查每次查询的分配量。
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    private static final String[] SUBDOMAINS = {"www.", "cdn.", "api.", "m.", "static."};
+
+    private static final String[] TLDS = {"com", "net", "org", "cn", "io", "com.cn", "co.uk"};
+
+    private static final String LABEL_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    private RuleMatcher matcher;
+
+    private String[] queries;
+
+    @Setup
+    public void setup() {
+        List<String> rules = Fixtures.acceptedRules();
+        matcher = RuleMatcher.builder().addAll(rules).build();
+
+        List<String> domains = rules.stream()
+                .map(RuleCanonicalizer::parse)
+                .filter(Objects::nonNull)
+                .map(CanonicalRule::getDomain)
+                .distinct()
+                .collect(Collectors.toList());
+        Random random = new Random(20240601L);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            if (!domains.isEmpty() && random.nextInt(4) == 0) {
+                String domain = domains.get(random.nextInt(domains.size()));
+                queries[i] = random.nextBoolean() ? SUBDOMAINS[random.nextInt(SUBDOMAINS.length)] + domain : domain;
+            } else {
+                queries[i] = randomHost(random);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void lookup(Blackhole bh) {
+        for (String query : queries) {
+            bh.consume(matcher.match(query));
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OperationsPerInvocation(QUERIES)
+    public void lookupAllCores(Blackhole bh) {
+        for (String query : queries) {
+            bh.consume(matcher.match(query));
+        }
+    }
+
+    private static String randomHost(Random random) {
+        List<String> labels = new ArrayList<>();
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            StringBuilder label = new StringBuilder();
+            int length = 2 + random.nextInt(i == 0 ? 12 : 8);
+            for (int j = 0; j < length; j++) {
+                label.append(LABEL_CHARS.charAt(random.nextInt(LABEL_CHARS.length())));
+            }
+            labels.add(label.toString());
+        }
+        labels.add(TLDS[random.nextInt(TLDS.length)]);
+        return String.join(".", labels);
+    }
+}
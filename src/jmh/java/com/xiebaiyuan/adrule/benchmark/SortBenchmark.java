@@ -0,0 +1,84 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import cn.hutool.core.io.FileUtil;
+import com.xiebaiyuan.adrule.Util;
+import com.xiebaiyuan.adrule.output.ExternalSorter;
+import com.xiebaiyuan.adrule.output.RuleOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 规则排序：内存中排序，以及输出文件使用的外部排序
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBenchmark {
+
+    /**
+     * 外部排序的内存预算，字节，较小的值会产生多个临时顺串
+     */
+    @Param({"268435456", "1048576"})
+    private long sortMemory;
+
+    private List<String> rules;
+
+    private Path dir;
+
+    private Path body;
+
+    @Setup
+    public void setup() throws IOException {
+        rules = Fixtures.acceptedRules();
+        Collections.shuffle(rules, new Random(42));
+        dir = Files.createTempDirectory("adrule-sort");
+        body = dir.resolve("body.txt");
+        Files.write(body, rules, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.del(dir.toFile());
+    }
+
+    @Benchmark
+    public List<String> sortRules() {
+        List<String> copy = new ArrayList<>(rules);
+        Util.sortRules(copy);
+        return copy;
+    }
+
+    @Benchmark
+    public long externalSort() throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(body, StandardCharsets.UTF_8)) {
+            return new ExternalSorter(RuleOrder.COMPARATOR, sortMemory, dir)
+                    .sort(in, line -> true, dir.resolve("sorted.txt"));
+        }
+    }
+}
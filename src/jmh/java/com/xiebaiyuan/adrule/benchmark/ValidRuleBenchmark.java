@@ -0,0 +1,55 @@
+package com.xiebaiyuan.adrule.benchmark;
+
+import com.xiebaiyuan.adrule.Util;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按类型判断清理后的规则，每次操作处理全部测试数据一遍
+ *
+ * @author xiebaiyuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidRuleBenchmark {
+
+    @Param({"DOMAIN", "REGEX", "HOSTS", "MODIFY"})
+    private RuleType type;
+
+    private String[] rules;
+
+    @Setup
+    public void setup() {
+        rules = Arrays.stream(Fixtures.lines())
+                .map(Util::clearRule)
+                .filter(Objects::nonNull)
+                .filter(rule -> !rule.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void validRule(Blackhole bh) {
+        for (String rule : rules) {
+            bh.consume(Util.validRule(rule, type));
+        }
+    }
+}
@@ -1,23 +1,18 @@
 package com.xiebaiyuan.adrule;
 
-import cn.hutool.core.date.DateUtil;
-import cn.hutool.core.date.TimeInterval;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.thread.ExecutorBuilder;
-import cn.hutool.core.thread.ThreadUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.core.util.URLUtil;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.xiebaiyuan.adrule.config.DnsConfig;
+import com.xiebaiyuan.adrule.config.JunkConfig;
 import com.xiebaiyuan.adrule.config.OutputConfig;
+import com.xiebaiyuan.adrule.config.PipelineConfig;
+import com.xiebaiyuan.adrule.config.RegexConfig;
 import com.xiebaiyuan.adrule.config.RuleConfig;
-import com.xiebaiyuan.adrule.enums.RuleType;
-import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
-import com.xiebaiyuan.adrule.thread.LocalRuleThread;
-import com.xiebaiyuan.adrule.thread.RemoteRuleThread;
+import com.xiebaiyuan.adrule.dns.DnsServer;
+import com.xiebaiyuan.adrule.fetch.FetchCache;
+import com.xiebaiyuan.adrule.matcher.RuleMatcher;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
@@ -25,11 +20,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
 import java.util.concurrent.ThreadPoolExecutor;
 
 @Slf4j
@@ -44,80 +35,73 @@ public class AdgRuleApplication implements ApplicationRunner {
 
     private final OutputConfig outputConfig;
 
+    private final JunkConfig junkConfig;
+
+    private final PipelineConfig pipelineConfig;
+
+    private final RegexConfig regexConfig;
+
+    private final DnsConfig dnsConfig;
+
     private final ThreadPoolExecutor executor = ExecutorBuilder.create()
             .setCorePoolSize(2 * N)
             .setMaxPoolSize(2 * N)
             .setHandler(new ThreadPoolExecutor.CallerRunsPolicy())
             .build();
 
+    /** 定期重新构建时复用同一个 HTTP 客户端，保留到上游的连接 */
+    private final FetchCache fetchCache = new FetchCache(new File(Constant.FETCH_CACHE_DIR),
+            Constant.FETCH_TIMEOUT, Constant.FETCH_BODY_TIMEOUT, Constant.FETCH_MAX_PER_HOST);
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
-        TimeInterval interval = DateUtil.timer();
-
-        // 初始化统计收集器
-        RuleStatsCollector statsCollector = new RuleStatsCollector();
-        
-        // 收集所有规则源
-        List<String> allSources = new ArrayList<>();
-        allSources.addAll(ruleConfig.getRemote());
-        allSources.addAll(ruleConfig.getLocal());
-        
-        // 开始统计
-        statsCollector.start(allSources);
-
-        // Initialize and create files based on configuration
-        final Map<RuleType, Set<File>> typeFileMap = MapUtil.newHashMap();
-        if (!outputConfig.getFiles().isEmpty()) {
-            outputConfig.getFiles().forEach((fileName, types) -> {
-                File file = Util.createFile(outputConfig.getPath() + File.separator + fileName);
-                types.forEach(type -> Util.safePut(typeFileMap, type, Util.createFile(file)));
-            });
+        int exitCode = build();
+        if (!dnsConfig.isEnabled() || exitCode != 0) {
+            System.exit(exitCode);
         }
+        serve();
+    }
+
+    /**
+     * 生成一次规则
+     *
+     * @return 退出码，0 为成功
+     */
+    private int build() throws Exception {
+        return RuleBuild.builder()
+                .ruleConfig(ruleConfig)
+                .outputConfig(outputConfig)
+                .junkConfig(junkConfig)
+                .pipelineConfig(pipelineConfig)
+                .regexConfig(regexConfig)
+                .executor(executor)
+                .fetchCache(fetchCache)
+                .build()
+                .run();
+    }
+
+    /**
+     * 用生成的规则启动本地 DNS 服务，配置了重新构建间隔时定期重新生成并替换规则
+     */
+    private void serve() throws Exception {
+        File[] ruleFiles = dnsConfig.getRules().stream()
+                .map(name -> FileUtil.file(outputConfig.getPath(), name))
+                .toArray(File[]::new);
+        DnsServer server = new DnsServer(dnsConfig, RuleMatcher.load(ruleFiles),
+                FileUtil.file(outputConfig.getPath(), Constant.DNS_REPORT_FILE));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
 
-        // Use Bloom filter for deduplication
-        BloomFilter<String> filter = BloomFilter
-                .create(Funnels.stringFunnel(Charset.defaultCharset()),
-                        1000000,    // Actual about 200k, reserve 2.5x space
-                        0.01);
-
-        // Remote rules
-        ruleConfig.getRemote().stream()
-                .filter(StrUtil::isNotBlank)
-                .map(URLUtil::normalize)
-                .forEach(e -> executor.execute(new RemoteRuleThread(e, typeFileMap, filter, statsCollector)));
-        // Local rules
-        ruleConfig.getLocal().stream()
-                .filter(StrUtil::isNotBlank)
-                .map(e -> {
-                    e = FileUtil.normalize(e);
-                    if (FileUtil.isAbsolutePath(e)) {
-                        return e;
-                    }
-                    return FileUtil.normalize(Constant.LOCAL_RULE_SUFFIX + File.separator + e);
-                })
-                .forEach(e -> executor.execute(new LocalRuleThread(e, typeFileMap, filter, statsCollector)));
-
-        while (true) {
-            if (executor.getActiveCount() > 0) {
-                ThreadUtil.safeSleep(1000);
+        Duration rebuild = dnsConfig.getRebuildInterval();
+        while (rebuild.isPositive()) {
+            Thread.sleep(rebuild.toMillis());
+            if (build() == 0) {
+                server.swap(RuleMatcher.load(ruleFiles));
             } else {
-                // 结束统计
-                statsCollector.finish();
-                
-                // 更新所有文件的头部信息
-                typeFileMap.values().stream()
-                    .flatMap(Set::stream)
-                    .forEach(file -> Util.updateFileHeader(file, statsCollector.build()));
-                
-                // 提取域名列表
-                log.info("开始提取域名黑白名单...");
-                DomainListExtractor.extractDomainLists();
-                
-                log.info("Done! {} ms", interval.intervalMs());
-                System.exit(0);
+                log.warn("Rebuild failed, keep serving the previous rules");
             }
         }
+        server.awaitClose();
     }
 
     public static void main(String[] args) {
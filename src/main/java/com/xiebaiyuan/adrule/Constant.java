@@ -39,11 +39,13 @@ public class Constant {
             "# Hosts Rules: {} rules                                          #\r\n" +
             "# Modifier Rules: {} rules                                       #\r\n" +
             "# AdGuardHome Rules: {} rules                                     #\r\n" +
+            "# Duplicate Rules: {} rules                                      #\r\n" +
+            "# Subsumed Rules: {} rules                                       #\r\n" +
             "# Deduplication Rate: {}%                                        #\r\n" +
             "# Current File: {} ({} rules)                                     #\r\n" +
             "#                                                                              #\r\n" +
             "# 🔧 Technical Features                                                       #\r\n" +
-            "# ✓ Bloom Filter Deduplication                                                #\r\n" +
+            "# ✓ Exact Fingerprint Deduplication                                           #\r\n" +
             "# ✓ Multi-threaded Processing                                                 #\r\n" +
             "# ✓ Intelligent Rule Classification                                           #\r\n" +
             "# ✓ Memory Optimized Algorithm                                                #\r\n" +
@@ -76,6 +78,42 @@ public class Constant {
 
     public static final String LOCAL_RULE_SUFFIX = ROOT_PATH + File.separator + "rule";
 
+    /**
+     * Remote rule cache directory, stores response bodies with their ETag / Last-Modified
+     */
+    public static final String FETCH_CACHE_DIR = ROOT_PATH + File.separator + ".cache" + File.separator + "fetch";
+
+    /**
+     * Parsed-result snapshot directory, one snapshot per rule source
+     */
+    public static final String SNAPSHOT_DIR = ROOT_PATH + File.separator + ".cache" + File.separator + "snapshot";
+
+    /**
+     * Per-run report written next to the output files: fetch, parse and stage timings plus per-source counts
+     */
+    public static final String RUN_REPORT_FILE = "run-report.json";
+
+    /**
+     * DNS server statistics written next to the output files while the server mode is running
+     */
+    public static final String DNS_REPORT_FILE = "dns-report.json";
+
+    /**
+     * Remote rule request timeout (ms), also the longest gap between two reads of a response body
+     */
+    public static final int FETCH_TIMEOUT = 20000;
+
+    /**
+     * Deadline for reading a whole response body (ms), a download still running after it is cut off
+     * and the previous cached body is parsed instead
+     */
+    public static final int FETCH_BODY_TIMEOUT = 300000;
+
+    /**
+     * Maximum concurrent requests per upstream host, HTTP/2 multiplexes them over one connection
+     */
+    public static final int FETCH_MAX_PER_HOST = 8;
+
     /**
      * Basic validity check regex: 
      * - lines starting with !
@@ -145,4 +183,29 @@ public class Constant {
      */
     public static final String CODE_FRAGMENT_REGEX = "function\\s+\\w+\\s*\\(|\\breturn\\s+|\\bconsole\\.log|\\bvar\\s+|\\blet\\s+|\\bconst\\s+|\\bif\\s*\\(|\\belse\\s*\\{|\\bfor\\s*\\(|\\bwhile\\s*\\(|<\\/script>|<\\/div>|<\\/body>|<\\/html>|xhr\\.send\\(\\)|pageOptions|\\];?\\s*$";
 
+    /**
+     * Default junk keywords checked while cleaning, any line containing one of them is dropped.
+     * Overridable via application.junk.keywords
+     */
+    public static final String[] JUNK_KEYWORDS = new String[] {
+        "购买该域名", "More domains", "Seo.Domains", "Copyright", "JSON.parse", "arguments.push"
+    };
+
+    /**
+     * Default junk keywords checked while classifying, a cleaned rule containing one of them
+     * is not accepted as any rule type. Overridable via application.junk.rule-keywords
+     */
+    public static final String[] RULE_JUNK_KEYWORDS = new String[] {
+        "function", "return", "console.", "Copyright", "pageOptions", "xhr.send",
+        "Rights Reserved", "Privacy Policy", "购买该域名", "More domains", "Seo.Domains"
+    };
+
+    /**
+     * Default junk patterns checked while cleaning, as {trigger keyword, full-line regex} pairs.
+     * The regex is only evaluated when the trigger keyword is present. Overridable via application.junk.patterns
+     */
+    public static final String[][] JUNK_PATTERNS = new String[][] {
+        {"©", ".*©.*\\d{4}.*"}
+    };
+
 }
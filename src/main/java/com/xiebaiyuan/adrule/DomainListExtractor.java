@@ -28,13 +28,22 @@ public class DomainListExtractor {
      * 从domain.txt中提取拦截列表和白名单列表
      */
     public static void extractDomainLists() {
+        extractDomainLists(Constant.LOCAL_RULE_SUFFIX);
+    }
+
+    /**
+     * 从指定目录的domain.txt中提取拦截列表和白名单列表，结果写入同一目录
+     *
+     * @param dir 规则目录
+     */
+    public static void extractDomainLists(String dir) {
         try {
             log.info("开始提取域名列表...");
             long startTime = System.currentTimeMillis();
 
-            String domainFilePath = Constant.LOCAL_RULE_SUFFIX + File.separator + DOMAIN_FILENAME;
-            String denyFilePath = Constant.LOCAL_RULE_SUFFIX + File.separator + DOMAIN_DENY_FILENAME;
-            String allowFilePath = Constant.LOCAL_RULE_SUFFIX + File.separator + DOMAIN_ALLOW_FILENAME;
+            String domainFilePath = dir + File.separator + DOMAIN_FILENAME;
+            String denyFilePath = dir + File.separator + DOMAIN_DENY_FILENAME;
+            String allowFilePath = dir + File.separator + DOMAIN_ALLOW_FILENAME;
 
             // 确保源文件存在
             Path domainPath = Paths.get(domainFilePath);
@@ -0,0 +1,361 @@
+package com.xiebaiyuan.adrule;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.TimeInterval;
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.core.util.URLUtil;
+import cn.hutool.json.JSONUtil;
+import com.google.common.collect.Sets;
+import com.xiebaiyuan.adrule.classifier.JunkFilter;
+import com.xiebaiyuan.adrule.classifier.RuleClassifier;
+import com.xiebaiyuan.adrule.config.JunkConfig;
+import com.xiebaiyuan.adrule.config.OutputConfig;
+import com.xiebaiyuan.adrule.config.PipelineConfig;
+import com.xiebaiyuan.adrule.config.RegexConfig;
+import com.xiebaiyuan.adrule.config.RuleConfig;
+import com.xiebaiyuan.adrule.dedup.RuleDeduplicator;
+import com.xiebaiyuan.adrule.diagnostic.DiagnosticSinks;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.fetch.FetchCache;
+import com.xiebaiyuan.adrule.fetch.SourceContent;
+import com.xiebaiyuan.adrule.model.RegexReport;
+import com.xiebaiyuan.adrule.model.RuleStats;
+import com.xiebaiyuan.adrule.output.RuleBatch;
+import com.xiebaiyuan.adrule.output.RuleOutput;
+import com.xiebaiyuan.adrule.pipeline.ClassifyStage;
+import com.xiebaiyuan.adrule.pipeline.Stage;
+import com.xiebaiyuan.adrule.pipeline.StageTimer;
+import com.xiebaiyuan.adrule.regex.RegexExpander;
+import com.xiebaiyuan.adrule.regex.RegexMerger;
+import com.xiebaiyuan.adrule.regex.RegexVetter;
+import com.xiebaiyuan.adrule.snapshot.SnapshotStore;
+import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
+import com.xiebaiyuan.adrule.thread.AbstractRuleThread;
+import com.xiebaiyuan.adrule.thread.LocalRuleThread;
+import com.xiebaiyuan.adrule.thread.RemoteRuleThread;
+import com.xiebaiyuan.adrule.thread.RuleContext;
+import com.xiebaiyuan.adrule.trie.DomainPruner;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * 一次完整的规则生成：获取、解析、去重、裁剪、审查、写入、收尾、提取域名列表，最后写出运行报告
+ * <p>
+ * 应用和端到端基准共用这一个阶段图，每次 {@link #run()} 都重新创建本次运行的去重表、输出和统计，
+ * 只有执行器和远程缓存在多次运行间复用。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+@Builder
+public class RuleBuild {
+
+    private final RuleConfig ruleConfig;
+
+    private final OutputConfig outputConfig;
+
+    private final JunkConfig junkConfig;
+
+    private final PipelineConfig pipelineConfig;
+
+    private final RegexConfig regexConfig;
+
+    /**
+     * CPU 阶段的执行器
+     */
+    private final Executor executor;
+
+    /**
+     * 远程规则缓存，只有本地规则源时可以为空
+     */
+    private final FetchCache fetchCache;
+
+    /**
+     * 本地规则的相对路径基准，也是诊断文件和域名列表的目录
+     */
+    @Builder.Default
+    private final String ruleDir = Constant.LOCAL_RULE_SUFFIX;
+
+    /**
+     * 解析结果快照目录
+     */
+    @Builder.Default
+    private final File snapshotDir = new File(Constant.SNAPSHOT_DIR);
+
+    /**
+     * 生成一次规则
+     * <p>
+     * 有规则源解析中途失败时，本次结果不完整，不替换正式文件，重新构建一次：
+     * 下载被截断的规则源改用上一份完整的缓存，其余规则源命中缓存和快照。仍不完整时构建失败。
+     *
+     * @return 退出码，0 为成功
+     */
+    public int run() throws Exception {
+        try {
+            return attempt();
+        } catch (IncompleteSourcesException e) {
+            log.warn("{}, building again from cached content", e.getMessage());
+        }
+        try {
+            return attempt();
+        } catch (IncompleteSourcesException e) {
+            log.error("Build failed => {}", e.getMessage());
+            return 1;
+        }
+    }
+
+    private int attempt() throws Exception {
+        TimeInterval interval = DateUtil.timer();
+
+        // 初始化统计收集器
+        RuleStatsCollector statsCollector = new RuleStatsCollector();
+
+        // 收集所有规则源
+        List<String> allSources = new ArrayList<>();
+        allSources.addAll(ruleConfig.getRemote());
+        allSources.addAll(ruleConfig.getLocal());
+
+        // 开始统计
+        statsCollector.start(allSources);
+
+        // Initialize and create files based on configuration
+        final Map<RuleType, Set<File>> typeFileMap = MapUtil.newHashMap();
+        if (!outputConfig.getFiles().isEmpty()) {
+            outputConfig.getFiles().forEach((fileName, types) -> {
+                File file = Util.resolveFile(outputConfig.getPath() + File.separator + fileName);
+                types.forEach(type -> Util.safePut(typeFileMap, type, file));
+            });
+        }
+
+        // Exact deduplication, grows with the number of rules
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+
+        // Collects domain rules for parent-domain pruning
+        DomainPruner pruner = new DomainPruner();
+
+        // 正则规则全部读完后编译并探测，隔离无法编译或回溯失控的规则
+        RegexVetter regexVetter = new RegexVetter(regexConfig.getStepBudget(), regexConfig.getReportTop());
+
+        // 诊断文件每次运行都重新生成
+        DiagnosticSinks diagnostics = new DiagnosticSinks(ruleDir);
+        diagnostics.open();
+
+        // 每个输出文件一个写入线程
+        RuleOutput output = new RuleOutput(typeFileMap, outputConfig.getSortMemory().toBytes(),
+                statsCollector.getWriteLatency());
+        output.start();
+
+        RuleClassifier classifier = new RuleClassifier(new JunkFilter(junkConfig));
+
+        // CPU 阶段，读取线程把行按块交给 fork-join 分类池，同时在分类的块数有上限
+        ClassifyStage classifyStage = new ClassifyStage(classifier, pipelineConfig.resolveParseThreads(),
+                pipelineConfig.getQueueCapacity(), pipelineConfig.getChunkLines(), statsCollector.getClassifyLatency());
+
+        RuleContext context = RuleContext.builder()
+                .output(output)
+                .classifier(classifier)
+                .classifyStage(classifyStage)
+                .deduplicator(deduplicator)
+                .pruner(pruner)
+                .regexExpander(new RegexExpander(regexConfig.getMaxExpansion()))
+                .regexVetter(regexVetter)
+                .statsCollector(statsCollector)
+                .diagnostics(diagnostics)
+                .fetchCache(fetchCache)
+                .snapshots(new SnapshotStore(snapshotDir, classifier.getVersionTag()))
+                .build();
+
+        // 阶段图：每个规则源 获取 -> 读取，全部读完后 写入/裁剪/诊断 并行，随后各文件独立收尾，最后提取域名列表
+        StageTimer timer = new StageTimer();
+        // IO 阶段每个规则源一个虚拟线程，下载和读取不占用 CPU 线程，同时进行的规则源数量受限
+        ExecutorService fetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        Semaphore fetchPermits = new Semaphore(pipelineConfig.getFetchParallelism());
+        List<AbstractRuleThread> sources = new ArrayList<>();
+        // Remote rules
+        ruleConfig.getRemote().stream()
+                .filter(StrUtil::isNotBlank)
+                .map(URLUtil::normalize)
+                .forEach(e -> sources.add(new RemoteRuleThread(e, context)));
+        // Local rules
+        ruleConfig.getLocal().stream()
+                .filter(StrUtil::isNotBlank)
+                .map(e -> {
+                    e = FileUtil.normalize(e);
+                    if (FileUtil.isAbsolutePath(e)) {
+                        return e;
+                    }
+                    return FileUtil.normalize(ruleDir + File.separator + e);
+                })
+                .forEach(e -> sources.add(new LocalRuleThread(e, context)));
+
+        // 单个规则源失败只记录日志，不影响其他规则源
+        CompletableFuture<Void> parsed = CompletableFuture.allOf(sources.stream()
+                .map(source -> CompletableFuture.runAsync(() -> {
+                            fetchPermits.acquireUninterruptibly();
+                            try {
+                                SourceContent content = timer.time(Stage.FETCH, source::fetch).get();
+                                timer.time(Stage.PARSE, () -> source.parse(content)).run();
+                            } finally {
+                                fetchPermits.release();
+                            }
+                        }, fetchExecutor)
+                        .exceptionally(e -> {
+                            log.error("Rule<{}> failed => {}", source.getRuleUrl(), ExceptionUtil.stacktraceToString(e));
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new))
+                .thenRun(() -> {
+                    try {
+                        classifyStage.close();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CompletionException(e);
+                    }
+                    classifyStage.log();
+                });
+
+        // 合并正则规则时用登记的域名验证，抽样必须在裁剪清空登记之前
+        CompletableFuture<List<String>> sampled = parsed.thenApply(ignored -> regexConfig.isMerge()
+                ? pruner.sample(regexConfig.getMergeCorpus()) : Collections.emptyList());
+
+        // 裁剪已被父域名规则覆盖的子域名规则
+        CompletableFuture<Set<String>> merged = sampled.thenApplyAsync(
+                ignored -> timer.time(Stage.MERGE, pruner::prune).get(), executor);
+
+        CompletableFuture<RegexVetter.Result> vetted = parsed.thenApplyAsync(ignored -> {
+            RegexVetter.Result result = timer.time(Stage.VET, regexVetter::vet).get();
+            result.getQuarantined().forEach(diagnostics::quarantinedRegex);
+            return result;
+        }, executor);
+
+        // 合并规则要在写入线程结束前提交，开启合并时写入阶段等待审查和合并完成
+        RegexMerger regexMerger = new RegexMerger(regexConfig.getMergeGroupSize());
+        CompletableFuture<RegexMerger.Result> combined = regexConfig.isMerge()
+                ? vetted.thenCombineAsync(sampled, (result, domains) -> timer.time(Stage.COMBINE,
+                        () -> regexMerger.merge(result.getPassed(), domains)).get(), executor)
+                : parsed.thenApply(ignored -> null);
+
+        CompletableFuture<Void> written = combined.thenAcceptAsync(result -> timer.time(Stage.WRITE, () -> {
+            if (result != null) {
+                RuleBatch batch = output.newBatch();
+                result.getCombined().forEach(rule -> batch.add(RuleType.REGEX, rule));
+                batch.flush();
+            }
+            output.close();
+        }).run(), executor);
+
+        CompletableFuture<Void> flushed = vetted.thenRunAsync(diagnostics::flush, executor);
+
+        // 文件头和运行报告使用同一份汇总统计
+        AtomicReference<RuleStats> totals = new AtomicReference<>();
+
+        // 加上文件头并替换正式文件，各文件互不依赖，并行执行
+        CompletableFuture<Void> finalized = CompletableFuture.allOf(written, merged, vetted, combined)
+                .thenComposeAsync(done -> {
+                    List<String> incomplete = sources.stream()
+                            .filter(AbstractRuleThread::isIncomplete)
+                            .map(AbstractRuleThread::getRuleUrl)
+                            .collect(Collectors.toList());
+                    if (!incomplete.isEmpty()) {
+                        output.discard();
+                        throw new IncompleteSourcesException(incomplete);
+                    }
+                    Set<String> subsumed = merged.join();
+                    RegexReport regexReport = vetted.join().getReport();
+                    // 被合并规则替代的原规则和隔离的规则一样从正则文件中移除
+                    RegexMerger.Result combination = combined.join();
+                    Set<String> quarantined = vetted.join().getQuarantined().keySet();
+                    Set<String> removed = combination == null ? quarantined
+                            : Sets.union(quarantined, combination.getReplaced());
+                    if (combination != null) {
+                        regexReport.setMerge(combination.getReport());
+                    }
+                    statsCollector.setSubsumedRules(pruner.getSubsumed(RuleType.DOMAIN), pruner.getSubsumed(RuleType.HOSTS));
+                    statsCollector.setSubsumedByParent(pruner.getSubsumedByParent());
+                    statsCollector.setRegexReport(regexReport);
+                    statsCollector.setRegexAdjustment(removed.size(),
+                            combination == null ? 0 : combination.getCombined().size());
+
+                    // 结束统计
+                    statsCollector.finish();
+                    RuleStats stats = statsCollector.build();
+                    totals.set(stats);
+                    log.info("去重完成，唯一规则: {}，重复规则: {}，去重表占用: {}KB",
+                            deduplicator.size(), deduplicator.getDuplicateCount(), deduplicator.getMemoryBytes() / 1024);
+
+                    // 裁剪只作用于包含 DOMAIN 的文件，隔离只作用于包含 REGEX 的文件
+                    Set<File> domainFiles = typeFileMap.getOrDefault(RuleType.DOMAIN, Collections.emptySet());
+                    Set<File> regexFiles = typeFileMap.getOrDefault(RuleType.REGEX, Collections.emptySet());
+                    return CompletableFuture.allOf(output.finalizers(stats,
+                                    file -> Sets.union(domainFiles.contains(file) ? subsumed : Collections.emptySet(),
+                                            regexFiles.contains(file) ? removed : Collections.emptySet())).stream()
+                            .map(finalizer -> CompletableFuture.runAsync(timer.time(Stage.FINALIZE, finalizer::run), executor)
+                                    .whenComplete((ignored, e) -> {
+                                        if (e != null) {
+                                            log.error("Error finalizing file, {} => {}",
+                                                    finalizer.getFile().getPath(), ExceptionUtil.getRootCauseMessage(e));
+                                        }
+                                    }))
+                            .toArray(CompletableFuture[]::new));
+                }, executor);
+
+        // 提取域名列表
+        CompletableFuture<Void> extracted = finalized.thenRunAsync(timer.time(Stage.EXTRACT, () -> {
+            log.info("开始提取域名黑白名单...");
+            DomainListExtractor.extractDomainLists(ruleDir);
+        }), executor);
+
+        int exitCode = 0;
+        IncompleteSourcesException incomplete = null;
+        try {
+            CompletableFuture.allOf(extracted, flushed).join();
+        } catch (CompletionException e) {
+            incomplete = ExceptionUtil.getCausedBy(e, IncompleteSourcesException.class) instanceof
+                    IncompleteSourcesException cause ? cause : null;
+            if (incomplete == null) {
+                log.error("Build failed => {}", ExceptionUtil.getRootCauseMessage(e));
+            }
+            exitCode = 1;
+        }
+        fetchExecutor.shutdown();
+        timer.log();
+        if (totals.get() != null) {
+            File report = FileUtil.file(outputConfig.getPath(), Constant.RUN_REPORT_FILE);
+            FileUtil.writeUtf8String(JSONUtil.toJsonPrettyStr(statsCollector.report(totals.get(), timer.snapshot())), report);
+            log.info("Run report => {}", report.getPath());
+        }
+        log.info("Done! {} ms", interval.intervalMs());
+        if (incomplete != null) {
+            throw incomplete;
+        }
+        return exitCode;
+    }
+
+    /**
+     * 有规则源解析中途失败，本次构建的结果已丢弃
+     */
+    private static final class IncompleteSourcesException extends IllegalStateException {
+
+        private IncompleteSourcesException(List<String> sources) {
+            super("Incomplete sources " + sources);
+        }
+    }
+}
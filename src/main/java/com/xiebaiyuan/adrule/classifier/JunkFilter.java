@@ -0,0 +1,150 @@
+package com.xiebaiyuan.adrule.classifier;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.xiebaiyuan.adrule.config.JunkConfig;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 垃圾内容过滤器
+ * <p>
+ * 清理阶段关键词、分类阶段关键词、垃圾模式的触发词以及分类器内部正则的预判关键词
+ * 全部编译进同一个 {@link KeywordAutomaton}，每个阶段只需对内容做一次线性扫描，
+ * 新增关键词不会增加每行的扫描次数。垃圾模式的正则只在触发词命中时才执行。
+ *
+ * @author xiebaiyuan
+ */
+public class JunkFilter {
+
+    /**
+     * 清理阶段关键词
+     */
+    static final long CLEAN_KEYWORD = 1L;
+
+    /**
+     * 分类阶段关键词
+     */
+    static final long RULE_KEYWORD = 1L << 1;
+
+    /**
+     * EFFICIENT_REGEX 中不以行首锚定的关键词
+     */
+    static final long EFFICIENT_HINT = 1L << 2;
+
+    /**
+     * CODE_FRAGMENT_REGEX 中不含括号的关键词
+     */
+    static final long CODE_HINT = 1L << 3;
+
+    /**
+     * CODE_FRAGMENT_REGEX 中需要后跟空白的关键词
+     */
+    static final long CODE_WORD_HINT = 1L << 4;
+
+    private static final int PATTERN_SHIFT = 5;
+
+    private static final int MAX_PATTERNS = Long.SIZE - PATTERN_SHIFT;
+
+    private static final long PATTERN_MASK = -1L << PATTERN_SHIFT;
+
+    private static final String[] EFFICIENT_HINTS = {
+            "Copyright", "Privacy Policy", "All Rights Reserved", "购买该域名", "More domains at", "Seo.Domains"
+    };
+
+    private static final String[] CODE_HINTS = {"console.log", "</", "pageOptions"};
+
+    private static final String[] CODE_WORD_HINTS = {"return", "var", "let", "const"};
+
+    private static final JunkFilter DEFAULT = new JunkFilter(new JunkConfig());
+
+    private final KeywordAutomaton automaton;
+
+    private final Pattern[] patterns;
+
+    /**
+     * 配置内容的哈希，用于判断解析快照是否仍然有效
+     */
+    private final String fingerprint;
+
+    public JunkFilter(JunkConfig config) {
+        List<JunkConfig.JunkPattern> patternConfigs = CollUtil.emptyIfNull(config.getPatterns());
+        if (patternConfigs.size() > MAX_PATTERNS) {
+            throw new IllegalArgumentException("Too many junk patterns, at most " + MAX_PATTERNS + " are supported");
+        }
+        KeywordAutomaton.Builder builder = KeywordAutomaton.builder();
+        CollUtil.emptyIfNull(config.getKeywords()).forEach(keyword -> builder.add(keyword, CLEAN_KEYWORD));
+        CollUtil.emptyIfNull(config.getRuleKeywords()).forEach(keyword -> builder.add(keyword, RULE_KEYWORD));
+        for (String hint : EFFICIENT_HINTS) {
+            builder.add(hint, EFFICIENT_HINT);
+        }
+        for (String hint : CODE_HINTS) {
+            builder.add(hint, CODE_HINT);
+        }
+        for (String hint : CODE_WORD_HINTS) {
+            builder.add(hint, CODE_WORD_HINT);
+        }
+        this.patterns = new Pattern[patternConfigs.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            JunkConfig.JunkPattern pattern = patternConfigs.get(i);
+            if (pattern.getKeyword() == null || pattern.getKeyword().isEmpty()) {
+                throw new IllegalArgumentException("Junk pattern " + pattern.getRegex() + " has no trigger keyword");
+            }
+            patterns[i] = Pattern.compile(pattern.getRegex());
+            builder.add(pattern.getKeyword(), 1L << (PATTERN_SHIFT + i));
+        }
+        this.automaton = builder.build();
+        this.fingerprint = SecureUtil.sha256(String.valueOf(config.getKeywords()) + config.getRuleKeywords() +
+                patternConfigs.stream().map(p -> p.getKeyword() + "=" + p.getRegex()).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return 使用 {@link com.xiebaiyuan.adrule.Constant} 默认配置的共享实例
+     */
+    public static JunkFilter getDefault() {
+        return DEFAULT;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 扫描内容
+     *
+     * @param content  内容
+     * @param stopMask 命中其中任意一位时提前结束
+     * @return 命中的掩码
+     */
+    long scan(String content, long stopMask) {
+        return automaton.scan(content, stopMask);
+    }
+
+    /**
+     * 扫描纯 ASCII 字节
+     */
+    long scan(byte[] data, int from, int to, long stopMask) {
+        return automaton.scanAscii(data, from, to, stopMask);
+    }
+
+    /**
+     * 触发词已命中的垃圾模式中是否有整行匹配的
+     *
+     * @param content 内容
+     * @param hits    {@link #scan(String, long)} 的结果
+     * @return 是否命中垃圾模式
+     */
+    boolean matchesPattern(String content, long hits) {
+        long triggered = hits & PATTERN_MASK;
+        while (triggered != 0) {
+            int index = Long.numberOfTrailingZeros(triggered) - PATTERN_SHIFT;
+            if (patterns[index].matcher(content).matches()) {
+                return true;
+            }
+            triggered &= triggered - 1;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,227 @@
+package com.xiebaiyuan.adrule.classifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick 多关键词自动机
+ * <p>
+ * 每个关键词关联一个位掩码，{@link #scan(CharSequence, long)} 对输入做一次线性扫描，
+ * 返回所有命中关键词掩码的并集。ASCII 字符的转移预先展开为稠密表，每个字符只需一次数组访问；
+ * 非 ASCII 字符（例如中文关键词）使用稀疏表并沿失败链回退。
+ * 构建后不可变，可在多个线程间共享。
+ *
+ * @author xiebaiyuan
+ */
+public class KeywordAutomaton {
+
+    private static final int ASCII = 128;
+
+    /** ASCII 转移表，asciiNext[state * 128 + c] */
+    private final int[] asciiNext;
+
+    /** 非 ASCII 转移，key = state << 16 | c */
+    private final Map<Long, Integer> wideNext;
+
+    private final int[] fail;
+
+    /** 到达该状态时命中的关键词掩码（已合并失败链上的输出） */
+    private final long[] output;
+
+    private KeywordAutomaton(int[] asciiNext, Map<Long, Integer> wideNext, int[] fail, long[] output) {
+        this.asciiNext = asciiNext;
+        this.wideNext = wideNext;
+        this.fail = fail;
+        this.output = output;
+    }
+
+    /**
+     * 扫描输入
+     *
+     * @param text     输入
+     * @param stopMask 命中其中任意一位时提前结束扫描，传 0 表示扫描全部
+     * @return 命中关键词掩码的并集
+     */
+    public long scan(CharSequence text, long stopMask) {
+        return scan(text, 0, text.length(), stopMask);
+    }
+
+    /**
+     * 扫描输入的一段区间
+     *
+     * @param text     输入
+     * @param from     起始位置（含）
+     * @param to       结束位置（不含）
+     * @param stopMask 命中其中任意一位时提前结束扫描，传 0 表示扫描全部
+     * @return 命中关键词掩码的并集
+     */
+    public long scan(CharSequence text, int from, int to, long stopMask) {
+        long hits = 0;
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            state = c < ASCII ? asciiNext[state * ASCII + c] : wideTransition(state, c);
+            long out = output[state];
+            if (out != 0) {
+                hits |= out;
+                if ((hits & stopMask) != 0) {
+                    return hits;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 扫描纯 ASCII 字节，与对解码后的字符串扫描结果相同，不需要先创建字符串
+     *
+     * @param data     字节，调用方保证 [from, to) 中都小于 0x80
+     * @param from     起始位置，包含
+     * @param to       结束位置，不包含
+     * @param stopMask 命中其中任一位后立即返回
+     * @return 命中关键词掩码的并集
+     */
+    public long scanAscii(byte[] data, int from, int to, long stopMask) {
+        long hits = 0;
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = asciiNext[state * ASCII + data[i]];
+            long out = output[state];
+            if (out != 0) {
+                hits |= out;
+                if ((hits & stopMask) != 0) {
+                    return hits;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private int wideTransition(int state, char c) {
+        while (true) {
+            Integer next = wideNext.get(((long) state << 16) | c);
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 自动机构建器
+     */
+    public static final class Builder {
+
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+
+        private final List<Long> outputs = new ArrayList<>();
+
+        private Builder() {
+            newState();
+        }
+
+        /**
+         * 添加关键词，同一关键词多次添加时掩码合并
+         *
+         * @param keyword 关键词，空串会被忽略
+         * @param mask    关键词的掩码
+         * @return this
+         */
+        public Builder add(String keyword, long mask) {
+            if (keyword == null || keyword.isEmpty()) {
+                return this;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Character c = keyword.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.set(state, outputs.get(state) | mask);
+            return this;
+        }
+
+        public KeywordAutomaton build() {
+            int size = children.size();
+            int[] fail = new int[size];
+            long[] output = new long[size];
+            int[] asciiNext = new int[size * ASCII];
+            Map<Long, Integer> wideNext = new HashMap<>();
+            for (int s = 0; s < size; s++) {
+                output[s] = outputs.get(s);
+            }
+
+            // 广度优先计算失败指针，并把 ASCII 转移展开成完整的 DFA
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (Map.Entry<Character, Integer> e : children.get(0).entrySet()) {
+                queue.add(e.getValue());
+                if (e.getKey() >= ASCII) {
+                    wideNext.put((long) e.getKey(), e.getValue());
+                }
+            }
+            for (int c = 0; c < ASCII; c++) {
+                Integer next = children.get(0).get((char) c);
+                asciiNext[c] = next == null ? 0 : next;
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                output[state] |= output[fail[state]];
+                for (int c = 0; c < ASCII; c++) {
+                    Integer next = children.get(state).get((char) c);
+                    if (next == null) {
+                        asciiNext[state * ASCII + c] = asciiNext[fail[state] * ASCII + c];
+                    } else {
+                        asciiNext[state * ASCII + c] = next;
+                        fail[next] = asciiNext[fail[state] * ASCII + c];
+                        queue.add(next);
+                    }
+                }
+                for (Map.Entry<Character, Integer> e : children.get(state).entrySet()) {
+                    char c = e.getKey();
+                    if (c < ASCII) {
+                        continue;
+                    }
+                    int next = e.getValue();
+                    wideNext.put(((long) state << 16) | c, next);
+                    fail[next] = failTarget(fail, fail[state], c);
+                    queue.add(next);
+                }
+            }
+            return new KeywordAutomaton(asciiNext, wideNext, fail, output);
+        }
+
+        private int failTarget(int[] fail, int state, char c) {
+            while (true) {
+                Integer next = children.get(state).get(c);
+                if (next != null) {
+                    return next;
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = fail[state];
+            }
+        }
+
+        private int newState() {
+            children.add(new HashMap<>());
+            outputs.add(0L);
+            return children.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package com.xiebaiyuan.adrule.classifier;
+
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.Constant;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.Classification;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 规则分类器
+ * <p>
+ * 把原来分散在 {@code Util.clearRule} 和 {@code Util.validRule} 中的判断合并到一处：
+ * 所有正则在构造时编译一次，每行先清理再按 DOMAIN/HOSTS/REGEX/MODIFY 的顺序判定类型，
+ * 并给出被拒绝的原因。
+ * <p>
+ * 对纯可打印 ASCII 的内容使用手写的快速判断，每个快速判断都是对应正则的必要条件或等价实现；
+ * 其余内容回退到与原实现完全一致的正则，保证分类结果不变。
+ * 垃圾关键词由 {@link JunkFilter} 在一次线性扫描中完成判断。
+ * 实例不可变，可在多个线程间共享。
+ *
+ * @author xiebaiyuan
+ */
+public class RuleClassifier {
+
+    /**
+     * hutool ReUtil 默认使用 DOTALL，这里保持一致
+     */
+    private static final int RE_FLAGS = Pattern.DOTALL;
+
+    /**
+     * 分类逻辑的版本，修改分类结果时加一，使已有的解析快照失效
+     */
+    public static final int VERSION = 1;
+
+    private static final RuleClassifier DEFAULT = new RuleClassifier(JunkFilter.getDefault());
+
+    private final JunkFilter junkFilter;
+
+    private final Pattern efficientPattern = Pattern.compile(Constant.EFFICIENT_REGEX, RE_FLAGS);
+
+    private final Pattern codeFragmentPattern = Pattern.compile(Constant.CODE_FRAGMENT_REGEX, RE_FLAGS);
+
+    private final Pattern basicModifyPattern = Pattern.compile(Constant.BASIC_MODIFY_REGEX, RE_FLAGS);
+
+    private final Pattern adgRegexPattern = Pattern.compile(Constant.ADG_REGEX_PATTERN, RE_FLAGS);
+
+    private final Pattern adgRegexWithModifierPattern = Pattern.compile(Constant.ADG_REGEX_WITH_MODIFIER_PATTERN, RE_FLAGS);
+
+    /**
+     * 域名后跟路径的正则：等价于原来的 .*[A-Za-z0-9\-]+\.[A-Za-z]{2,6}(/|/.*).* 的 find
+     */
+    private final Pattern urlPathPattern = Pattern.compile("[A-Za-z0-9\\-]\\.[A-Za-z]{2,6}/");
+
+    private final Pattern charClassPattern = Pattern.compile("\\[.*?\\]");
+
+    private final Pattern bracesPattern = Pattern.compile("\\{.*?\\}");
+
+    private final Pattern ipNoisePattern = Pattern.compile("[^A-Za-z0-9.:-]");
+
+    private final Pattern[] domainMatch = compile(RuleType.DOMAIN.getMatch());
+
+    private final Pattern[] hostsMatch = compile(RuleType.HOSTS.getMatch());
+
+    private final Pattern[] regexMatch = compile(RuleType.REGEX.getMatch());
+
+    private final Pattern[] regexExclude = compile(RuleType.REGEX.getExclude());
+
+    public RuleClassifier(JunkFilter junkFilter) {
+        this.junkFilter = junkFilter;
+    }
+
+    /**
+     * @return 分类逻辑版本与垃圾过滤配置共同组成的标记
+     */
+    public String getVersionTag() {
+        return VERSION + "-" + junkFilter.getFingerprint();
+    }
+
+    /**
+     * @return 使用默认配置的共享实例
+     */
+    public static RuleClassifier getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 清理并分类一行规则
+     *
+     * @param line 原始内容
+     * @return 分类结果
+     */
+    public Classification classify(String line) {
+        Classification cleaned = clean(line);
+        return cleaned.isCleanRejected() ? cleaned : classifyCleaned(cleaned.getContent());
+    }
+
+    /**
+     * 直接在字节上判断注释、标题等一定会在清理阶段丢弃的行，不需要创建字符串
+     * <p>
+     * 只处理以 ! 开头、以 # 加普通字符开头、以及 [...] 形式的行，它们一定命中 EFFICIENT_REGEX 的
+     * {@code ^!}、{@code ^#[^#,^@,^%,^\$]}、{@code ^\[.*\]$}，在此之前只有清理阶段关键词会先命中。
+     * 结果与对解码后的内容调用 {@link #classify(String)} 得到的拒绝原因完全一致。
+     *
+     * @param data 字节，调用方保证 [from, to) 中都小于 0x80 且已去除首尾空白、不为空
+     * @param from 起始位置，包含
+     * @param to   结束位置，不包含
+     * @return 拒绝原因，无法快速判断时返回 null
+     */
+    public RejectReason quickReject(byte[] data, int from, int to) {
+        switch (data[from]) {
+            case '!':
+                break;
+            case '#':
+                if (to - from < 2 || isEfficientHashExcluded(data[from + 1])) {
+                    return null;
+                }
+                break;
+            case '[':
+                if (to - from < 2 || data[to - 1] != ']') {
+                    return null;
+                }
+                break;
+            default:
+                return null;
+        }
+        long hits = junkFilter.scan(data, from, to, JunkFilter.CLEAN_KEYWORD);
+        return (hits & JunkFilter.CLEAN_KEYWORD) != 0 ? RejectReason.JUNK_KEYWORD : RejectReason.JUNK;
+    }
+
+    /**
+     * 只做清理，不判定类型
+     *
+     * @param line 原始内容
+     * @return 类型为 null 的结果，通过时 reason 为 null 且 content 为清理后的内容
+     */
+    public Classification clean(String line) {
+        String content = StrUtil.isNotBlank(line) ? StrUtil.trim(line) : StrUtil.EMPTY;
+        RejectReason reason = cleanReject(content);
+        if (reason != null) {
+            return new Classification(null, reason, StrUtil.EMPTY);
+        }
+        String cleaned = strip(content);
+        if (cleaned.isEmpty()) {
+            return new Classification(null, RejectReason.EMPTY, StrUtil.EMPTY);
+        }
+        return new Classification(null, null, cleaned);
+    }
+
+    /**
+     * 对已清理的内容判定类型
+     *
+     * @param rule 清理后的内容
+     * @return 分类结果
+     */
+    public Classification classifyCleaned(String rule) {
+        boolean simple = isSimpleAscii(rule);
+        boolean junk = containsJunk(rule);
+        boolean braces = rule.indexOf('{') >= 0 && rule.indexOf('}') >= 0;
+        boolean strictJunk = junk || braces;
+
+        if (!strictJunk && matchesDomain(rule, simple)) {
+            return new Classification(RuleType.DOMAIN, null, rule);
+        }
+        if (!strictJunk && matchesHosts(rule, simple)) {
+            return new Classification(RuleType.HOSTS, null, rule);
+        }
+        RejectReason regexReject = null;
+        if (!junk) {
+            regexReject = regexReject(rule);
+            if (regexReject == null) {
+                return new Classification(RuleType.REGEX, null, rule);
+            }
+        }
+        if (!strictJunk) {
+            return new Classification(RuleType.MODIFY, null, rule);
+        }
+        return new Classification(null, regexReject == RejectReason.UNSUPPORTED_MODIFIER
+                ? RejectReason.UNSUPPORTED_MODIFIER : RejectReason.JUNK_KEYWORD, rule);
+    }
+
+    /**
+     * 判断内容是否为指定类型的规则，与 {@link #classifyCleaned(String)} 使用相同的判断
+     *
+     * @param rule 清理后的内容
+     * @param type 规则类型
+     * @return 是否匹配
+     */
+    public boolean isType(String rule, RuleType type) {
+        boolean junk = containsJunk(rule);
+        if (type == RuleType.REGEX) {
+            return !junk && regexReject(rule) == null;
+        }
+        if (junk || (rule.indexOf('{') >= 0 && rule.indexOf('}') >= 0)) {
+            return false;
+        }
+        switch (type) {
+            case DOMAIN:
+                return matchesDomain(rule, isSimpleAscii(rule));
+            case HOSTS:
+                return matchesHosts(rule, isSimpleAscii(rule));
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 清理阶段，返回 null 表示通过
+     */
+    private RejectReason cleanReject(String content) {
+        if (content.isEmpty()) {
+            return RejectReason.EMPTY;
+        }
+        boolean isRegex = content.charAt(0) == '/';
+
+        // URL 级别的正则对 DNS 层无效
+        if (isRegex) {
+            String detect = content.replace("\\/", "/");
+            if (detect.contains("://")) {
+                return RejectReason.URL_REGEX;
+            }
+            if (urlPathPattern.matcher(detect).find()) {
+                return RejectReason.URL_PATH_REGEX;
+            }
+            if (isPureIpRegex(content)) {
+                return RejectReason.PURE_IP_REGEX;
+            }
+        }
+
+        // 所有关键词一次扫描完成，命中清理阶段关键词即可停止
+        long hits = junkFilter.scan(content, JunkFilter.CLEAN_KEYWORD);
+        if ((hits & JunkFilter.CLEAN_KEYWORD) != 0) {
+            return RejectReason.JUNK_KEYWORD;
+        }
+        if (mayMatchEfficient(content, hits) && efficientPattern.matcher(content).find()) {
+            return RejectReason.JUNK;
+        }
+        if (mayMatchCodeFragment(content, hits) && codeFragmentPattern.matcher(content).find()) {
+            return RejectReason.CODE_FRAGMENT;
+        }
+        if (content.charAt(0) == '#' && content.replace("#", "").trim().isEmpty()) {
+            return RejectReason.SEPARATOR;
+        }
+        if (junkFilter.matchesPattern(content, hits)) {
+            return RejectReason.JUNK_PATTERN;
+        }
+        if ((!isRegex && content.indexOf('{') >= 0 && content.indexOf('}') >= 0) ||
+                (!isRegex && content.length() > 30 && content.indexOf('(') >= 0 && content.indexOf(')') >= 0) ||
+                content.charAt(0) == '.' || (content.charAt(0) == '#' && !content.startsWith("##")) ||
+                content.startsWith("];") || content.length() > 300) {
+            return RejectReason.NOISE;
+        }
+        return null;
+    }
+
+    /**
+     * 去掉首尾的基本修饰符（@@、||、$important、行尾注释）
+     */
+    private String strip(String content) {
+        // 带修饰符的正则规则原样保留
+        if (content.charAt(0) == '/' && content.contains("/$")) {
+            return content;
+        }
+        if (content.startsWith("@@") || content.startsWith("||") ||
+                content.contains("$important") || content.indexOf('#') >= 0) {
+            content = basicModifyPattern.matcher(content).replaceAll(StrUtil.EMPTY);
+        }
+        return StrUtil.trim(content);
+    }
+
+    /**
+     * EFFICIENT_REGEX 命中的必要条件：以特定字符开头，或包含页脚关键词
+     * <p>
+     * 内容已去除首尾空白，^\s* 前缀等价于行首
+     */
+    private static boolean mayMatchEfficient(String content, long hits) {
+        switch (content.charAt(0)) {
+            case '!':
+            case '#':
+            case '[':
+            case '<':
+            case '{':
+            case '}':
+            case ']':
+            case 'f':
+            case 'r':
+            case 'c':
+                return true;
+            default:
+                return (hits & JunkFilter.EFFICIENT_HINT) != 0;
+        }
+    }
+
+    /**
+     * CODE_FRAGMENT_REGEX 命中的必要条件
+     */
+    private static boolean mayMatchCodeFragment(String content, long hits) {
+        if ((hits & JunkFilter.CODE_HINT) != 0 ||
+                content.indexOf('(') >= 0 || content.indexOf('{') >= 0 || content.indexOf(']') >= 0) {
+            return true;
+        }
+        return (hits & JunkFilter.CODE_WORD_HINT) != 0 && hasRegexWhitespace(content);
+    }
+
+    /**
+     * 分类阶段的垃圾关键词判断
+     */
+    private boolean containsJunk(String rule) {
+        return (rule.indexOf('<') >= 0 && rule.indexOf('>') >= 0) ||
+                (junkFilter.scan(rule, JunkFilter.RULE_KEYWORD) & JunkFilter.RULE_KEYWORD) != 0 ||
+                rule.startsWith("];") ||
+                (rule.startsWith("#") && rule.replace("#", "").trim().isEmpty());
+    }
+
+    /**
+     * 正则规则判定，返回 null 表示是合法的正则规则
+     */
+    private RejectReason regexReject(String rule) {
+        if (!rule.startsWith("/")) {
+            // 所有正则规则的匹配模式都以 ^/ 开头
+            return RejectReason.UNRECOGNIZED;
+        }
+        if (containsUnsupportedModifiers(rule)) {
+            return RejectReason.UNSUPPORTED_MODIFIER;
+        }
+        if (adgRegexPattern.matcher(rule).matches()) {
+            return null;
+        }
+        if (adgRegexWithModifierPattern.matcher(rule).matches()) {
+            int slashPos = rule.lastIndexOf('/');
+            int dollarPos = rule.lastIndexOf('$');
+            if (dollarPos > slashPos && dollarPos > 0) {
+                String modifierPart = rule.substring(dollarPos);
+                if (containsUnsupportedModifiers(modifierPart)) {
+                    return RejectReason.UNSUPPORTED_MODIFIER;
+                }
+                for (String modifier : Constant.ADG_MODIFIERS) {
+                    if (modifierPart.contains(modifier)) {
+                        return null;
+                    }
+                }
+            }
+            if (dollarPos < 0 || dollarPos <= slashPos) {
+                return null;
+            }
+            return RejectReason.UNSUPPORTED_MODIFIER;
+        }
+        if (find(regexMatch, rule) && !find(regexExclude, rule)) {
+            return null;
+        }
+        return RejectReason.UNRECOGNIZED;
+    }
+
+    private boolean matchesDomain(String rule, boolean simple) {
+        if (!simple) {
+            return find(domainMatch, rule);
+        }
+        // ^([\w,\d,-]+\.)+[\w,\d,-]+(\^$)?$
+        int end = rule.length();
+        if (end > 0 && rule.charAt(end - 1) == '^') {
+            end--;
+        }
+        int segment = 0;
+        int dots = 0;
+        for (int i = 0; i < end; i++) {
+            char c = rule.charAt(i);
+            if (c == '.') {
+                if (segment == 0) {
+                    return false;
+                }
+                dots++;
+                segment = 0;
+            } else if (isWordChar(c) || c == ',' || c == '-') {
+                segment++;
+            } else {
+                return false;
+            }
+        }
+        return dots > 0 && segment > 0;
+    }
+
+    private boolean matchesHosts(String rule, boolean simple) {
+        if (!simple) {
+            return find(hostsMatch, rule);
+        }
+        // ^\d+\.\d+\.\d+\.\d+\s+.*$
+        int i = 0;
+        int length = rule.length();
+        for (int group = 0; group < 4; group++) {
+            int start = i;
+            while (i < length && rule.charAt(i) >= '0' && rule.charAt(i) <= '9') {
+                i++;
+            }
+            if (i == start) {
+                return false;
+            }
+            if (group < 3) {
+                if (i >= length || rule.charAt(i) != '.') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return i < length && isRegexWhitespace(rule.charAt(i));
+    }
+
+    /**
+     * 检查修饰符部分是否只包含 AdGuardHome 不支持的修饰符
+     */
+    private static boolean containsUnsupportedModifiers(String rule) {
+        int dollarPos = rule.lastIndexOf('$');
+        if (dollarPos < 0) {
+            return false;
+        }
+        String modifierPart = rule.substring(dollarPos + 1);
+        for (String supportedModifier : Constant.ADG_MODIFIERS) {
+            if (modifierPart.contains(supportedModifier)) {
+                return false;
+            }
+        }
+        for (String unsupportedModifier : Constant.UNSUPPORTED_MODIFIERS) {
+            if (modifierPart.contains(unsupportedModifier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 检测是否为纯 IP 或 IP:端口 的正则表达式模式
+     */
+    private boolean isPureIpRegex(String rule) {
+        String s = rule.trim();
+        if (s.startsWith("/")) {
+            int last = s.lastIndexOf('/');
+            s = last > 0 ? s.substring(1, last) : s.substring(1);
+        }
+
+        // 统计 "\." 前面紧跟 1-3 位数字的次数
+        int ipSegmentCount = 0;
+        int from = 0;
+        while (true) {
+            int idx = s.indexOf("\\.", from);
+            if (idx < 0) {
+                break;
+            }
+            int j = idx - 1;
+            int digitCount = 0;
+            while (j >= 0 && Character.isDigit(s.charAt(j)) && digitCount <= 3) {
+                digitCount++;
+                j--;
+            }
+            if (digitCount >= 1 && digitCount <= 3) {
+                ipSegmentCount++;
+            }
+            from = idx + 2;
+        }
+        if (ipSegmentCount >= 2) {
+            // 原实现无论是否存在大下界量词都视为纯 IP 正则
+            return true;
+        }
+
+        String norm = s.replace("\\d", "0")
+                .replace("\\.", ".")
+                .replace("\\:", ":");
+        norm = charClassPattern.matcher(norm).replaceAll("");
+        norm = bracesPattern.matcher(norm).replaceAll("");
+        String filtered = ipNoisePattern.matcher(norm).replaceAll("");
+
+        int digits = 0;
+        int letters = 0;
+        for (int i = 0; i < filtered.length(); i++) {
+            char c = filtered.charAt(i);
+            if (Character.isDigit(c)) {
+                digits++;
+            }
+            if (Character.isLetter(c)) {
+                letters++;
+            }
+        }
+        return digits > 4 && letters == 0 && filtered.contains(".");
+    }
+
+    /**
+     * EFFICIENT_REGEX 中 ^#[^#,^@,^%,^\$] 排除的第二个字符
+     */
+    private static boolean isEfficientHashExcluded(byte b) {
+        return b == '#' || b == ',' || b == '^' || b == '@' || b == '%' || b == '$';
+    }
+
+    /**
+     * 是否只包含可打印 ASCII 以及 \t \x0B \f，此时 $ 与 \s 的语义可以用手写判断替代
+     */
+    private static boolean isSimpleAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < 0x20 && c != '\t' && c != 0x0B && c != '\f') || c >= 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasRegexWhitespace(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (isRegexWhitespace(s.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 正则中的 \s：[ \t\n\x0B\f\r]
+     */
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    /**
+     * 正则中的 \w：[a-zA-Z_0-9]
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean find(Pattern[] patterns, String content) {
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(content);
+            if (matcher.find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern[] compile(String[] regexes) {
+        if (regexes == null) {
+            return new Pattern[0];
+        }
+        Pattern[] patterns = new Pattern[regexes.length];
+        for (int i = 0; i < regexes.length; i++) {
+            patterns[i] = Pattern.compile(regexes[i], RE_FLAGS);
+        }
+        return patterns;
+    }
+}
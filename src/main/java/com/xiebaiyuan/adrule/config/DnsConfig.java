@@ -0,0 +1,70 @@
+package com.xiebaiyuan.adrule.config;
+
+import com.xiebaiyuan.adrule.enums.BlockMode;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Local DNS filtering server, for load-testing generated lists before publishing them
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.dns")
+public class DnsConfig {
+
+    /**
+     * Keep running after the build and answer DNS queries with the generated rules
+     */
+    private boolean enabled = false;
+
+    /**
+     * Address the UDP and TCP listeners bind to
+     */
+    private String bind = "127.0.0.1";
+
+    /**
+     * Port the UDP and TCP listeners bind to
+     */
+    private int port = 5353;
+
+    /**
+     * Upstream resolver as host:port for names that are not blocked, empty answers them with SERVFAIL
+     */
+    private String upstream = "";
+
+    /**
+     * Time to wait for the upstream resolver
+     */
+    private Duration upstreamTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Answer for blocked names
+     */
+    private BlockMode blockMode = BlockMode.ZERO_IP;
+
+    /**
+     * TTL of blocked answers, seconds
+     */
+    private int blockTtl = 10;
+
+    /**
+     * Output files the rules are loaded from, relative to the output path
+     */
+    private List<String> rules = List.of("adgh.txt");
+
+    /**
+     * Rebuild the lists and swap the rules in at this interval, zero builds once
+     */
+    private Duration rebuildInterval = Duration.ZERO;
+
+    /**
+     * Interval of the QPS and latency log lines and of dns-report.json
+     */
+    private Duration statsInterval = Duration.ofSeconds(10);
+}
@@ -0,0 +1,61 @@
+package com.xiebaiyuan.adrule.config;
+
+import com.xiebaiyuan.adrule.Constant;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Junk filter configuration, defaults come from {@link Constant}
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.junk")
+public class JunkConfig {
+
+    /**
+     * Keywords checked while cleaning, matching lines are dropped
+     */
+    private List<String> keywords = new ArrayList<>(Arrays.asList(Constant.JUNK_KEYWORDS));
+
+    /**
+     * Keywords checked while classifying, matching rules are not accepted as any type
+     */
+    private List<String> ruleKeywords = new ArrayList<>(Arrays.asList(Constant.RULE_JUNK_KEYWORDS));
+
+    /**
+     * Patterns checked while cleaning, the regex is only evaluated when the keyword is present
+     */
+    private List<JunkPattern> patterns = defaultPatterns();
+
+    @Data
+    public static class JunkPattern {
+
+        /**
+         * Trigger keyword, must be a substring of every line the regex can match
+         */
+        private String keyword;
+
+        /**
+         * Regex matched against the whole line
+         */
+        private String regex;
+    }
+
+    private static List<JunkPattern> defaultPatterns() {
+        List<JunkPattern> patterns = new ArrayList<>();
+        for (String[] pair : Constant.JUNK_PATTERNS) {
+            JunkPattern pattern = new JunkPattern();
+            pattern.setKeyword(pair[0]);
+            pattern.setRegex(pair[1]);
+            patterns.add(pattern);
+        }
+        return patterns;
+    }
+}
@@ -4,6 +4,7 @@ import lombok.Data;
 import com.xiebaiyuan.adrule.enums.RuleType;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
 import java.util.List;
 import java.util.Map;
@@ -27,4 +28,9 @@ public class OutputConfig {
      * Output file list
      */
     private Map<String, List<RuleType>> files;
+
+    /**
+     * Memory budget for sorting all output files, larger files are sorted on disk
+     */
+    private DataSize sortMemory = DataSize.ofMegabytes(256);
 }
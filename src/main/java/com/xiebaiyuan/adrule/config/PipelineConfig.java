@@ -0,0 +1,43 @@
+package com.xiebaiyuan.adrule.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pipeline configuration, parallelism of the IO and CPU stages
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.pipeline")
+public class PipelineConfig {
+
+    /**
+     * Sources fetched and read concurrently, each on its own virtual thread
+     */
+    private int fetchParallelism = 64;
+
+    /**
+     * Classifier fork-join pool parallelism, 0 means one per available processor
+     */
+    private int parseThreads = 0;
+
+    /**
+     * Chunks being classified at once, readers block when the limit is reached
+     */
+    private int queueCapacity = 64;
+
+    /**
+     * Lines per chunk handed to the classifier threads
+     */
+    private int chunkLines = 1024;
+
+    /**
+     * @return effective classifier thread count
+     */
+    public int resolveParseThreads() {
+        return parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+    }
+}
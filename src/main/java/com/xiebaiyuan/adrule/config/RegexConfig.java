@@ -0,0 +1,46 @@
+package com.xiebaiyuan.adrule.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Regex rule vetting configuration
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.regex")
+public class RegexConfig {
+
+    /**
+     * Characters the matcher may read while probing one hostname, a regex exceeding it is quarantined
+     */
+    private long stepBudget = 1_000_000;
+
+    /**
+     * Most expensive surviving regex rules listed in the run report
+     */
+    private int reportTop = 20;
+
+    /**
+     * Domain rules a regex matching a finite set of hostnames may be rewritten into, larger sets stay regex
+     */
+    private int maxExpansion = 32;
+
+    /**
+     * Merge surviving regex rules sharing the same modifiers into combined alternations
+     */
+    private boolean merge = false;
+
+    /**
+     * Regex rules combined into one alternation at most
+     */
+    private int mergeGroupSize = 64;
+
+    /**
+     * Hostnames sampled from the domain rules to check a combined rule matches exactly like its members
+     */
+    private int mergeCorpus = 10_000;
+}
@@ -0,0 +1,218 @@
+package com.xiebaiyuan.adrule.dedup;
+
+import cn.hutool.core.lang.Validator;
+import cn.hutool.core.util.CharUtil;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+
+import java.net.IDN;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 规则规范化
+ * <p>
+ * 把同一条拦截写成不同语法的规则归一成同一个键：
+ * <ul>
+ *     <li>域名转小写，国际化域名转换为 punycode</li>
+ *     <li>指向黑洞地址的 hosts 条目与纯域名都视为精确匹配，归一为 |example.com^</li>
+ *     <li>修饰符去重并按字母顺序排列，多值修饰符内部同样排序</li>
+ * </ul>
+ * 无法识别为域名规则的内容（正则、带路径的规则等）以去除首尾空白后的原文作为键。
+ * 键不区分输出类型，去重时另外带上类型（见 {@link RuleDeduplicator#add(com.xiebaiyuan.adrule.enums.RuleType, String)}），
+ * hosts 条目和纯域名仍会分别写入各自的文件。
+ *
+ * @author xiebaiyuan
+ */
+public class RuleCanonicalizer {
+
+    /**
+     * 视为拦截的 hosts 地址
+     */
+    private static final Set<String> SINK_ADDRESSES = Set.of("0.0.0.0", "127.0.0.1", "::", "::1", "0");
+
+    /**
+     * 值为 | 分隔列表的修饰符，列表内部排序
+     */
+    private static final Set<String> LIST_MODIFIERS = Set.of("denyallow", "domain", "client", "ctag", "dnstype", "app");
+
+    private RuleCanonicalizer() {
+    }
+
+    /**
+     * 计算规则的规范化键
+     *
+     * @param line 原始规则
+     * @return 规范化键
+     */
+    public static String key(String line) {
+        CanonicalRule rule = parse(line);
+        return rule != null ? rule.getKey() : StrUtil.trim(line);
+    }
+
+    /**
+     * 把规则解析为规范形式
+     *
+     * @param line 原始规则
+     * @return 规范化规则，不是域名类规则时返回 null
+     */
+    public static CanonicalRule parse(String line) {
+        String content = StrUtil.trim(line);
+        if (StrUtil.isEmpty(content)) {
+            return null;
+        }
+        // 360.cn、51.la 这类以数字开头的纯域名不是 hosts 条目，只有 地址<空白>域名 才按 hosts 解析
+        int space = 0;
+        while (space < content.length() && !CharUtil.isBlankChar(content.charAt(space))) {
+            space++;
+        }
+        if (space < content.length() && isAddress(content.substring(0, space))) {
+            return parseHosts(content);
+        }
+        return parseAdblock(content);
+    }
+
+    private static boolean isAddress(String token) {
+        return SINK_ADDRESSES.contains(token) || Validator.isIpv4(token) || Validator.isIpv6(token);
+    }
+
+    private static CanonicalRule parseHosts(String content) {
+        int comment = content.indexOf('#');
+        if (comment >= 0) {
+            content = content.substring(0, comment).trim();
+        }
+        String[] parts = content.split("\\s+");
+        if (parts.length != 2 || !SINK_ADDRESSES.contains(parts[0])) {
+            return null;
+        }
+        String domain = normalizeDomain(parts[1]);
+        if (domain == null) {
+            return null;
+        }
+        return build(false, CanonicalRule.Anchor.EXACT, domain, Collections.emptyList());
+    }
+
+    private static CanonicalRule parseAdblock(String content) {
+        boolean exception = content.startsWith("@@");
+        if (exception) {
+            content = content.substring(2);
+        }
+
+        List<String> modifiers = Collections.emptyList();
+        int dollar = content.indexOf('$');
+        if (dollar >= 0) {
+            modifiers = normalizeModifiers(content.substring(dollar + 1));
+            if (modifiers == null) {
+                return null;
+            }
+            content = content.substring(0, dollar);
+        }
+
+        CanonicalRule.Anchor anchor;
+        if (content.startsWith("||")) {
+            if (!content.endsWith("^")) {
+                // ||example.com 会匹配 example.community，不是纯域名规则
+                return null;
+            }
+            anchor = CanonicalRule.Anchor.SUBDOMAIN;
+            content = content.substring(2, content.length() - 1);
+        } else if (content.startsWith("|")) {
+            if (!content.endsWith("^")) {
+                return null;
+            }
+            anchor = CanonicalRule.Anchor.EXACT;
+            content = content.substring(1, content.length() - 1);
+        } else if (content.endsWith("^")) {
+            // example.com^ 没有起始锚点，会按子串匹配
+            return null;
+        } else {
+            anchor = CanonicalRule.Anchor.EXACT;
+        }
+
+        String domain = normalizeDomain(content);
+        if (domain == null) {
+            return null;
+        }
+        return build(exception, anchor, domain, modifiers);
+    }
+
+    private static CanonicalRule build(boolean exception, CanonicalRule.Anchor anchor, String domain, List<String> modifiers) {
+        StringBuilder key = new StringBuilder(domain.length() + 8);
+        if (exception) {
+            key.append("@@");
+        }
+        key.append(anchor == CanonicalRule.Anchor.SUBDOMAIN ? "||" : "|").append(domain).append('^');
+        if (!modifiers.isEmpty()) {
+            key.append('$').append(String.join(",", modifiers));
+        }
+        return new CanonicalRule(exception, anchor, domain, modifiers, key.toString());
+    }
+
+    /**
+     * 域名转小写、去掉末尾的点，非 ASCII 域名转换为 punycode
+     *
+     * @return 规范化后的域名，不是合法域名时返回 null
+     */
+    static String normalizeDomain(String domain) {
+        if (domain.endsWith(".")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        if (domain.isEmpty() || domain.startsWith(".") || domain.contains("..")) {
+            return null;
+        }
+        boolean ascii = true;
+        for (int i = 0; i < domain.length(); i++) {
+            char c = domain.charAt(i);
+            if (c >= 0x80) {
+                ascii = false;
+            } else if (!(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.')) {
+                return null;
+            }
+        }
+        if (!ascii) {
+            try {
+                domain = IDN.toASCII(domain, IDN.ALLOW_UNASSIGNED);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return domain.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 修饰符名称转小写，去重后排序；多值修饰符的值列表同样排序
+     *
+     * @return 规范化的修饰符列表，存在空修饰符时返回 null
+     */
+    private static List<String> normalizeModifiers(String modifierPart) {
+        List<String> modifiers = new ArrayList<>();
+        for (String modifier : modifierPart.split(",")) {
+            modifier = modifier.trim();
+            if (modifier.isEmpty()) {
+                return null;
+            }
+            int eq = modifier.indexOf('=');
+            String name = (eq >= 0 ? modifier.substring(0, eq) : modifier).toLowerCase(Locale.ROOT);
+            if (eq >= 0) {
+                String value = modifier.substring(eq + 1);
+                if (LIST_MODIFIERS.contains(name.startsWith("~") ? name.substring(1) : name)) {
+                    String[] values = value.split("\\|");
+                    Arrays.sort(values);
+                    value = String.join("|", values);
+                }
+                modifier = name + "=" + value;
+            } else {
+                modifier = name;
+            }
+            if (!modifiers.contains(modifier)) {
+                modifiers.add(modifier);
+            }
+        }
+        Collections.sort(modifiers);
+        return modifiers;
+    }
+}
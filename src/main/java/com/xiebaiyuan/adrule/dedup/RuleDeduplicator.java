@@ -0,0 +1,201 @@
+package com.xiebaiyuan.adrule.dedup;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 精确去重器
+ * <p>
+ * 取代固定容量的布隆过滤器：每条规则计算 128 位 murmur3 指纹，按高位分到若干条带(stripe)，
+ * 每个条带是一张开放寻址哈希表，存放在堆外内存中并按负载因子自动扩容。
+ * 命中槽位时同时校验高低两个 64 位字，不会像布隆过滤器那样随规则数增加而频繁误判。
+ * <p>
+ * 只比较指纹，不保存规则原文：两条不同规则的 128 位指纹相同时，后到的一条会被当作重复丢弃。
+ * 一亿条规则出现任意一次碰撞的概率约为 n²/2¹²⁹ ≈ 10⁻²³，用这点误差换取每条规则固定 16 字节的堆外内存，
+ * 而不是在堆上保存所有规则字符串。槽位是否占用另用位图记录，任何指纹值（包括全 0）都是合法的。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class RuleDeduplicator {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /** 条带数量，必须是 2 的幂 */
+    private static final int STRIPES = 64;
+
+    /** 每个条带的初始槽位数，必须是 2 的幂 */
+    private static final int INITIAL_SLOTS = 1 << 12;
+
+    /** 扩容阈值 */
+    private static final double MAX_LOAD = 0.7;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final AtomicLong duplicates = new AtomicLong(0);
+
+    public RuleDeduplicator() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(INITIAL_SLOTS);
+        }
+    }
+
+    /**
+     * 记录一条规则
+     *
+     * @param rule 规则
+     * @return true 表示首次出现，false 表示重复
+     */
+    public boolean add(String rule) {
+        return add(HASH.hashString(rule, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 按输出类型记录一条规则，同一个键在不同类型下互不视为重复
+     * <p>
+     * hosts 条目和纯域名的规范化键相同，但写入的文件不同，只按键去重时先到的一条会让另一类文件缺少这条拦截。
+     *
+     * @param type 输出类型，无法分类时为 null
+     * @param key  规范化键
+     * @return true 表示该类型下首次出现，false 表示重复
+     */
+    public boolean add(RuleType type, String key) {
+        return add(HASH.newHasher()
+                .putInt(type == null ? -1 : type.ordinal())
+                .putString(key, StandardCharsets.UTF_8)
+                .hash());
+    }
+
+    private boolean add(HashCode hash) {
+        byte[] bytes = hash.asBytes();
+        long hi = ByteBuffer.wrap(bytes, 0, 8).getLong();
+        long lo = ByteBuffer.wrap(bytes, 8, 8).getLong();
+        return add(hi, lo);
+    }
+
+    /**
+     * 按指纹记录，单独拿出来便于构造指纹碰撞
+     */
+    boolean add(long hi, long lo) {
+        Stripe stripe = stripes[(int) (hi >>> 58) & (STRIPES - 1)];
+        boolean added;
+        synchronized (stripe) {
+            added = stripe.add(hi, lo);
+        }
+        if (!added) {
+            duplicates.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * @return 已记录的唯一规则数
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 被判定为重复的次数
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return 堆外哈希表占用的字节数
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += (long) stripe.capacity * 2 * Long.BYTES + stripe.capacity / Byte.SIZE;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 单个条带：线性探测的开放寻址表，每个槽位占两个 long (hi, lo)，占用标记在堆上的位图中
+     */
+    private static final class Stripe {
+
+        private LongBuffer table;
+
+        private BitSet occupied;
+
+        private int capacity;
+
+        private int size;
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            this.table = allocate(capacity);
+            this.occupied = new BitSet(capacity);
+        }
+
+        private boolean add(long hi, long lo) {
+            if (size + 1 > capacity * MAX_LOAD) {
+                resize();
+            }
+            if (!insert(table, occupied, capacity, hi, lo)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private void resize() {
+            int newCapacity = capacity << 1;
+            LongBuffer newTable = allocate(newCapacity);
+            BitSet newOccupied = new BitSet(newCapacity);
+            for (int i = occupied.nextSetBit(0); i >= 0; i = occupied.nextSetBit(i + 1)) {
+                insert(newTable, newOccupied, newCapacity, table.get(i << 1), table.get((i << 1) + 1));
+            }
+            table = newTable;
+            occupied = newOccupied;
+            capacity = newCapacity;
+        }
+
+        private static boolean insert(LongBuffer table, BitSet occupied, int capacity, long hi, long lo) {
+            int mask = capacity - 1;
+            // 条带已由 hi 的最高 6 位决定，槽位使用 hi 的低位
+            int slot = (int) (hi ^ (hi >>> 32)) & mask;
+            while (true) {
+                int idx = slot << 1;
+                if (!occupied.get(slot)) {
+                    occupied.set(slot);
+                    table.put(idx, hi);
+                    table.put(idx + 1, lo);
+                    return true;
+                }
+                if (table.get(idx) == hi && table.get(idx + 1) == lo) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private static LongBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * 2 * Long.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+        }
+    }
+}
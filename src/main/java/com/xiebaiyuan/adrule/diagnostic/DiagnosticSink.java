@@ -0,0 +1,181 @@
+package com.xiebaiyuan.adrule.diagnostic;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.output.ExternalSorter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 诊断输出文件
+ * <p>
+ * 规则线程把内容放入有界队列，由本文件专用的写入线程边运行边取出：不限条数时追加到同目录下的临时文件，
+ * 限制条数时只保留字典序最小的若干条。运行结束时临时文件经 {@link ExternalSorter} 排序去重后写入正式文件，
+ * 因此同样的输入总是得到同样的文件，与规则线程的调度无关。每次运行开始时清空文件，避免无限增长。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class DiagnosticSink implements Runnable {
+
+    private static final int QUEUE_CAPACITY = 8192;
+
+    /**
+     * 队列结束标记
+     */
+    private static final String END = new String();
+
+    private final File file;
+
+    private final File spool;
+
+    /**
+     * 最多保留的不重复条数，0 表示不限制
+     */
+    private final long limit;
+
+    private final long sortMemory;
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * 限制条数时保留的内容，只由写入线程访问
+     */
+    private final TreeSet<String> retained = new TreeSet<>();
+
+    private Thread thread;
+
+    private IOException failure;
+
+    /**
+     * @param file       诊断文件
+     * @param limit      最多保留的不重复条数，0 表示不限制
+     * @param sortMemory 排序时单个顺串的内存上限，字节
+     */
+    public DiagnosticSink(File file, long limit, long sortMemory) {
+        this.file = file;
+        this.limit = limit;
+        this.sortMemory = sortMemory;
+        this.spool = new File(file.getParentFile(), "." + file.getName() + ".spool");
+    }
+
+    /**
+     * 清空文件并启动写入线程，运行开始时调用
+     */
+    public void open() {
+        FileUtil.mkParentDirs(file);
+        FileUtil.writeUtf8String(StrUtil.EMPTY, file);
+        thread = new Thread(this, "diagnostic-writer-" + file.getName());
+        // 构建失败时不等待诊断文件
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 提交一条内容，可在任意线程调用，队列满时阻塞
+     *
+     * @param content 内容
+     */
+    public void offer(String content) {
+        try {
+            queue.put(content);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while writing to {}", file.getName());
+        }
+    }
+
+    @Override
+    public void run() {
+        try (BufferedWriter writer = limit > 0 ? null : Files.newBufferedWriter(spool.toPath(), StandardCharsets.UTF_8)) {
+            String content;
+            while ((content = queue.take()) != END) {
+                if (writer == null) {
+                    retain(content);
+                } else {
+                    writer.write(content);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void retain(String content) {
+        if (retained.size() < limit) {
+            retained.add(content);
+        } else if (content.compareTo(retained.last()) < 0 && retained.add(content)) {
+            retained.pollLast();
+        }
+    }
+
+    /**
+     * 写入失败后继续消费队列，避免提交方一直阻塞
+     */
+    private void drain() {
+        try {
+            while (queue.take() != END) {
+                // discard
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 等待写入线程处理完剩余内容后写入文件，运行结束时调用
+     *
+     * @return 写入的条数
+     */
+    public synchronized long flush() {
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            if (limit > 0) {
+                try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                    for (String line : retained) {
+                        writer.write(line);
+                        writer.write(StrUtil.CRLF);
+                    }
+                }
+                return retained.size();
+            }
+            ExternalSorter sorter = new ExternalSorter(Comparator.naturalOrder(), sortMemory,
+                    file.getParentFile().toPath(), true);
+            try (BufferedReader in = Files.newBufferedReader(spool.toPath(), StandardCharsets.UTF_8)) {
+                return sorter.sort(in, line -> true, file.toPath());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write {} => {}", file.getName(), e.getMessage());
+            return 0;
+        } finally {
+            FileUtil.del(spool);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,121 @@
+package com.xiebaiyuan.adrule.diagnostic;
+
+import cn.hutool.core.io.FileUtil;
+import com.xiebaiyuan.adrule.enums.QuarantineReason;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次运行中的所有诊断输出文件
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class DiagnosticSinks {
+
+    /**
+     * 被丢弃的 URL 级别正则
+     */
+    public static final String FILTERED_HTTP_REGEX = "filtered-http-regex.txt";
+
+    /**
+     * 审查时被隔离的正则规则，每行为 原因\t规则
+     */
+    public static final String QUARANTINED_REGEX = "quarantined-regex.txt";
+
+    /**
+     * 被拒绝规则的抽样，每行为 原因\t原始内容
+     */
+    public static final String REJECTED_SAMPLES = "rejected-samples.txt";
+
+    /**
+     * 被拒绝规则最多抽样的条数
+     */
+    private static final long REJECTED_SAMPLE_LIMIT = 5000;
+
+    /**
+     * 每个规则源每种拒绝原因最多送去抽样的条数，超出后解析线程不再解码和入队。
+     * 同一规则源按读取顺序计数，送去抽样的内容只取决于输入，抽样结果仍与线程时序无关
+     */
+    private static final long REJECTED_PER_SOURCE = 1000;
+
+    /**
+     * 排序不限条数的诊断文件时单个顺串的内存上限
+     */
+    private static final long SORT_MEMORY = 32L << 20;
+
+    private final Map<String, DiagnosticSink> sinks = new LinkedHashMap<>();
+
+    /**
+     * @param dir 诊断文件所在目录
+     */
+    public DiagnosticSinks(String dir) {
+        register(dir, FILTERED_HTTP_REGEX, 0);
+        register(dir, QUARANTINED_REGEX, 0);
+        register(dir, REJECTED_SAMPLES, REJECTED_SAMPLE_LIMIT);
+    }
+
+    private void register(String dir, String name, long limit) {
+        sinks.put(name, new DiagnosticSink(FileUtil.file(dir, name), limit, SORT_MEMORY));
+    }
+
+    /**
+     * 清空所有诊断文件并启动写入线程
+     */
+    public void open() {
+        sinks.values().forEach(DiagnosticSink::open);
+    }
+
+    public DiagnosticSink get(String name) {
+        return sinks.get(name);
+    }
+
+    /**
+     * 记录被丢弃的 URL 级别正则
+     *
+     * @param rule 规则内容
+     */
+    public void filteredRegex(String rule) {
+        sinks.get(FILTERED_HTTP_REGEX).offer(rule);
+    }
+
+    /**
+     * 记录被隔离的正则规则
+     *
+     * @param rule   规则
+     * @param reason 隔离原因
+     */
+    public void quarantinedRegex(String rule, QuarantineReason reason) {
+        sinks.get(QUARANTINED_REGEX).offer(reason.name() + "\t" + rule);
+    }
+
+    /**
+     * 记录被拒绝的规则，只保留字典序最小的若干条作为抽样
+     *
+     * @param reason 拒绝原因
+     * @param rule   规则内容
+     */
+    public void rejected(RejectReason reason, String rule) {
+        sinks.get(REJECTED_SAMPLES).offer(reason.name() + "\t" + rule);
+    }
+
+    /**
+     * 判断一条被拒绝的规则是否需要送去抽样，不需要时调用方可以不创建字符串
+     *
+     * @param seen 当前规则源中同一原因已拒绝的条数
+     * @return true 表示应调用 {@link #rejected(RejectReason, String)}
+     */
+    public boolean isRejectedSampled(long seen) {
+        return seen < REJECTED_PER_SOURCE;
+    }
+
+    /**
+     * 写入所有诊断文件
+     */
+    public void flush() {
+        sinks.forEach((name, sink) -> log.info("Diagnostic {} => {} lines", name, sink.flush()));
+    }
+}
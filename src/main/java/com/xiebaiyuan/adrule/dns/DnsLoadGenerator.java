@@ -0,0 +1,190 @@
+package com.xiebaiyuan.adrule.dns;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.xiebaiyuan.adrule.model.LatencyReport;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 回放查询日志压测 {@link DnsServer}
+ * <p>
+ * 查询日志每行一个查询，格式为 {@code 域名 [类型]}，类型为 A 或 AAAA，省略时为 A，# 开头的行被忽略；
+ * 也可以直接使用 AdGuard Home 的 querylog.json（每行一个 JSON，取 QH 和 QT 字段）。
+ * 每个并发各占一个虚拟线程和一个套接字，收到应答后立即发送下一个查询（闭环），按顺序循环回放日志，
+ * 结束时输出 QPS、延迟百分位、各应答码的数量和超时数。
+ * <pre>
+ * mvn -q -DskipTests compile exec:java -Dexec.mainClass=com.xiebaiyuan.adrule.dns.DnsLoadGenerator \
+ *     -Dexec.args="querylog.txt 127.0.0.1:5353 64 30"
+ * </pre>
+ * 参数依次为查询日志、服务地址（默认 127.0.0.1:5353）、并发数（默认 64）、持续秒数（默认 30）。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class DnsLoadGenerator {
+
+    private static final int TIMEOUT_MILLIS = 2000;
+
+    private static final String[] RCODES = {"NOERROR", "FORMERR", "SERVFAIL", "NXDOMAIN"};
+
+    private final InetSocketAddress server;
+
+    private final List<byte[]> queries;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** 按应答码计数，其他应答码计入最后一位 */
+    private final AtomicLongArray rcodes = new AtomicLongArray(RCODES.length + 1);
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private volatile boolean running = true;
+
+    public DnsLoadGenerator(InetSocketAddress server, List<byte[]> queries) {
+        this.server = server;
+        this.queries = queries;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: DnsLoadGenerator <query log> [host:port] [concurrency] [seconds]");
+            System.exit(1);
+        }
+        List<byte[]> queries = readLog(FileUtil.file(args[0]));
+        if (queries.isEmpty()) {
+            System.err.println("No queries in " + args[0]);
+            System.exit(1);
+        }
+        InetSocketAddress server = DnsServer.address(args.length > 1 ? args[1] : "127.0.0.1:5353");
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        new DnsLoadGenerator(server, queries).run(concurrency, seconds);
+    }
+
+    /**
+     * @param concurrency 同时等待应答的查询数
+     * @param seconds     持续时间
+     */
+    public void run(int concurrency, int seconds) throws InterruptedException {
+        log.info("Replaying {} queries against {}, concurrency: {}, duration: {}s",
+                queries.size(), server, concurrency, seconds);
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                int offset = (int) ((long) queries.size() * i / concurrency);
+                workers.execute(() -> replay(offset));
+            }
+            Thread.sleep(seconds * 1000L);
+            running = false;
+        }
+        report(System.nanoTime() - start);
+    }
+
+    private void replay(int offset) {
+        byte[] buffer = new byte[65535];
+        DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            socket.connect(server);
+            int id = offset;
+            for (int i = offset; running; i++) {
+                byte[] query = queries.get(i % queries.size()).clone();
+                id = (id + 1) & 0xFFFF;
+                DnsMessage.setId(query, id);
+                long start = System.nanoTime();
+                socket.send(new DatagramPacket(query, query.length));
+                if (await(socket, response, id)) {
+                    latency.record(System.nanoTime() - start);
+                    int rcode = DnsMessage.rcode(buffer);
+                    rcodes.incrementAndGet(Math.min(rcode, RCODES.length));
+                } else {
+                    timeouts.increment();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Load worker stopped => {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return 是否在超时前收到 ID 相同的应答
+     */
+    private static boolean await(DatagramSocket socket, DatagramPacket response, int id) throws IOException {
+        try {
+            do {
+                response.setLength(response.getData().length);
+                socket.receive(response);
+            } while (response.getLength() < DnsMessage.HEADER || DnsMessage.id(response.getData()) != id);
+            return true;
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        LatencyReport snapshot = latency.snapshot();
+        long answered = 0;
+        StringBuilder codes = new StringBuilder();
+        for (int i = 0; i < rcodes.length(); i++) {
+            long count = rcodes.get(i);
+            answered += count;
+            if (count > 0) {
+                codes.append(i < RCODES.length ? RCODES[i] : "OTHER").append(": ").append(count).append(", ");
+            }
+        }
+        double qps = NumberUtil.round(answered * 1e9 / elapsedNanos, 1).doubleValue();
+        log.info("Answered: {}, timeouts: {}, qps: {}", answered, timeouts.sum(), qps);
+        log.info("Latency mean: {}µs, p50: {}µs, p90: {}µs, p99: {}µs, p99.9: {}µs, max: {}µs",
+                snapshot.getMeanMicros(), snapshot.getP50Micros(), snapshot.getP90Micros(),
+                snapshot.getP99Micros(), snapshot.getP999Micros(), snapshot.getMaxMicros());
+        log.info("Rcodes: {}", StrUtil.removeSuffix(codes, ", "));
+    }
+
+    /**
+     * 读取查询日志，每个查询预先编码为报文，发送时只改写 ID
+     */
+    static List<byte[]> readLog(File file) {
+        List<byte[]> queries = new ArrayList<>();
+        for (String line : FileUtil.readLines(file, StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String name;
+            String type;
+            if (line.startsWith("{")) {
+                JSONObject entry = JSONUtil.parseObj(line);
+                name = entry.getStr("QH");
+                type = entry.getStr("QT", "A");
+            } else {
+                String[] parts = line.split("\\s+");
+                name = parts[0];
+                type = parts.length > 1 ? parts[1] : "A";
+            }
+            if (StrUtil.isNotBlank(name)) {
+                int code = "AAAA".equals(type.toUpperCase(Locale.ROOT)) ? DnsMessage.TYPE_AAAA : DnsMessage.TYPE_A;
+                queries.add(DnsMessage.query(0, name, code));
+            }
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,219 @@
+package com.xiebaiyuan.adrule.dns;
+
+import com.xiebaiyuan.adrule.enums.BlockMode;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * DNS 报文的最小实现，只解析第一个问题，只构造地址、拦截和错误应答
+ * <p>
+ * 报文格式见 RFC 1035 第 4 节。查询中的名称不会使用压缩指针，遇到时按格式错误处理。
+ *
+ * @author xiebaiyuan
+ */
+final class DnsMessage {
+
+    static final int HEADER = 12;
+
+    static final int TYPE_A = 1;
+
+    static final int TYPE_AAAA = 28;
+
+    static final int NOERROR = 0;
+
+    static final int FORMERR = 1;
+
+    static final int SERVFAIL = 2;
+
+    static final int NXDOMAIN = 3;
+
+    private static final int QR = 0x8000;
+
+    private static final int OPCODE = 0x7800;
+
+    private static final int TC = 0x0200;
+
+    private static final int RD = 0x0100;
+
+    private static final int RA = 0x0080;
+
+    private static final int MAX_LABEL = 63;
+
+    private DnsMessage() {
+    }
+
+    /**
+     * 解析查询的第一个问题
+     *
+     * @return 不是标准查询或格式错误时返回 null
+     */
+    static Question parse(byte[] data, int length) {
+        if (length < HEADER || (flags(data) & (QR | OPCODE)) != 0 || u16(data, 4) == 0) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder();
+        int pos = HEADER;
+        while (true) {
+            if (pos >= length) {
+                return null;
+            }
+            int label = data[pos++] & 0xFF;
+            if (label == 0) {
+                break;
+            }
+            if (label > MAX_LABEL || pos + label > length) {
+                return null;
+            }
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            for (int i = 0; i < label; i++) {
+                char c = (char) (data[pos + i] & 0xFF);
+                name.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            }
+            pos += label;
+        }
+        if (pos + 4 > length) {
+            return null;
+        }
+        return new Question(name.toString(), u16(data, pos), pos + 4);
+    }
+
+    /**
+     * 拦截应答，回显查询的问题部分
+     */
+    static byte[] blocked(byte[] query, Question question, BlockMode mode, int ttl) {
+        if (mode == BlockMode.NXDOMAIN) {
+            return error(query, question, NXDOMAIN);
+        }
+        return answer(query, question, question.getType() == TYPE_A ? new byte[4] : new byte[16], ttl);
+    }
+
+    /**
+     * 地址应答，问题不是 A 或 AAAA 时返回没有记录的 NOERROR
+     *
+     * @param address 与问题类型对应的 4 或 16 字节地址
+     */
+    static byte[] answer(byte[] query, Question question, byte[] address, int ttl) {
+        int type = question.getType();
+        boolean answers = type == TYPE_A || type == TYPE_AAAA;
+        byte[] response = Arrays.copyOf(query, question.getEnd() + (answers ? 12 + address.length : 0));
+        header(response, NOERROR, 1, answers ? 1 : 0);
+        if (answers) {
+            int pos = question.getEnd();
+            // 名称指向问题中的名称，偏移 12
+            response[pos++] = (byte) 0xC0;
+            response[pos++] = HEADER;
+            pos = put16(response, pos, type);
+            pos = put16(response, pos, 1);
+            pos = put16(response, pos, ttl >>> 16);
+            pos = put16(response, pos, ttl);
+            pos = put16(response, pos, address.length);
+            System.arraycopy(address, 0, response, pos, address.length);
+        }
+        return response;
+    }
+
+    /**
+     * 错误应答，问题可以解析时回显问题部分
+     *
+     * @param question 可为 null
+     */
+    static byte[] error(byte[] query, Question question, int rcode) {
+        byte[] response = Arrays.copyOf(query, question != null ? question.getEnd() : HEADER);
+        header(response, rcode, question != null ? 1 : 0, 0);
+        return response;
+    }
+
+    /**
+     * 构造标准查询，期望递归
+     */
+    static byte[] query(int id, String name, int type) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER + name.length() + 6);
+        byte[] header = new byte[HEADER];
+        put16(header, 0, id);
+        put16(header, 2, RD);
+        put16(header, 4, 1);
+        out.writeBytes(header);
+        for (String label : name.split("\\.")) {
+            if (label.isEmpty()) {
+                continue;
+            }
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+            out.write(Math.min(bytes.length, MAX_LABEL));
+            out.write(bytes, 0, Math.min(bytes.length, MAX_LABEL));
+        }
+        out.write(0);
+        out.write(type >>> 8);
+        out.write(type);
+        out.write(0);
+        out.write(1);
+        return out.toByteArray();
+    }
+
+    static int id(byte[] data) {
+        return u16(data, 0);
+    }
+
+    static void setId(byte[] data, int id) {
+        put16(data, 0, id);
+    }
+
+    static int rcode(byte[] data) {
+        return flags(data) & 0xF;
+    }
+
+    static boolean truncated(byte[] data) {
+        return (flags(data) & TC) != 0;
+    }
+
+    /**
+     * 改写从查询复制来的报头
+     */
+    private static void header(byte[] response, int rcode, int questions, int answers) {
+        int flags = QR | (flags(response) & (OPCODE | RD)) | RA | rcode;
+        put16(response, 2, flags);
+        put16(response, 4, questions);
+        put16(response, 6, answers);
+        put16(response, 8, 0);
+        put16(response, 10, 0);
+    }
+
+    private static int flags(byte[] data) {
+        return u16(data, 2);
+    }
+
+    private static int u16(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private static int put16(byte[] data, int pos, int value) {
+        data[pos] = (byte) (value >>> 8);
+        data[pos + 1] = (byte) value;
+        return pos + 2;
+    }
+
+    /**
+     * 查询的第一个问题
+     */
+    @Getter
+    static final class Question {
+
+        /** 小写、不带末尾点的名称 */
+        private final String name;
+
+        private final int type;
+
+        /** 问题部分结束的位置 */
+        private final int end;
+
+        private Question(String name, int type, int end) {
+            this.name = name;
+            this.type = type;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.xiebaiyuan.adrule.dns;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.xiebaiyuan.adrule.config.DnsConfig;
+import com.xiebaiyuan.adrule.enums.Verdict;
+import com.xiebaiyuan.adrule.matcher.RuleMatcher;
+import com.xiebaiyuan.adrule.model.DnsReport;
+import com.xiebaiyuan.adrule.model.LatencyReport;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用生成的规则过滤的本地 DNS 服务，用于发布前压测
+ * <p>
+ * UDP 由每个核一个的长期虚拟线程接收并在本线程匹配规则，被拦截的名称按 {@link DnsConfig#getBlockMode()}
+ * 直接应答，其余查询交给新的虚拟线程原样转发给上游，转发线程不再匹配；TCP 每个连接一个虚拟线程。
+ * 匹配使用的 {@link RuleMatcher.Scratch} 不依赖线程本地变量：每个 UDP 接收线程持有一个，
+ * TCP 连接每次查询从固定大小的池中借用一个，不会随新的虚拟线程重新创建。
+ * 规则保存在 {@link AtomicReference} 中，重新构建后整体替换，正在处理的查询继续使用旧规则。
+ * 每个统计周期输出 QPS 和应答延迟百分位，并写入 dns-report.json；UDP 接收线程把延迟记录到自己的分片，
+ * 转发和 TCP 线程记录到按线程分散的共享分片，统计时合并。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class DnsServer implements Closeable {
+
+    private static final int MAX_UDP = 65535;
+
+    /** UDP 接收线程数，规则匹配在接收线程中进行，每个线程复用自己的匹配缓冲区 */
+    private static final int RECEIVERS = Runtime.getRuntime().availableProcessors();
+
+    /** TCP 查询共用的匹配缓冲区个数，同时匹配的 TCP 查询超过它时等待 */
+    private static final int TCP_LOOKUPS = RECEIVERS;
+
+    /** TCP 连接空闲多久后关闭 */
+    private static final int TCP_IDLE_MILLIS = 30_000;
+
+    private final DnsConfig config;
+
+    private final AtomicReference<RuleMatcher> matcher;
+
+    /** 未配置上游时为 null */
+    private final UpstreamForwarder upstream;
+
+    private final File reportFile;
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final BlockingQueue<Lookup> tcpLookups = new ArrayBlockingQueue<>(TCP_LOOKUPS);
+
+    private final LongAdder queries = new LongAdder();
+
+    private final LongAdder blocked = new LongAdder();
+
+    private final LongAdder forwarded = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final AtomicLong swaps = new AtomicLong();
+
+    /** 当前统计周期的延迟 */
+    private final AtomicReference<LatencyHistogram> window = new AtomicReference<>(new LatencyHistogram());
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    private volatile DnsReport report;
+
+    private volatile boolean running;
+
+    private DatagramChannel udp;
+
+    private ServerSocketChannel tcp;
+
+    /**
+     * @param config     配置
+     * @param matcher    初始规则
+     * @param reportFile 统计文件
+     */
+    public DnsServer(DnsConfig config, RuleMatcher matcher, File reportFile) {
+        this.config = config;
+        this.matcher = new AtomicReference<>(matcher);
+        this.reportFile = reportFile;
+        this.upstream = StrUtil.isBlank(config.getUpstream()) ? null
+                : new UpstreamForwarder(address(config.getUpstream()), config.getUpstreamTimeout());
+        for (int i = 0; i < TCP_LOOKUPS; i++) {
+            tcpLookups.add(new Lookup());
+        }
+    }
+
+    /**
+     * 绑定端口并开始应答
+     */
+    public void start() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(config.getBind(), config.getPort());
+        udp = DatagramChannel.open().bind(address);
+        tcp = ServerSocketChannel.open().bind(address);
+        running = true;
+        for (int i = 0; i < RECEIVERS; i++) {
+            Thread.ofVirtual().name("dns-udp-" + i).start(this::serveUdp);
+        }
+        Thread.ofVirtual().name("dns-tcp").start(this::serveTcp);
+        Thread.ofVirtual().name("dns-stats").start(this::reportLoop);
+        log.info("DNS server listening on {} (udp/tcp), blocked => {}, upstream => {}", address,
+                config.getBlockMode().getDesc(), upstream == null ? "none (SERVFAIL)" : config.getUpstream());
+    }
+
+    /**
+     * 替换规则，之后开始的查询使用新规则
+     */
+    public void swap(RuleMatcher next) {
+        matcher.set(next);
+        log.info("DNS rules swapped, domain rules: {}, regex rules: {}", next.getDomainRules(), next.getRegexRules());
+        swaps.incrementAndGet();
+    }
+
+    /**
+     * @return 最近一个统计周期的报告，第一个周期结束前为 null
+     */
+    public DnsReport getReport() {
+        return report;
+    }
+
+    /**
+     * 等待服务关闭
+     */
+    public void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            udp.close();
+            tcp.close();
+        } catch (IOException e) {
+            log.warn("Error closing DNS listeners => {}", e.getMessage());
+        }
+        workers.shutdown();
+        log.info("DNS server stopped, queries: {}, blocked: {}, forwarded: {}, failed: {}",
+                queries.sum(), blocked.sum(), forwarded.sum(), failed.sum());
+        closed.countDown();
+    }
+
+    /**
+     * 多个接收线程共用一个通道，收到查询后直接在本线程中匹配规则，需要转发时才交给新的虚拟线程
+     */
+    private void serveUdp() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_UDP);
+        Lookup lookup = new Lookup();
+        WindowRecorder recorder = new WindowRecorder();
+        while (running) {
+            SocketAddress client;
+            buffer.clear();
+            try {
+                client = udp.receive(buffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("DNS udp receive failed => {}", e.getMessage());
+                continue;
+            }
+            long start = System.nanoTime();
+            buffer.flip();
+            byte[] query = new byte[buffer.remaining()];
+            buffer.get(query);
+            DnsMessage.Question question = DnsMessage.parse(query, query.length);
+            byte[] response = answer(query, question, lookup);
+            if (response != null) {
+                reply(response, client);
+                recorder.record(System.nanoTime() - start);
+            } else {
+                workers.execute(() -> {
+                    reply(forward(query, question), client);
+                    window.get().record(System.nanoTime() - start);
+                });
+            }
+        }
+    }
+
+    private void reply(byte[] response, SocketAddress client) {
+        try {
+            udp.send(ByteBuffer.wrap(response), client);
+        } catch (IOException e) {
+            log.debug("DNS udp send to {} failed => {}", client, e.getMessage());
+        }
+    }
+
+    private void serveTcp() {
+        while (running) {
+            SocketChannel client;
+            try {
+                client = tcp.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("DNS tcp accept failed => {}", e.getMessage());
+                continue;
+            }
+            workers.execute(() -> serveConnection(client));
+        }
+    }
+
+    /**
+     * 一个连接上可以依次发送多个查询，每个报文前有两字节长度
+     */
+    private void serveConnection(SocketChannel client) {
+        try (client) {
+            Socket socket = client.socket();
+            socket.setSoTimeout(TCP_IDLE_MILLIS);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            while (running) {
+                byte[] query = new byte[in.readUnsignedShort()];
+                in.readFully(query);
+                long start = System.nanoTime();
+                DnsMessage.Question question = DnsMessage.parse(query, query.length);
+                byte[] response = answerTcp(query, question);
+                if (response == null) {
+                    response = forward(query, question);
+                }
+                out.writeShort(response.length);
+                out.write(response);
+                out.flush();
+                window.get().record(System.nanoTime() - start);
+            }
+        } catch (EOFException | SocketTimeoutException e) {
+            // 客户端关闭或空闲
+        } catch (IOException e) {
+            log.debug("DNS tcp connection failed => {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 从池中借用匹配缓冲区，只在匹配期间占用，连接空闲时不占用
+     */
+    private byte[] answerTcp(byte[] query, DnsMessage.Question question) throws InterruptedException {
+        Lookup lookup = tcpLookups.take();
+        try {
+            return answer(query, question, lookup);
+        } finally {
+            tcpLookups.add(lookup);
+        }
+    }
+
+    /**
+     * @return 格式错误或被拦截时的应答，需要转发时返回 null
+     */
+    private byte[] answer(byte[] query, DnsMessage.Question question, Lookup lookup) {
+        queries.increment();
+        if (question == null) {
+            failed.increment();
+            return DnsMessage.error(query, null, DnsMessage.FORMERR);
+        }
+        if (lookup.match(matcher.get(), question.getName()) == Verdict.BLOCKED) {
+            blocked.increment();
+            return DnsMessage.blocked(query, question, config.getBlockMode(), config.getBlockTtl());
+        }
+        return null;
+    }
+
+    private byte[] forward(byte[] query, DnsMessage.Question question) {
+        if (upstream == null) {
+            failed.increment();
+            return DnsMessage.error(query, question, DnsMessage.SERVFAIL);
+        }
+        try {
+            byte[] response = upstream.forward(query);
+            forwarded.increment();
+            return response;
+        } catch (IOException e) {
+            failed.increment();
+            log.debug("Upstream failed for {} => {}", question.getName(), e.getMessage());
+            return DnsMessage.error(query, question, DnsMessage.SERVFAIL);
+        }
+    }
+
+    private void reportLoop() {
+        long lastQueries = 0;
+        long lastNanos = System.nanoTime();
+        while (running) {
+            try {
+                Thread.sleep(config.getStatsInterval().toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            long total = queries.sum();
+            LatencyReport latency = window.getAndSet(new LatencyHistogram()).snapshot();
+            double qps = NumberUtil.round((total - lastQueries) * 1e9 / Math.max(1, now - lastNanos), 1).doubleValue();
+            report = DnsReport.builder()
+                    .generatedAt(DateUtil.now())
+                    .queries(total)
+                    .blocked(blocked.sum())
+                    .forwarded(forwarded.sum())
+                    .failed(failed.sum())
+                    .swaps(swaps.get())
+                    .qps(qps)
+                    .latency(latency)
+                    .build();
+            if (total > lastQueries) {
+                log.info("DNS qps: {}, p50: {}µs, p99: {}µs, p99.9: {}µs, max: {}µs, queries: {}, blocked: {}, failed: {}",
+                        qps, latency.getP50Micros(), latency.getP99Micros(), latency.getP999Micros(),
+                        latency.getMaxMicros(), total, report.getBlocked(), report.getFailed());
+            }
+            FileUtil.writeUtf8String(JSONUtil.toJsonPrettyStr(report), reportFile);
+            lastQueries = total;
+            lastNanos = now;
+        }
+    }
+
+    /**
+     * 与某个 {@link RuleMatcher} 绑定的查询状态，规则替换后的第一次查询重新创建，同一时刻只由一个线程使用
+     */
+    private static final class Lookup {
+
+        private RuleMatcher matcher;
+
+        private RuleMatcher.Scratch scratch;
+
+        private Verdict match(RuleMatcher current, CharSequence host) {
+            if (current != matcher) {
+                matcher = current;
+                scratch = current.newScratch();
+            }
+            return current.match(host, scratch);
+        }
+    }
+
+    /**
+     * 接收线程自己的延迟分片，统计周期切换后的第一次记录在新周期中重新分配
+     */
+    private final class WindowRecorder {
+
+        private LatencyHistogram histogram;
+
+        private LatencyHistogram.Recorder recorder;
+
+        private void record(long nanos) {
+            LatencyHistogram current = window.get();
+            if (current != histogram) {
+                histogram = current;
+                recorder = current.newRecorder();
+            }
+            recorder.record(nanos);
+        }
+    }
+
+    /**
+     * @param hostPort host:port，省略端口时为 53
+     */
+    static InetSocketAddress address(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        if (colon < 0 || hostPort.endsWith("]")) {
+            return new InetSocketAddress(hostPort.replace("[", "").replace("]", ""), 53);
+        }
+        String host = hostPort.substring(0, colon).replace("[", "").replace("]", "");
+        return new InetSocketAddress(host, Integer.parseInt(hostPort.substring(colon + 1)));
+    }
+}
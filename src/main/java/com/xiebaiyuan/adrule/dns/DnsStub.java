@@ -0,0 +1,101 @@
+package com.xiebaiyuan.adrule.dns;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * 压测用的本地上游，不做任何解析
+ * <p>
+ * 所有 A 查询应答 192.0.2.1，AAAA 查询应答 2001:db8::1（均为文档保留地址），其他类型应答没有记录的 NOERROR。
+ * 作为 {@link DnsServer} 的上游时，压测结果只反映过滤服务本身，不受真实解析器和网络的影响。
+ * <pre>
+ * mvn -q -DskipTests compile exec:java -Dexec.mainClass=com.xiebaiyuan.adrule.dns.DnsStub -Dexec.args="5354"
+ * </pre>
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class DnsStub implements Closeable {
+
+    private static final byte[] ADDRESS_V4 = address("192.0.2.1");
+
+    private static final byte[] ADDRESS_V6 = address("2001:db8::1");
+
+    private static final int TTL = 60;
+
+    private final DatagramChannel channel;
+
+    /**
+     * 绑定端口并开始应答
+     *
+     * @param bind 监听地址，端口为 0 时随机分配
+     */
+    public DnsStub(InetSocketAddress bind) throws IOException {
+        channel = DatagramChannel.open().bind(bind);
+        Thread.ofVirtual().name("dns-stub").start(this::serve);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5354;
+        try (DnsStub stub = new DnsStub(new InetSocketAddress("127.0.0.1", port))) {
+            log.info("DNS stub listening on {}", stub.getAddress());
+            Thread.currentThread().join();
+        }
+    }
+
+    /**
+     * @return 实际监听的地址
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void serve() {
+        ByteBuffer buffer = ByteBuffer.allocate(65535);
+        while (true) {
+            SocketAddress client;
+            buffer.clear();
+            try {
+                client = channel.receive(buffer);
+                buffer.flip();
+                byte[] query = new byte[buffer.remaining()];
+                buffer.get(query);
+                channel.send(ByteBuffer.wrap(respond(query)), client);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("DNS stub failed => {}", e.getMessage());
+            }
+        }
+    }
+
+    private static byte[] respond(byte[] query) {
+        DnsMessage.Question question = DnsMessage.parse(query, query.length);
+        if (question == null) {
+            return DnsMessage.error(query, null, DnsMessage.FORMERR);
+        }
+        byte[] address = question.getType() == DnsMessage.TYPE_AAAA ? ADDRESS_V6 : ADDRESS_V4;
+        return DnsMessage.answer(query, question, address, TTL);
+    }
+
+    private static byte[] address(String literal) {
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.xiebaiyuan.adrule.dns;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * 把查询原样转发给上游解析器
+ * <p>
+ * 每次转发使用独立的套接字，在虚拟线程中阻塞等待不占用平台线程；应答被截断时改用 TCP 重试。
+ *
+ * @author xiebaiyuan
+ */
+final class UpstreamForwarder {
+
+    private static final int MAX_UDP = 65535;
+
+    private final InetSocketAddress upstream;
+
+    private final int timeoutMillis;
+
+    UpstreamForwarder(InetSocketAddress upstream, Duration timeout) {
+        this.upstream = upstream;
+        this.timeoutMillis = (int) timeout.toMillis();
+    }
+
+    /**
+     * @param query 完整的查询报文
+     * @return 上游的应答
+     * @throws IOException 超时或网络错误
+     */
+    byte[] forward(byte[] query) throws IOException {
+        byte[] response;
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(timeoutMillis);
+            socket.send(new DatagramPacket(query, query.length, upstream));
+            byte[] buffer = new byte[MAX_UDP];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            // 丢弃 ID 不符的迟到应答
+            do {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+            } while (packet.getLength() < DnsMessage.HEADER || DnsMessage.id(buffer) != DnsMessage.id(query));
+            response = Arrays.copyOf(buffer, packet.getLength());
+        }
+        return DnsMessage.truncated(response) ? forwardTcp(query) : response;
+    }
+
+    private byte[] forwardTcp(byte[] query) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(upstream, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(query.length);
+            out.write(query);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] response = new byte[in.readUnsignedShort()];
+            in.readFully(response);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.xiebaiyuan.adrule.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * DNS 服务对被拦截域名的应答方式
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+@AllArgsConstructor
+public enum BlockMode {
+
+    /**
+     * A 查询返回 0.0.0.0，AAAA 查询返回 ::，其他类型返回空应答
+     */
+    ZERO_IP("0.0.0.0 / ::"),
+
+    /**
+     * 返回 NXDOMAIN
+     */
+    NXDOMAIN("NXDOMAIN")
+    ;
+
+    /**
+     * Description
+     */
+    private final String desc;
+}
@@ -0,0 +1,45 @@
+package com.xiebaiyuan.adrule.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 规则源的获取结果
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+@AllArgsConstructor
+public enum FetchStatus {
+
+    /**
+     * 完整下载
+     */
+    DOWNLOADED("Downloaded"),
+
+    /**
+     * 上游返回 304，使用缓存
+     */
+    NOT_MODIFIED("Not modified"),
+
+    /**
+     * 上游不可用，使用过期缓存
+     */
+    STALE("Stale cache"),
+
+    /**
+     * 上游不可用且没有缓存
+     */
+    FAILED("Failed"),
+
+    /**
+     * 本地文件
+     */
+    LOCAL("Local file")
+    ;
+
+    /**
+     * Description
+     */
+    private final String desc;
+}
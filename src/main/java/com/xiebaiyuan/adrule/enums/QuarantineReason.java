@@ -0,0 +1,35 @@
+package com.xiebaiyuan.adrule.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 正则规则被隔离的原因
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+@AllArgsConstructor
+public enum QuarantineReason {
+
+    /**
+     * 无法编译
+     */
+    INVALID("Does not compile"),
+
+    /**
+     * 匹配某个探测域名时读取字符的次数超过预算，通常是嵌套量词导致的回溯爆炸
+     */
+    STEP_BUDGET("Step budget exceeded"),
+
+    /**
+     * 匹配时递归过深导致栈溢出
+     */
+    STACK_OVERFLOW("Matcher stack overflow")
+    ;
+
+    /**
+     * Description
+     */
+    private final String desc;
+}
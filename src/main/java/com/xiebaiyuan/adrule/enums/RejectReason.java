@@ -0,0 +1,80 @@
+package com.xiebaiyuan.adrule.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 规则被拒绝的原因
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+@AllArgsConstructor
+public enum RejectReason {
+
+    /**
+     * 包含协议的 URL 级正则，例如 /^https:\/\/.../
+     */
+    URL_REGEX("URL regex"),
+
+    /**
+     * 域名后跟路径的正则，例如 /example.com/path/
+     */
+    URL_PATH_REGEX("URL path regex"),
+
+    /**
+     * 纯 IP 段或端口的正则
+     */
+    PURE_IP_REGEX("Pure IP regex"),
+
+    /**
+     * 注释、HTML、脚本片段等明显不是规则的内容
+     */
+    JUNK("Junk line"),
+
+    /**
+     * JavaScript 代码片段
+     */
+    CODE_FRAGMENT("Code fragment"),
+
+    /**
+     * ##### 分隔行
+     */
+    SEPARATOR("Separator line"),
+
+    /**
+     * 命中垃圾模式，例如带年份的版权声明
+     */
+    JUNK_PATTERN("Junk pattern"),
+
+    /**
+     * 花括号、过长括号表达式、元素隐藏选择器等噪声
+     */
+    NOISE("Noise"),
+
+    /**
+     * 清理后内容为空
+     */
+    EMPTY("Empty after cleaning"),
+
+    /**
+     * 命中垃圾关键词，例如版权声明、域名出售等网页页脚内容
+     */
+    JUNK_KEYWORD("Junk keyword"),
+
+    /**
+     * 正则规则带有 AdGuardHome 不支持的修饰符
+     */
+    UNSUPPORTED_MODIFIER("Unsupported modifier"),
+
+    /**
+     * 不属于任何规则类型
+     */
+    UNRECOGNIZED("Unrecognized")
+    ;
+
+    /**
+     * Description
+     */
+    private final String desc;
+}
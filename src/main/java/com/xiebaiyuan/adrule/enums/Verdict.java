@@ -0,0 +1,35 @@
+package com.xiebaiyuan.adrule.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 域名的匹配结果
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+@AllArgsConstructor
+public enum Verdict {
+
+    /**
+     * 命中拦截规则且未被例外规则放行
+     */
+    BLOCKED("Blocked"),
+
+    /**
+     * 命中 @@ 例外规则
+     */
+    ALLOWED("Allowed"),
+
+    /**
+     * 没有命中任何规则
+     */
+    NONE("No match")
+    ;
+
+    /**
+     * Description
+     */
+    private final String desc;
+}
@@ -0,0 +1,433 @@
+package com.xiebaiyuan.adrule.fetch;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.core.util.URLUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.xiebaiyuan.adrule.enums.FetchStatus;
+import com.xiebaiyuan.adrule.model.SourceReport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 带条件请求的远程规则获取层
+ * <p>
+ * 所有规则源共用一个 JDK {@link HttpClient}，优先使用 HTTP/2 在同一主机的多个请求间复用连接，
+ * 每个主机的并发请求数受信号量限制。以规范化 URL 的哈希为键，在磁盘上保存响应内容以及
+ * ETag、Last-Modified；再次获取时带上 If-None-Match / If-Modified-Since，上游返回 304 时直接使用缓存，
+ * 上游不可用时退回到过期缓存。
+ * <p>
+ * 返回 200 时响应体不先落盘，而是边读边写入缓存，解析线程可以在下载过程中开始解析。
+ * 读取响应体同样有期限：超过 timeout 没有收到数据或整体超过 bodyTimeout 时中止下载，读取方收到
+ * {@link HttpTimeoutException}。中途失败的下载会被记下，下次获取同一规则源时直接使用缓存，
+ * 调用方据此丢弃不完整的解析结果后重新解析缓存内容。
+ * 客户端和它的线程池在多次构建间复用，不再使用时调用 {@link #close()} 释放。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class FetchCache implements Closeable {
+
+    private static final String ETAG = "etag";
+
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private static final String CHARSET = "charset";
+
+    private static final String URL = "url";
+
+    private final File dir;
+
+    private final Duration timeout;
+
+    private final Duration bodyTimeout;
+
+    private final int maxPerHost;
+
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final HttpClient client;
+
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /** 检查正在下载的响应体是否超时 */
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("fetch-watchdog").daemon().factory());
+
+    /** 响应体没有读完的规则源缓存键，下次获取时使用缓存 */
+    private final Set<String> cutOff = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param dir         缓存目录
+     * @param timeout     连接、等待响应头以及读取响应体时两次收到数据之间的超时(ms)
+     * @param bodyTimeout 读取整个响应体的期限(ms)
+     * @param maxPerHost  每个主机的最大并发请求数
+     */
+    public FetchCache(File dir, int timeout, int bodyTimeout, int maxPerHost) {
+        this.dir = dir;
+        this.timeout = Duration.ofMillis(timeout);
+        this.bodyTimeout = Duration.ofMillis(bodyTimeout);
+        this.maxPerHost = maxPerHost;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(this.timeout)
+                .executor(clientExecutor)
+                .build();
+        FileUtil.mkdir(dir);
+    }
+
+    /**
+     * 获取规则源，优先使用条件请求
+     *
+     * @param url      规则源
+     * @param reporter 获取结束时接收报告，流式下载时在内容关闭后才调用
+     * @return 规则内容，上游不可用且没有缓存时返回 null
+     */
+    public SourceContent open(String url, Consumer<SourceReport> reporter) {
+        long start = System.currentTimeMillis();
+        String key = key(url);
+        File body = new File(dir, key + ".body");
+        File metaFile = new File(dir, key + ".meta");
+        Properties meta = body.isFile() ? loadMeta(metaFile) : new Properties();
+        long cachedBytes = body.isFile() ? body.length() : 0;
+
+        // 上次的下载中途失败，本次构建重新解析上一份完整的缓存
+        if (cutOff.remove(key) && body.isFile()) {
+            log.warn("Rule<{}> download was cut off, using cached body", url);
+            try {
+                SourceContent content = SourceContent.ofFile(body, charsetOf(meta));
+                reporter.accept(report(url, FetchStatus.STALE, 0, 0, cachedBytes, start, 0));
+                return content;
+            } catch (IOException e) {
+                log.error("Rule<{}> failed to read cache => {}", url, e.getMessage());
+            }
+        }
+
+        Semaphore permit = hostPermits.computeIfAbsent(host(url), h -> new Semaphore(maxPerHost));
+        permit.acquireUninterruptibly();
+        boolean streaming = false;
+        int status = 0;
+        long ttfb = 0;
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
+                    .GET();
+            if (StrUtil.isNotBlank(meta.getProperty(ETAG))) {
+                request.header("If-None-Match", meta.getProperty(ETAG));
+            }
+            if (StrUtil.isNotBlank(meta.getProperty(LAST_MODIFIED))) {
+                request.header("If-Modified-Since", meta.getProperty(LAST_MODIFIED));
+            }
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            status = response.statusCode();
+            ttfb = System.currentTimeMillis() - start;
+            if (status == 304 && body.isFile()) {
+                response.body().close();
+                reporter.accept(report(url, FetchStatus.NOT_MODIFIED, status, 0, cachedBytes, start, ttfb));
+                return SourceContent.ofFile(body, charsetOf(meta));
+            }
+            if (status / 100 == 2) {
+                Properties fresh = new Properties();
+                fresh.setProperty(URL, url);
+                fresh.setProperty(ETAG, response.headers().firstValue("ETag").orElse(StrUtil.EMPTY));
+                fresh.setProperty(LAST_MODIFIED, response.headers().firstValue("Last-Modified").orElse(StrUtil.EMPTY));
+                fresh.setProperty(CHARSET, charsetOf(response.headers().firstValue("Content-Type").orElse(null)).name());
+                SourceContent content = stream(url, key, response, body, metaFile, fresh, permit, reporter, start, ttfb);
+                streaming = true;
+                return content;
+            }
+            response.body().close();
+            log.warn("Rule<{}> responded {}", url, status);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Rule<{}> fetch interrupted", url);
+        } catch (Exception e) {
+            log.error("Rule<{}> fetch failed => {}", url, e.toString());
+        } finally {
+            if (!streaming) {
+                permit.release();
+            }
+        }
+
+        if (body.isFile()) {
+            log.warn("Rule<{}> upstream unavailable, using stale cache", url);
+            reporter.accept(report(url, FetchStatus.STALE, status, 0, cachedBytes, start, ttfb));
+            try {
+                return SourceContent.ofFile(body, charsetOf(meta));
+            } catch (IOException e) {
+                log.error("Rule<{}> failed to read cache => {}", url, e.getMessage());
+            }
+        }
+        reporter.accept(report(url, FetchStatus.FAILED, status, 0, 0, start, ttfb));
+        return null;
+    }
+
+    @Override
+    public void close() {
+        watchdog.shutdownNow();
+        client.close();
+        clientExecutor.close();
+    }
+
+    /**
+     * 边读边写入临时缓存文件，完整读完后才替换旧缓存，读取中断时丢弃并记下，下次获取时使用旧缓存
+     */
+    private SourceContent stream(String url, String key, HttpResponse<InputStream> response, File body, File metaFile,
+                                 Properties meta, Semaphore permit, Consumer<SourceReport> reporter,
+                                 long start, long ttfb) throws IOException {
+        File tmp = new File(dir, body.getName() + "." + Thread.currentThread().threadId() + ".tmp");
+        TeeInputStream tee = new TeeInputStream(response.body(), Files.newOutputStream(tmp.toPath()));
+        long deadline = System.nanoTime() + bodyTimeout.toNanos();
+        long period = Math.max(1, Math.min(1000, timeout.toMillis() / 4));
+        ScheduledFuture<?> guard = watchdog.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            if (now - deadline > 0) {
+                tee.abort("Body not complete within " + bodyTimeout.toMillis() + " ms");
+            } else if (now - tee.getLastRead() > timeout.toNanos()) {
+                tee.abort("No data for " + timeout.toMillis() + " ms");
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        Charset charset = Charset.forName(meta.getProperty(CHARSET));
+        return SourceContent.ofStream(new HashingInputStream(Hashing.sha256(), tee), charset, () -> {
+            guard.cancel(false);
+            try {
+                tee.close();
+                if (tee.isComplete()) {
+                    Files.move(tmp.toPath(), body.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    storeMeta(meta, metaFile);
+                    reporter.accept(report(url, FetchStatus.DOWNLOADED, response.statusCode(), tee.getCount(), 0,
+                            start, ttfb));
+                } else {
+                    log.warn("Rule<{}> download incomplete, cache not updated", url);
+                    cutOff.add(key);
+                    reporter.accept(report(url, FetchStatus.FAILED, response.statusCode(), tee.getCount(), 0, start, ttfb));
+                }
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+                permit.release();
+            }
+        });
+    }
+
+    private static SourceReport report(String url, FetchStatus status, int httpStatus, long downloaded,
+                                       long saved, long start, long ttfb) {
+        return SourceReport.builder()
+                .source(url)
+                .status(status)
+                .httpStatus(httpStatus)
+                .bytesDownloaded(downloaded)
+                .bytesSaved(saved)
+                .ttfbMillis(ttfb)
+                .fetchMillis(System.currentTimeMillis() - start)
+                .build();
+    }
+
+    /**
+     * 缓存键：规范化 URL 的 SHA-256，协议和主机名不区分大小写
+     */
+    static String key(String url) {
+        String normalized = URLUtil.normalize(StrUtil.trim(url));
+        int hostEnd = normalized.indexOf('/', normalized.indexOf("://") + 3);
+        if (hostEnd < 0) {
+            normalized = normalized.toLowerCase(Locale.ROOT);
+        } else {
+            normalized = normalized.substring(0, hostEnd).toLowerCase(Locale.ROOT) + normalized.substring(hostEnd);
+        }
+        return SecureUtil.sha256(normalized);
+    }
+
+    private static String host(String url) {
+        try {
+            return StrUtil.nullToEmpty(URI.create(url).getHost()).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return StrUtil.EMPTY;
+        }
+    }
+
+    /**
+     * 从 Content-Type 中取出字符集，缺省为 UTF-8
+     */
+    private static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String part : contentType.split(";")) {
+                String param = part.trim();
+                if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                    try {
+                        return Charset.forName(StrUtil.unWrap(param.substring(8).trim(), '"'));
+                    } catch (Exception e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static Charset charsetOf(Properties meta) {
+        try {
+            return Charset.forName(meta.getProperty(CHARSET, StandardCharsets.UTF_8.name()));
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static Properties loadMeta(File file) {
+        Properties meta = new Properties();
+        if (file.isFile()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                meta.load(reader);
+            } catch (IOException e) {
+                log.warn("Failed to read cache meta {} => {}", file.getName(), e.getMessage());
+            }
+        }
+        return meta;
+    }
+
+    private static void storeMeta(Properties meta, File file) {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            meta.store(writer, null);
+        } catch (IOException e) {
+            log.warn("Failed to write cache meta {} => {}", file.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 读取时把内容同时写入缓存文件，超时后由看门狗线程关闭上游连接，阻塞中的读取随即失败
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream copy;
+
+        private long count;
+
+        private boolean complete;
+
+        private boolean closed;
+
+        private volatile long lastRead = System.nanoTime();
+
+        private volatile String timedOut;
+
+        private TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                throw failure(e);
+            }
+            lastRead = System.nanoTime();
+            if (b < 0) {
+                complete = true;
+            } else {
+                copy.write(b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = super.read(b, off, len);
+            } catch (IOException e) {
+                throw failure(e);
+            }
+            lastRead = System.nanoTime();
+            if (n < 0) {
+                complete = true;
+            } else {
+                copy.write(b, off, n);
+                count += n;
+            }
+            return n;
+        }
+
+        /**
+         * @return 被看门狗中止时换成超时异常
+         */
+        private IOException failure(IOException e) {
+            return timedOut != null ? new HttpTimeoutException(timedOut) : e;
+        }
+
+        /**
+         * 只关闭上游，缓存文件仍由读取线程关闭
+         */
+        private void abort(String reason) {
+            if (timedOut != null) {
+                return;
+            }
+            timedOut = reason;
+            try {
+                in.close();
+            } catch (IOException e) {
+                // 已经在失败
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                copy.close();
+            }
+        }
+
+        private boolean isComplete() {
+            return complete && timedOut == null;
+        }
+
+        private long getCount() {
+            return count;
+        }
+
+        private long getLastRead() {
+            return lastRead;
+        }
+    }
+}
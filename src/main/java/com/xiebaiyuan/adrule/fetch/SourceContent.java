@@ -0,0 +1,160 @@
+package com.xiebaiyuan.adrule.fetch;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.digest.DigestAlgorithm;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.ByteStreams;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * 规则源内容
+ * <p>
+ * 内容要么已经在磁盘上（本地文件、缓存命中），此时映射到内存，先计算哈希再决定是否解析，
+ * 解析时直接在映射区域上拆分行；要么是正在下载的响应流，边下载边解析，读完后才能得到内容哈希。
+ *
+ * @author xiebaiyuan
+ */
+public class SourceContent implements Closeable {
+
+    private InputStream stream;
+
+    private final Charset charset;
+
+    /**
+     * 已在磁盘上的内容，流式下载时为 null
+     */
+    private final File file;
+
+    /**
+     * 已在磁盘上的内容的只读映射，超过 2GB 或流式下载时为 null
+     */
+    private final MappedByteBuffer mapped;
+
+    /**
+     * 流式下载时计算内容哈希
+     */
+    private final HashingInputStream hashing;
+
+    private final Closeable onClose;
+
+    private String contentHash;
+
+    private SourceContent(InputStream stream, Charset charset, File file, MappedByteBuffer mapped,
+                          HashingInputStream hashing, Closeable onClose) {
+        this.stream = stream;
+        this.charset = charset;
+        this.file = file;
+        this.mapped = mapped;
+        this.hashing = hashing;
+        this.onClose = onClose;
+    }
+
+    /**
+     * @param file    已在磁盘上的内容
+     * @param charset 编码
+     */
+    public static SourceContent ofFile(File file, Charset charset) throws IOException {
+        // 映射建立后即可关闭通道，映射在缓冲区被回收前一直有效
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer mapped = size <= Integer.MAX_VALUE
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            return new SourceContent(null, charset, file, mapped, null, null);
+        }
+    }
+
+    /**
+     * @param hashing 正在下载的内容，读取时同时计算 SHA-256
+     * @param charset 编码
+     * @param onClose 关闭时调用，用于提交缓存和释放连接
+     */
+    static SourceContent ofStream(HashingInputStream hashing, Charset charset, Closeable onClose) {
+        return new SourceContent(new CountingInputStream(hashing), charset, null, null, hashing, onClose);
+    }
+
+    public InputStream getStream() throws IOException {
+        if (stream == null) {
+            stream = Files.newInputStream(file.toPath());
+        }
+        return stream;
+    }
+
+    /**
+     * @return 内容字节数，流式下载时为目前已读取的字节数
+     */
+    public long getBytesRead() {
+        if (file != null) {
+            return file.length();
+        }
+        return ((CountingInputStream) stream).getCount();
+    }
+
+    /**
+     * @return 映射内容的独立视图，没有映射时返回 null
+     */
+    public ByteBuffer getMapped() {
+        return mapped == null ? null : mapped.duplicate();
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return 内容已在磁盘上时返回内容哈希，流式下载时返回 null
+     */
+    public String getUpfrontHash() {
+        if (file == null) {
+            return null;
+        }
+        if (contentHash == null) {
+            if (mapped != null) {
+                MessageDigest digest = DigestUtil.digester(DigestAlgorithm.SHA256).getDigest();
+                digest.update(mapped.duplicate());
+                contentHash = HexUtil.encodeHexStr(digest.digest());
+            } else {
+                contentHash = DigestUtil.sha256Hex(file);
+            }
+        }
+        return contentHash;
+    }
+
+    /**
+     * 读完剩余内容并返回内容哈希
+     *
+     * @return SHA-256
+     */
+    public String finishHash() throws IOException {
+        if (file != null) {
+            return getUpfrontHash();
+        }
+        ByteStreams.exhaust(stream);
+        return hashing.hash().toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (stream != null) {
+                stream.close();
+            }
+        } finally {
+            if (onClose != null) {
+                onClose.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.xiebaiyuan.adrule.matcher;
+
+/**
+ * 每个线程复用的查询缓冲区，保存小写、去掉末尾点的域名
+ * <p>
+ * 作为 {@link CharSequence} 直接交给后缀树和 {@link java.util.regex.Matcher}，查询不需要创建字符串。
+ *
+ * @author xiebaiyuan
+ */
+final class HostBuffer implements CharSequence {
+
+    private char[] chars = new char[256];
+
+    private int length;
+
+    /**
+     * @param host 查询的域名，ASCII 字母转为小写
+     */
+    HostBuffer set(CharSequence host) {
+        int end = host.length();
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        if (end > chars.length) {
+            chars = new char[end];
+        }
+        for (int i = 0; i < end; i++) {
+            char c = host.charAt(i);
+            chars[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        length = end;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
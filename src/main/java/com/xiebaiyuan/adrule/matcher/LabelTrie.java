@@ -0,0 +1,180 @@
+package com.xiebaiyuan.adrule.matcher;
+
+import java.util.Arrays;
+
+/**
+ * 按域名标签倒序组织的后缀树，查询时不创建对象
+ * <p>
+ * 与 {@link com.xiebaiyuan.adrule.trie.DomainSuffixTrie} 结构相同，但边表的键是 (父节点, 标签哈希)，
+ * 查询直接对输入的字符区间计算哈希，再与节点保存的标签逐字符比较，不需要先截取子串。
+ * 每个节点保存两组类别掩码：作用于子域名的（||example.com^）和只作用于域名本身的。
+ * <p>
+ * 构建在单个线程中完成，构建后只读，可在多个线程间共享。
+ *
+ * @author xiebaiyuan
+ */
+final class LabelTrie {
+
+    private static final int ROOT = 0;
+
+    /** 边表：key = 父节点 << 32 | 标签哈希，value = 子节点 + 1（0 表示空槽） */
+    private long[] edgeKeys = new long[1 << 12];
+
+    private int[] edgeValues = new int[1 << 12];
+
+    private int edgeCount;
+
+    /** 低 4 位作用于子域名，高 4 位只作用于域名本身 */
+    private byte[] flags = new byte[1 << 12];
+
+    private int[] labelStart = new int[1 << 12];
+
+    private int[] labelLength = new int[1 << 12];
+
+    private char[] labelChars = new char[1 << 14];
+
+    private int labelCharCount;
+
+    private int nodeCount = 1;
+
+    /**
+     * @param domain     规范化后的域名
+     * @param category   类别掩码，见 {@link RuleMatcher}
+     * @param subdomains 是否同时作用于子域名
+     */
+    void insert(String domain, int category, boolean subdomains) {
+        int node = ROOT;
+        int end = domain.length();
+        while (end > 0) {
+            int start = domain.lastIndexOf('.', end - 1) + 1;
+            int child = child(node, domain, start, end);
+            if (child < 0) {
+                child = newNode(domain, start, end);
+                putEdge(node, hash(domain, start, end), child);
+            }
+            node = child;
+            end = start - 1;
+        }
+        flags[node] |= (byte) (subdomains ? category : category << 4);
+    }
+
+    /**
+     * 沿域名从顶级域名开始查找，合并路径上作用于子域名的类别以及域名本身的类别
+     *
+     * @param host   小写、无末尾点的域名
+     * @param length 域名长度
+     * @return 命中的类别掩码
+     */
+    int match(CharSequence host, int length) {
+        int mask = 0;
+        int node = ROOT;
+        int end = length;
+        while (end > 0) {
+            int start = end - 1;
+            while (start >= 0 && host.charAt(start) != '.') {
+                start--;
+            }
+            start++;
+            node = child(node, host, start, end);
+            if (node < 0) {
+                return mask;
+            }
+            mask |= flags[node] & 0xF;
+            if (start == 0) {
+                return mask | (flags[node] >>> 4) & 0xF;
+            }
+            end = start - 1;
+        }
+        return mask;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    private int child(int parent, CharSequence text, int start, int end) {
+        long key = edgeKey(parent, hash(text, start, end));
+        int mask = edgeKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (edgeValues[slot] != 0) {
+            if (edgeKeys[slot] == key && sameLabel(edgeValues[slot] - 1, text, start, end)) {
+                return edgeValues[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private boolean sameLabel(int node, CharSequence text, int start, int end) {
+        if (labelLength[node] != end - start) {
+            return false;
+        }
+        int offset = labelStart[node];
+        for (int i = start; i < end; i++) {
+            if (labelChars[offset++] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int newNode(String domain, int start, int end) {
+        if (nodeCount == flags.length) {
+            flags = Arrays.copyOf(flags, nodeCount << 1);
+            labelStart = Arrays.copyOf(labelStart, nodeCount << 1);
+            labelLength = Arrays.copyOf(labelLength, nodeCount << 1);
+        }
+        int length = end - start;
+        if (labelCharCount + length > labelChars.length) {
+            labelChars = Arrays.copyOf(labelChars, Math.max(labelChars.length << 1, labelCharCount + length));
+        }
+        domain.getChars(start, end, labelChars, labelCharCount);
+        labelStart[nodeCount] = labelCharCount;
+        labelLength[nodeCount] = length;
+        labelCharCount += length;
+        return nodeCount++;
+    }
+
+    private void putEdge(int parent, int hash, int child) {
+        if ((edgeCount + 1) * 4L > edgeKeys.length * 3L) {
+            long[] oldKeys = edgeKeys;
+            int[] oldValues = edgeValues;
+            edgeKeys = new long[oldKeys.length << 1];
+            edgeValues = new int[oldValues.length << 1];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    insertEdge(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+        insertEdge(edgeKey(parent, hash), child + 1);
+        edgeCount++;
+    }
+
+    private void insertEdge(long key, int value) {
+        int mask = edgeKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (edgeValues[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        edgeKeys[slot] = key;
+        edgeValues[slot] = value;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    private static long edgeKey(int parent, int hash) {
+        return ((long) parent << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 29));
+    }
+}
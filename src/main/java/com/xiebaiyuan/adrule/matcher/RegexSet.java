@@ -0,0 +1,104 @@
+package com.xiebaiyuan.adrule.matcher;
+
+import com.xiebaiyuan.adrule.classifier.KeywordAutomaton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * 同一类别的正则规则，带字面量预筛选
+ * <p>
+ * 每条规则取出任何匹配都必须包含的最长字面量，所有字面量放进一个 {@link KeywordAutomaton}，
+ * 规则按序号分到 64 个桶里，桶号即字面量的掩码位。查询时先扫描一遍域名，只对命中的桶里的规则
+ * 执行匹配；取不出足够长字面量的规则每次都要匹配。桶内的规则可能被误选，但不会漏选。
+ *
+ * @author xiebaiyuan
+ */
+final class RegexSet {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    /** 每次都要匹配的规则 */
+    private final int[] unfiltered;
+
+    /** 没有带字面量的规则时为 null */
+    private final KeywordAutomaton literals;
+
+    private final int[][] buckets;
+
+    private RegexSet(int[] unfiltered, KeywordAutomaton literals, int[][] buckets) {
+        this.unfiltered = unfiltered;
+        this.literals = literals;
+        this.buckets = buckets;
+    }
+
+    /**
+     * @param host     查询的域名
+     * @param matchers 当前线程的匹配器，按规则序号索引
+     * @return 是否有规则匹配
+     */
+    boolean matches(HostBuffer host, Matcher[] matchers) {
+        for (int id : unfiltered) {
+            if (matchers[id].reset(host).find()) {
+                return true;
+            }
+        }
+        if (literals == null) {
+            return false;
+        }
+        long hits = literals.scan(host, 0);
+        while (hits != 0) {
+            int bucket = Long.numberOfTrailingZeros(hits);
+            hits &= hits - 1;
+            for (int id : buckets[bucket]) {
+                if (matchers[id].reset(host).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static final class Builder {
+
+        private final List<Integer> unfiltered = new ArrayList<>();
+
+        private final List<List<Integer>> buckets = new ArrayList<>();
+
+        private final KeywordAutomaton.Builder literals = KeywordAutomaton.builder();
+
+        private int filtered;
+
+        private Builder() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.add(new ArrayList<>());
+            }
+        }
+
+        /**
+         * @param id      规则序号
+         * @param literal 必须包含的小写字面量，可为 null
+         */
+        Builder add(int id, String literal) {
+            if (literal == null) {
+                unfiltered.add(id);
+            } else {
+                int bucket = filtered++ % BUCKETS;
+                buckets.get(bucket).add(id);
+                literals.add(literal, 1L << bucket);
+            }
+            return this;
+        }
+
+        RegexSet build() {
+            return new RegexSet(unfiltered.stream().mapToInt(Integer::intValue).toArray(),
+                    filtered == 0 ? null : literals.build(),
+                    buckets.stream().map(ids -> ids.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new));
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.xiebaiyuan.adrule.matcher;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.LineHandler;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.dedup.RuleCanonicalizer;
+import com.xiebaiyuan.adrule.enums.Verdict;
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+import com.xiebaiyuan.adrule.regex.RegexAtoms;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 判断域名是否被生成的规则拦截
+ * <p>
+ * DOMAIN/HOSTS 规则放进按标签倒序的后缀树，REGEX 规则按类别编译成带字面量预筛选的 {@link RegexSet}，
+ * ||example.org（没有 ^）、通配符等其他基本规则按 AdGuard 语义转换为正则后同样处理。
+ * 判定遵循 AdGuard DNS 过滤的优先级：@@...$important 例外 > $important 拦截 > @@ 例外 > 拦截，
+ * 每一级先查后缀树，没有命中才匹配该类别的正则。正则不区分大小写。
+ * <p>
+ * DNS 查询没有请求上下文，带 $important 以外修饰符的规则（$dnstype、$client、$denyallow 等）
+ * 无法判定，加载时跳过并计入 {@link #getSkippedRules()}。
+ * <p>
+ * 构建后不可变，可在任意多个线程中查询。查询使用的缓冲区和 {@link Matcher} 放在 {@link Scratch} 中，
+ * 由 {@link #newScratch()} 创建后通过 {@link #match(CharSequence, Scratch)} 显式传入，查询过程不创建对象；
+ * 一个 Scratch 同一时刻只能由一个线程使用。{@link #match(CharSequence)} 使用线程本地的 Scratch，
+ * 只适合复用的平台线程，虚拟线程每个都会重新创建全部 Matcher。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public final class RuleMatcher {
+
+    static final int BLOCK = 1;
+
+    static final int ALLOW = 1 << 1;
+
+    static final int IMPORTANT_BLOCK = 1 << 2;
+
+    static final int IMPORTANT_ALLOW = 1 << 3;
+
+    /** 预筛选字面量的最小长度，更短的字面量几乎每个域名都会命中 */
+    private static final int MIN_LITERAL = 3;
+
+    private final LabelTrie trie;
+
+    private final Pattern[] patterns;
+
+    /** 按类别位序号索引 */
+    private final RegexSet[] regexSets;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /** 加载的域名规则数 */
+    @Getter
+    private final long domainRules;
+
+    /** 加载的正则规则数，包括转换为正则的基本规则 */
+    @Getter
+    private final long regexRules;
+
+    /** 无法判定而跳过的规则数 */
+    @Getter
+    private final long skippedRules;
+
+    private RuleMatcher(Builder builder) {
+        this.trie = builder.trie;
+        this.patterns = builder.patterns.toArray(new Pattern[0]);
+        this.regexSets = new RegexSet[builder.regexSets.length];
+        for (int i = 0; i < regexSets.length; i++) {
+            regexSets[i] = builder.regexSets[i].build();
+        }
+        this.domainRules = builder.domainRules;
+        this.regexRules = builder.patterns.size();
+        this.skippedRules = builder.skippedRules;
+        this.scratch = ThreadLocal.withInitial(this::newScratch);
+    }
+
+    /**
+     * 从规则文件加载，例如生成的 all.txt 或 adgh.txt
+     *
+     * @param files 规则文件
+     */
+    public static RuleMatcher load(File... files) {
+        Builder builder = builder();
+        for (File file : files) {
+            builder.load(file);
+        }
+        return builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param host 域名，大小写和末尾的点不影响结果
+     * @return 匹配结果
+     */
+    public Verdict match(CharSequence host) {
+        return match(host, scratch.get());
+    }
+
+    /**
+     * @param host  域名，大小写和末尾的点不影响结果
+     * @param local 由本匹配器 {@link #newScratch()} 创建的查询状态
+     * @return 匹配结果
+     */
+    public Verdict match(CharSequence host, Scratch local) {
+        if (local.patterns != patterns) {
+            throw new IllegalArgumentException("Scratch was created by another matcher");
+        }
+        HostBuffer buffer = local.host.set(host);
+        int mask = trie.match(buffer, buffer.length());
+        if (hit(mask, IMPORTANT_ALLOW, buffer, local)) {
+            return Verdict.ALLOWED;
+        }
+        if (hit(mask, IMPORTANT_BLOCK, buffer, local)) {
+            return Verdict.BLOCKED;
+        }
+        if (hit(mask, ALLOW, buffer, local)) {
+            return Verdict.ALLOWED;
+        }
+        if (hit(mask, BLOCK, buffer, local)) {
+            return Verdict.BLOCKED;
+        }
+        return Verdict.NONE;
+    }
+
+    /**
+     * @return 新的查询状态，只能用于本匹配器
+     */
+    public Scratch newScratch() {
+        return new Scratch(patterns);
+    }
+
+    /**
+     * @param host 域名
+     * @return 是否被拦截
+     */
+    public boolean isBlocked(CharSequence host) {
+        return match(host) == Verdict.BLOCKED;
+    }
+
+    private boolean hit(int mask, int category, HostBuffer host, Scratch local) {
+        return (mask & category) != 0
+                || regexSets[Integer.numberOfTrailingZeros(category)].matches(host, local.matchers);
+    }
+
+    /**
+     * 查询状态：域名缓冲区和每条正则的 {@link Matcher}，不能在线程之间共享
+     */
+    public static final class Scratch {
+
+        private final HostBuffer host = new HostBuffer();
+
+        private final Pattern[] patterns;
+
+        private final Matcher[] matchers;
+
+        private Scratch(Pattern[] patterns) {
+            this.patterns = patterns;
+            matchers = new Matcher[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                matchers[i] = patterns[i].matcher("");
+            }
+        }
+    }
+
+    /**
+     * 逐条添加规则，单线程使用
+     */
+    public static final class Builder {
+
+        private final LabelTrie trie = new LabelTrie();
+
+        private final List<Pattern> patterns = new ArrayList<>();
+
+        private final RegexSet.Builder[] regexSets = {
+                RegexSet.builder(), RegexSet.builder(), RegexSet.builder(), RegexSet.builder()
+        };
+
+        /** 已添加的 类别 + 表达式，避免重复编译 */
+        private final Set<String> regexKeys = new HashSet<>();
+
+        private long domainRules;
+
+        private long skippedRules;
+
+        private Builder() {
+        }
+
+        /**
+         * @param file 规则文件，! 和 # 开头的注释行被忽略
+         */
+        public Builder load(File file) {
+            FileUtil.readLines(file, StandardCharsets.UTF_8, (LineHandler) this::add);
+            return this;
+        }
+
+        /**
+         * @param rules 规则，例如流水线在内存中的结果
+         */
+        public Builder addAll(Iterable<String> rules) {
+            rules.forEach(this::add);
+            return this;
+        }
+
+        /**
+         * @param line 规则，空行和注释被忽略
+         */
+        public Builder add(String line) {
+            String rule = StrUtil.trim(line);
+            if (StrUtil.isEmpty(rule) || rule.startsWith("!") || rule.startsWith("#")) {
+                return this;
+            }
+            boolean exception = rule.startsWith("@@");
+            String body = exception ? rule.substring(2) : rule;
+            if (body.startsWith("/")) {
+                addRegex(exception, body);
+                return this;
+            }
+            CanonicalRule canonical = RuleCanonicalizer.parse(rule);
+            if (canonical == null) {
+                // ||example.org、-ad. 等不是纯域名的基本规则按 AdGuard 语义转换为正则
+                int dollar = body.indexOf('$');
+                String pattern = basicPattern(dollar < 0 ? body : body.substring(0, dollar));
+                addPattern(exception, pattern, modifiers(dollar < 0 ? "" : body.substring(dollar + 1)));
+                return this;
+            }
+            Boolean important = important(canonical.getModifiers());
+            if (important == null) {
+                skippedRules++;
+                return this;
+            }
+            trie.insert(canonical.getDomain(), category(canonical.isException(), important),
+                    canonical.getAnchor() == CanonicalRule.Anchor.SUBDOMAIN);
+            domainRules++;
+            return this;
+        }
+
+        private void addRegex(boolean exception, String body) {
+            int end = body.endsWith("/") ? body.length() - 1 : body.lastIndexOf("/$");
+            if (end <= 0) {
+                skippedRules++;
+                return;
+            }
+            addPattern(exception, body.substring(1, end), modifiers(end < body.length() - 1 ? body.substring(end + 2) : ""));
+        }
+
+        private void addPattern(boolean exception, String pattern, List<String> modifiers) {
+            Boolean important = important(modifiers);
+            if (pattern == null || important == null) {
+                skippedRules++;
+                return;
+            }
+            int category = category(exception, important);
+            if (!regexKeys.add(category + pattern)) {
+                return;
+            }
+            try {
+                patterns.add(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE));
+            } catch (PatternSyntaxException e) {
+                skippedRules++;
+                return;
+            }
+            regexSets[Integer.numberOfTrailingZeros(category)]
+                    .add(patterns.size() - 1, RegexAtoms.requiredLiteral(pattern, MIN_LITERAL));
+        }
+
+        public RuleMatcher build() {
+            RuleMatcher matcher = new RuleMatcher(this);
+            log.info("规则匹配器构建完成，域名规则: {}，树节点: {}，正则规则: {}，跳过: {}",
+                    matcher.domainRules, trie.getNodeCount(), matcher.regexRules, matcher.skippedRules);
+            return matcher;
+        }
+
+        /**
+         * 基本规则转换为正则：|| 匹配域名或子域名的开头，| 是字符串边界，* 是任意字符，
+         * 结尾的 ^ 在域名中只能匹配结尾
+         *
+         * @return 无法在域名上匹配的写法返回 null
+         */
+        private static String basicPattern(String rule) {
+            int from = 0;
+            StringBuilder pattern = new StringBuilder();
+            if (rule.startsWith("||")) {
+                pattern.append("(?:^|\\.)");
+                from = 2;
+            } else if (rule.startsWith("|")) {
+                pattern.append('^');
+                from = 1;
+            }
+            int to = rule.length();
+            boolean end = to > from && (rule.charAt(to - 1) == '|' || rule.charAt(to - 1) == '^');
+            if (end) {
+                to--;
+            }
+            if (from >= to) {
+                return null;
+            }
+            for (int i = from; i < to; i++) {
+                char c = rule.charAt(i);
+                if (c == '*') {
+                    pattern.append(".*");
+                } else if (c == '.') {
+                    pattern.append("\\.");
+                } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                    pattern.append(c);
+                } else {
+                    return null;
+                }
+            }
+            return end ? pattern.append('$').toString() : pattern.toString();
+        }
+
+        private static List<String> modifiers(String part) {
+            List<String> modifiers = new ArrayList<>();
+            if (!part.isEmpty()) {
+                for (String modifier : part.split(",")) {
+                    modifiers.add(modifier.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            return modifiers;
+        }
+
+        /**
+         * @return 修饰符只有 $important 或没有修饰符时返回是否 important，其他修饰符返回 null
+         */
+        private static Boolean important(List<String> modifiers) {
+            if (modifiers.isEmpty()) {
+                return false;
+            }
+            if (modifiers.size() == 1 && "important".equals(modifiers.get(0))) {
+                return true;
+            }
+            return null;
+        }
+
+        private static int category(boolean exception, boolean important) {
+            if (exception) {
+                return important ? IMPORTANT_ALLOW : ALLOW;
+            }
+            return important ? IMPORTANT_BLOCK : BLOCK;
+        }
+    }
+}
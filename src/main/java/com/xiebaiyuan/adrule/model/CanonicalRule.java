@@ -0,0 +1,57 @@
+package com.xiebaiyuan.adrule.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 规范化后的域名类规则
+ * <p>
+ * hosts 条目、纯域名以及 adblock 写法的域名规则都会被解析成这一形式，
+ * 用于去重和后续的域名分析。
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@AllArgsConstructor
+public class CanonicalRule {
+
+    /**
+     * 是否为 @@ 例外规则
+     */
+    private final boolean exception;
+
+    /**
+     * 匹配范围
+     */
+    private final Anchor anchor;
+
+    /**
+     * 小写、punycode 形式的域名
+     */
+    private final String domain;
+
+    /**
+     * 按规范顺序排列的修饰符，没有修饰符时为空列表
+     */
+    private final List<String> modifiers;
+
+    /**
+     * 规范化键，相同语义的规则键相同
+     */
+    private final String key;
+
+    public enum Anchor {
+
+        /**
+         * ||example.com^，匹配域名及其所有子域名
+         */
+        SUBDOMAIN,
+
+        /**
+         * example.com、|example.com^ 以及 0.0.0.0 example.com，只匹配域名本身
+         */
+        EXACT
+    }
+}
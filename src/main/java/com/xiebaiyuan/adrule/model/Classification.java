@@ -0,0 +1,42 @@
+package com.xiebaiyuan.adrule.model;
+
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 单行规则的分类结果
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@AllArgsConstructor
+public class Classification {
+
+    /**
+     * 规则类型，无效时为 null
+     */
+    private final RuleType type;
+
+    /**
+     * 拒绝原因，有效时为 null
+     */
+    private final RejectReason reason;
+
+    /**
+     * 清理后的内容，清理阶段即被拒绝时为空字符串
+     */
+    private final String content;
+
+    public boolean isValid() {
+        return type != null;
+    }
+
+    /**
+     * @return 是否在清理阶段就被拒绝（不参与去重）
+     */
+    public boolean isCleanRejected() {
+        return content.isEmpty();
+    }
+}
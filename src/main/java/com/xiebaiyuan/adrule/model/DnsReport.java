@@ -0,0 +1,38 @@
+package com.xiebaiyuan.adrule.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * DNS 服务统计，计数从启动开始累计，QPS 和延迟只统计最近一个周期
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class DnsReport {
+
+    /** 统计时间 */
+    private String generatedAt;
+
+    /** 查询数 */
+    private long queries;
+
+    /** 拦截数 */
+    private long blocked;
+
+    /** 转发给上游的查询数 */
+    private long forwarded;
+
+    /** 无法解析或上游失败的查询数 */
+    private long failed;
+
+    /** 规则替换次数 */
+    private long swaps;
+
+    /** 最近一个周期的每秒查询数 */
+    private double qps;
+
+    /** 最近一个周期的应答延迟 */
+    private LatencyReport latency;
+}
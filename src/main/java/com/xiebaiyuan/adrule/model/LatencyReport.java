@@ -0,0 +1,31 @@
+package com.xiebaiyuan.adrule.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 延迟分布快照，百分位取所在桶的上界
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class LatencyReport {
+
+    /** 记录次数 */
+    private long count;
+
+    /** 平均耗时(µs) */
+    private double meanMicros;
+
+    private double p50Micros;
+
+    private double p90Micros;
+
+    private double p99Micros;
+
+    private double p999Micros;
+
+    /** 最大耗时(µs) */
+    private double maxMicros;
+}
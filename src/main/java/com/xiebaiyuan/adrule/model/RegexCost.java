@@ -0,0 +1,26 @@
+package com.xiebaiyuan.adrule.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 单条正则规则在探测域名上的匹配开销
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class RegexCost {
+
+    /** 规则 */
+    private String rule;
+
+    /** 平均每个域名读取字符的次数 */
+    private long stepsPerMatch;
+
+    /** 单个域名上最多读取字符的次数 */
+    private long maxSteps;
+
+    /** 平均每个域名的匹配耗时(ns) */
+    private long nanosPerMatch;
+}
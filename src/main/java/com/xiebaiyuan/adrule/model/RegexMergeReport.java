@@ -0,0 +1,44 @@
+package com.xiebaiyuan.adrule.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 正则规则合并结果，开销按验证域名逐条匹配全部正则规则估算
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class RegexMergeReport {
+
+    /** 合并前的正则规则数 */
+    private long rulesBefore;
+
+    /** 合并后的正则规则数 */
+    private long rulesAfter;
+
+    /** 生成的合并规则数 */
+    private long combined;
+
+    /** 含反向引用、内联标志或命名分组而不参与合并的规则数 */
+    private long incompatible;
+
+    /** 验证结果不一致而保留原规则的分组数 */
+    private long fallbacks;
+
+    /** 验证域名数 */
+    private int corpus;
+
+    /** 合并前平均每个域名读取字符的次数 */
+    private long stepsPerHostBefore;
+
+    /** 合并后平均每个域名读取字符的次数 */
+    private long stepsPerHostAfter;
+
+    /** 合并前平均每个域名的匹配耗时(ns) */
+    private long nanosPerHostBefore;
+
+    /** 合并后平均每个域名的匹配耗时(ns) */
+    private long nanosPerHostAfter;
+}
@@ -0,0 +1,36 @@
+package com.xiebaiyuan.adrule.model;
+
+import com.xiebaiyuan.adrule.enums.QuarantineReason;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 正则规则审查结果
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class RegexReport {
+
+    /** 审查的正则规则数 */
+    private long vetted;
+
+    /** 各原因隔离的规则数 */
+    private Map<QuarantineReason, Long> quarantined;
+
+    /** 每条规则的步数预算，按单个探测域名计 */
+    private long stepBudget;
+
+    /** 探测域名数 */
+    private int probes;
+
+    /** 开销最大的通过审查的规则 */
+    private List<RegexCost> mostExpensive;
+
+    /** 合并结果，未开启合并时为 null */
+    private RegexMergeReport merge;
+}
@@ -49,4 +49,16 @@ public class RuleStats {
     
     /** 无效规则数 */
     private long invalidRules;
+    
+    /** 重复规则数（精确去重） */
+    private long duplicateRules;
+    
+    /** 被父域名规则覆盖而移除的规则数 */
+    private long subsumedRules;
+
+    /** 改写为域名规则而消除的正则规则数 */
+    private long rewrittenRegexRules;
+
+    /** 审查时被隔离而移除的正则规则数 */
+    private long quarantinedRules;
 }
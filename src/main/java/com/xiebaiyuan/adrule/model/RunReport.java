@@ -0,0 +1,43 @@
+package com.xiebaiyuan.adrule.model;
+
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.stats.SourceStats;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单次运行的报告，与输出文件一起写入 run-report.json，文件头中的统计也来自同一份数据
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class RunReport {
+
+    /** 生成时间 */
+    private String generatedAt;
+
+    /** 汇总统计 */
+    private RuleStats totals;
+
+    /** 全部规则源按原因汇总的拒绝数 */
+    private Map<RejectReason, Long> rejected;
+
+    /** 正则规则审查结果 */
+    private RegexReport regex;
+
+    /** 每个父域名覆盖并裁剪的规则数，从多到少 */
+    private Map<String, Integer> subsumedByParent;
+
+    /** 单次获取、分类（抽样）和批量写入的延迟分布 */
+    private Map<String, LatencyReport> latencies;
+
+    /** 各阶段耗时 */
+    private Map<String, StageReport> stages;
+
+    /** 各规则源的获取和解析统计 */
+    private List<SourceStats> sources;
+}
@@ -0,0 +1,36 @@
+package com.xiebaiyuan.adrule.model;
+
+import com.xiebaiyuan.adrule.enums.FetchStatus;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 单个规则源的获取报告
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class SourceReport {
+
+    /** 规则源 */
+    private String source;
+
+    /** 获取结果 */
+    private FetchStatus status;
+
+    /** HTTP 状态码，本地文件或请求失败时为 0 */
+    private int httpStatus;
+
+    /** 本次下载的字节数 */
+    private long bytesDownloaded;
+
+    /** 使用缓存节省的字节数 */
+    private long bytesSaved;
+
+    /** 从发出请求到收到响应头的耗时(ms)，未收到响应时为 0 */
+    private long ttfbMillis;
+
+    /** 获取耗时(ms)，流式下载时包含读完响应体的时间 */
+    private long fetchMillis;
+}
@@ -0,0 +1,23 @@
+package com.xiebaiyuan.adrule.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 单个阶段的耗时
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class StageReport {
+
+    /** 墙钟时间(ms)，最早开始到最晚结束 */
+    private long wallMillis;
+
+    /** 各任务累计耗时(ms) */
+    private long busyMillis;
+
+    /** 任务数 */
+    private long tasks;
+}
@@ -0,0 +1,211 @@
+package com.xiebaiyuan.adrule.output;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * 外部归并排序
+ * <p>
+ * 按内存预算把输入切分为多个顺串，每个顺串在内存中并行排序；输入超出预算时顺串写入临时文件，
+ * 最后做 k 路归并。输入能放进一个顺串时不落盘，直接写出结果。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class ExternalSorter {
+
+    /**
+     * 每个字符串的估算固定开销：对象头、数组头和引用
+     */
+    private static final long STRING_OVERHEAD = 64;
+
+    private final Comparator<String> comparator;
+
+    private final long memoryBudget;
+
+    private final Path tempDir;
+
+    /**
+     * 是否去掉排序后相邻的重复行
+     */
+    private final boolean distinct;
+
+    /**
+     * @param comparator   排序规则
+     * @param memoryBudget 单个顺串占用的内存上限，字节
+     * @param tempDir      临时顺串所在目录
+     */
+    public ExternalSorter(Comparator<String> comparator, long memoryBudget, Path tempDir) {
+        this(comparator, memoryBudget, tempDir, false);
+    }
+
+    /**
+     * @param comparator   排序规则
+     * @param memoryBudget 单个顺串占用的内存上限，字节
+     * @param tempDir      临时顺串所在目录
+     * @param distinct     是否去重，比较结果为 0 的行只输出一次
+     */
+    public ExternalSorter(Comparator<String> comparator, long memoryBudget, Path tempDir, boolean distinct) {
+        this.comparator = comparator;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+        this.distinct = distinct;
+    }
+
+    /**
+     * 排序
+     *
+     * @param in     输入，每行一条
+     * @param filter 需要保留的行
+     * @param out    输出文件，以 CRLF 分隔
+     * @return 输出的行数
+     */
+    public long sort(BufferedReader in, Predicate<String> filter, Path out) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try {
+            List<String> buffer = new ArrayList<>();
+            long bufferBytes = 0;
+            long count = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!filter.test(line)) {
+                    continue;
+                }
+                buffer.add(line);
+                bufferBytes += STRING_OVERHEAD + 2L * line.length();
+                count++;
+                if (bufferBytes >= memoryBudget) {
+                    runs.add(spill(buffer));
+                    buffer.clear();
+                    bufferBytes = 0;
+                }
+            }
+            if (runs.isEmpty()) {
+                return write(sortRun(buffer), out);
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(spill(buffer));
+                buffer.clear();
+            }
+            long written = merge(runs, out);
+            log.debug("Merged {} runs into {} => {} lines", runs.size(), out.getFileName(), written);
+            return written;
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private String[] sortRun(List<String> buffer) {
+        String[] run = buffer.toArray(new String[0]);
+        Arrays.parallelSort(run, comparator);
+        return run;
+    }
+
+    private Path spill(List<String> buffer) throws IOException {
+        Path run = Files.createTempFile(tempDir, ".sort-", ".run");
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (String line : sortRun(buffer)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return run;
+    }
+
+    private long write(String[] lines, Path out) throws IOException {
+        long written = 0;
+        String previous = null;
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                if (isDuplicate(previous, line)) {
+                    continue;
+                }
+                writer.write(line);
+                writer.write(StrUtil.CRLF);
+                previous = line;
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private boolean isDuplicate(String previous, String line) {
+        return distinct && previous != null && comparator.compare(previous, line) == 0;
+    }
+
+    /**
+     * k 路归并，堆中每个元素是一个顺串的当前行
+     */
+    private long merge(List<Path> runs, Path out) throws IOException {
+        long written = 0;
+        String previous = null;
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(runs.size(),
+                (a, b) -> comparator.compare(a.current, b.current));
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(Files.newBufferedReader(run, StandardCharsets.UTF_8));
+                readers.add(reader);
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+            while (!heap.isEmpty()) {
+                RunReader reader = heap.poll();
+                if (!isDuplicate(previous, reader.current)) {
+                    writer.write(reader.current);
+                    writer.write(StrUtil.CRLF);
+                    previous = reader.current;
+                    written++;
+                }
+                if (reader.advance()) {
+                    heap.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        return written;
+    }
+
+    private static final class RunReader {
+
+        private final BufferedReader reader;
+
+        private String current;
+
+        private RunReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        private boolean advance() throws IOException {
+            current = reader.readLine();
+            return current != null;
+        }
+
+        private void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.warn("Failed to close sort run => {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.xiebaiyuan.adrule.output;
+
+import com.xiebaiyuan.adrule.enums.RuleType;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个规则线程的批量提交器，非线程安全
+ * <p>
+ * 每个输出文件攒满 {@link RuleOutput#BATCH_SIZE} 条后提交给对应的写入线程。
+ *
+ * @author xiebaiyuan
+ */
+public class RuleBatch {
+
+    private final RuleOutput output;
+
+    private final Map<RuleFileWriter, List<String>> buffers = new IdentityHashMap<>();
+
+    RuleBatch(RuleOutput output) {
+        this.output = output;
+    }
+
+    /**
+     * 添加一条规则到该类型对应的所有输出文件
+     *
+     * @param type 规则类型
+     * @param rule 规则
+     */
+    public void add(RuleType type, String rule) {
+        for (RuleFileWriter writer : output.writersOf(type)) {
+            List<String> buffer = buffers.computeIfAbsent(writer, w -> new ArrayList<>(RuleOutput.BATCH_SIZE));
+            buffer.add(rule);
+            if (buffer.size() >= RuleOutput.BATCH_SIZE) {
+                writer.submit(buffer);
+                buffers.put(writer, new ArrayList<>(RuleOutput.BATCH_SIZE));
+            }
+        }
+    }
+
+    /**
+     * 提交剩余的规则
+     */
+    public void flush() {
+        buffers.forEach(RuleFileWriter::submit);
+        buffers.clear();
+    }
+}
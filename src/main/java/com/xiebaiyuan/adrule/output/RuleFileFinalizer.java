@@ -0,0 +1,121 @@
+package com.xiebaiyuan.adrule.output;
+
+import com.xiebaiyuan.adrule.Util;
+import com.xiebaiyuan.adrule.model.RuleStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * 输出文件定稿
+ * <p>
+ * 读取写入线程产生的临时正文，去掉被裁剪的规则后通过 {@link ExternalSorter} 排序写入有序正文，
+ * 再把文件头和有序正文通过 {@link FileChannel#transferTo} 拼接成临时文件，
+ * 最后原子重命名替换正式文件，使用方不会读到写了一半的规则列表。
+ * 写入线程失败时不替换正式文件，保留上一次的规则列表。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class RuleFileFinalizer {
+
+    private final RuleFileWriter writer;
+
+    private final RuleStats stats;
+
+    private final Set<String> excluded;
+
+    private final long sortMemory;
+
+    public RuleFileFinalizer(RuleFileWriter writer, RuleStats stats, Set<String> excluded, long sortMemory) {
+        this.writer = writer;
+        this.stats = stats;
+        this.excluded = excluded;
+        this.sortMemory = sortMemory;
+    }
+
+    /**
+     * @return 正式文件
+     */
+    public File getFile() {
+        return writer.getFile();
+    }
+
+    /**
+     * 生成正式文件
+     *
+     * @throws IOException 读写失败，或写入线程失败导致正文不完整
+     */
+    public void run() throws IOException {
+        File file = writer.getFile();
+        Path body = writer.getBody().toPath();
+        Path sorted = sibling(file, ".sorted");
+        Path target = sibling(file, ".tmp");
+        try {
+            if (writer.isFailed()) {
+                throw new IOException("Incomplete rule body, keep the previous " + file.getName());
+            }
+            long count = writeSorted(body, sorted);
+            byte[] header = Util.buildHeader(stats, file.getName(), count).getBytes(StandardCharsets.UTF_8);
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 FileChannel in = FileChannel.open(sorted, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.wrap(header);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                long position = 0;
+                long size = in.size();
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                out.force(false);
+            }
+            move(target, file.toPath());
+            log.info("Rule<{}> finalized => {} rules", file.getName(), count);
+        } finally {
+            Files.deleteIfExists(body);
+            Files.deleteIfExists(sorted);
+            Files.deleteIfExists(target);
+        }
+    }
+
+    /**
+     * 过滤并排序正文
+     *
+     * @return 规则数
+     */
+    private long writeSorted(Path body, Path sorted) throws IOException {
+        if (!Files.exists(body)) {
+            Files.createFile(body);
+        }
+        ExternalSorter sorter = new ExternalSorter(RuleOrder.COMPARATOR, sortMemory, body.getParent());
+        try (BufferedReader reader = Files.newBufferedReader(body, StandardCharsets.UTF_8)) {
+            return sorter.sort(reader, rule -> !rule.trim().isEmpty() && !rule.trim().startsWith("#") &&
+                    !excluded.contains(rule), sorted);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path sibling(File file, String suffix) {
+        return new File(file.getParentFile(), "." + file.getName() + suffix).toPath();
+    }
+}
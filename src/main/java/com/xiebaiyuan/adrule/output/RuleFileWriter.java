@@ -0,0 +1,159 @@
+package com.xiebaiyuan.adrule.output;
+
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 单个输出文件的专用写入线程
+ * <p>
+ * 规则线程把批量规则放入有界队列，队列满时阻塞提交方形成背压；
+ * 只有本线程会写这个文件，不再需要文件锁。规则先写入同目录下的临时正文文件，
+ * 由 {@link RuleFileFinalizer} 加上文件头后替换正式文件。写入失败时 {@link #close()} 抛出异常，
+ * 不完整的正文不会被发布，正式文件保持上一次的内容。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class RuleFileWriter implements Runnable {
+
+    /**
+     * 队列结束标记
+     */
+    private static final List<String> END = Collections.emptyList();
+
+    private final File file;
+
+    private final File body;
+
+    private final BlockingQueue<List<String>> queue;
+
+    private final Thread thread;
+
+    private final LatencyHistogram latency;
+
+    private long written;
+
+    /**
+     * 写入线程遇到的异常或提交被中断，close 之后读取
+     */
+    private volatile IOException failure;
+
+    public RuleFileWriter(File file, int capacity, LatencyHistogram latency) {
+        this.file = file;
+        this.latency = latency;
+        this.body = new File(file.getParentFile(), "." + file.getName() + ".body");
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this, "rule-writer-" + file.getName());
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * 提交一批规则，队列满时阻塞
+     *
+     * @param batch 规则
+     */
+    public void submit(List<String> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while writing to {}, {} rules dropped", file.getName(), batch.size());
+            // 丢了规则的正文不完整，和写入异常一样在 close 时失败，不能当作完整文件发布
+            failure = new InterruptedIOException(batch.size() + " rules dropped, submit interrupted");
+        }
+    }
+
+    /**
+     * 写完队列中剩余的规则后结束线程
+     *
+     * @throws IOException 写入线程写入失败，临时正文不完整
+     */
+    public void close() throws IOException, InterruptedException {
+        queue.put(END);
+        thread.join();
+        if (failure != null) {
+            throw new IOException("Error writing to file, " + file.getPath(), failure);
+        }
+    }
+
+    @Override
+    public void run() {
+        try (BufferedWriter writer = Files.newBufferedWriter(body.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            List<String> batch;
+            while ((batch = queue.take()) != END) {
+                long start = System.nanoTime();
+                for (String rule : batch) {
+                    writer.write(rule);
+                    writer.write(StrUtil.CRLF);
+                }
+                latency.record(System.nanoTime() - start);
+                written += batch.size();
+            }
+        } catch (IOException e) {
+            log.error("Error writing to file, {} => {}", file.getPath(), e.getMessage());
+            failure = e;
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new InterruptedIOException("Writer thread interrupted");
+        }
+    }
+
+    /**
+     * 写入失败后继续消费队列，避免提交方一直阻塞
+     */
+    private void drain() {
+        try {
+            while (queue.take() != END) {
+                // discard
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return 临时正文文件
+     */
+    public File getBody() {
+        return body;
+    }
+
+    /**
+     * @return 写入是否失败，close 之后读取
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return 已写入的规则数，close 之后读取
+     */
+    public long getWritten() {
+        return written;
+    }
+}
@@ -0,0 +1,37 @@
+package com.xiebaiyuan.adrule.output;
+
+import java.util.Comparator;
+
+/**
+ * 输出文件中规则的排序规则
+ * <p>
+ * 依次为排除规则（-开头）、正则规则（/开头/结尾）、例外规则（@@开头）、普通规则，
+ * 每种类型内部按字母顺序排序。
+ *
+ * @author xiebaiyuan
+ */
+public final class RuleOrder {
+
+    public static final Comparator<String> COMPARATOR = Comparator.comparingInt(RuleOrder::category)
+            .thenComparing(Comparator.naturalOrder());
+
+    private RuleOrder() {
+    }
+
+    /**
+     * @param rule 规则
+     * @return 规则所属类型的顺序
+     */
+    public static int category(String rule) {
+        if (rule.startsWith("-")) {
+            return 0;
+        }
+        if (rule.startsWith("/") && (rule.endsWith("/") || rule.contains("/$"))) {
+            return 1;
+        }
+        if (rule.startsWith("@@")) {
+            return 2;
+        }
+        return 3;
+    }
+}
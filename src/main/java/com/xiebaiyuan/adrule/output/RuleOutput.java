@@ -0,0 +1,123 @@
+package com.xiebaiyuan.adrule.output;
+
+import cn.hutool.core.io.FileUtil;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.RuleStats;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 输出子系统
+ * <p>
+ * 每个配置的输出文件对应一个 {@link RuleFileWriter}，规则线程通过 {@link RuleBatch}
+ * 在分类时按批提交规则，不再把整个规则源缓存在内存中。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class RuleOutput {
+
+    /**
+     * 每个写入线程最多排队的批次数
+     */
+    static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * 每批规则数
+     */
+    static final int BATCH_SIZE = 1024;
+
+    private final Map<File, RuleFileWriter> writers = new LinkedHashMap<>();
+
+    private final Map<RuleType, List<RuleFileWriter>> typeWriters = new EnumMap<>(RuleType.class);
+
+    /**
+     * 所有文件排序共用的内存预算，字节
+     */
+    private final long sortMemory;
+
+    /**
+     * @param writeLatency 记录每批规则的写入耗时
+     */
+    public RuleOutput(Map<RuleType, Set<File>> typeFileMap, long sortMemory, LatencyHistogram writeLatency) {
+        this.sortMemory = sortMemory;
+        typeFileMap.forEach((type, files) -> typeWriters.put(type, files.stream()
+                .map(file -> writers.computeIfAbsent(file, f -> new RuleFileWriter(f, QUEUE_CAPACITY, writeLatency)))
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * 启动所有写入线程
+     */
+    public void start() {
+        writers.values().forEach(RuleFileWriter::start);
+    }
+
+    /**
+     * @return 供单个规则线程使用的批量提交器
+     */
+    public RuleBatch newBatch() {
+        return new RuleBatch(this);
+    }
+
+    List<RuleFileWriter> writersOf(RuleType type) {
+        return typeWriters.getOrDefault(type, Collections.emptyList());
+    }
+
+    /**
+     * 等待所有写入线程写完并结束，所有规则线程结束后调用
+     *
+     * @throws IOException 任一文件写入失败，其余文件的失败作为 suppressed 附加；此时不再定稿，删除所有临时正文
+     */
+    public void close() throws IOException, InterruptedException {
+        IOException failure = null;
+        for (RuleFileWriter writer : writers.values()) {
+            try {
+                writer.close();
+                log.info("Rule<{}> written => {}", writer.getFile().getName(), writer.getWritten());
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            writers.values().forEach(writer -> FileUtil.del(writer.getBody()));
+            throw failure;
+        }
+    }
+
+    /**
+     * 放弃本次输出，{@link #close()} 之后调用，删除所有临时正文，正式文件保持不变
+     */
+    public void discard() {
+        writers.values().forEach(writer -> FileUtil.del(writer.getBody()));
+    }
+
+    /**
+     * 为每个输出文件创建一个独立的收尾任务，{@link #close()} 之后调用，任务之间可以并行执行
+     *
+     * @param stats    统计数据
+     * @param excluded 每个文件需要移除的规则
+     */
+    public List<RuleFileFinalizer> finalizers(RuleStats stats, Function<File, Set<String>> excluded) {
+        // 所有文件同时排序，平分内存预算
+        long fileSortMemory = sortMemory / Math.max(1, writers.size());
+        return writers.values().stream()
+                .map(writer -> new RuleFileFinalizer(writer, stats, excluded.apply(writer.getFile()), fileSortMemory))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,133 @@
+package com.xiebaiyuan.adrule.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * 按字节拆分行，不解码
+ * <p>
+ * 流按块读入复用的缓冲区；已映射到内存的文件直接在映射区域上查找行边界，不经过中间缓冲。
+ * <p>
+ * 行结束符与 {@link java.io.BufferedReader#readLine()} 一致：\n、\r 或 \r\n，
+ * 末尾没有结束符的内容也是一行。只适用于 {@link #isSplittable(Charset)} 的字符集，
+ * 这些字符集中 \r 和 \n 不会出现在多字节字符内部。
+ *
+ * @author xiebaiyuan
+ */
+public class ByteLineReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<Charset> SPLITTABLE = Set.of(
+            StandardCharsets.UTF_8, StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1);
+
+    private final InputStream in;
+
+    public ByteLineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * 是否可以按字节拆分行，且 ASCII 字节按 ASCII 解码
+     */
+    public static boolean isSplittable(Charset charset) {
+        return SPLITTABLE.contains(charset);
+    }
+
+    /**
+     * 逐行回调，回调中的数组会被复用，需要时自行复制
+     */
+    public void forEach(LineHandler handler) throws IOException, InterruptedException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int pos = 0;
+        int limit = 0;
+        int lineStart = 0;
+        boolean afterCr = false;
+        while (true) {
+            if (pos == limit) {
+                // 把未结束的行移到开头，一行超过缓冲区时扩容
+                int pending = limit - lineStart;
+                if (pending == buf.length) {
+                    byte[] grown = new byte[buf.length * 2];
+                    System.arraycopy(buf, lineStart, grown, 0, pending);
+                    buf = grown;
+                } else if (lineStart > 0) {
+                    System.arraycopy(buf, lineStart, buf, 0, pending);
+                }
+                lineStart = 0;
+                pos = pending;
+                limit = pending;
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) {
+                    if (pending > 0) {
+                        handler.line(buf, 0, pending);
+                    }
+                    return;
+                }
+                limit += n;
+                continue;
+            }
+            byte b = buf[pos];
+            if (afterCr) {
+                afterCr = false;
+                if (b == '\n') {
+                    lineStart = ++pos;
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                handler.line(buf, lineStart, pos - lineStart);
+                afterCr = b == '\r';
+                lineStart = ++pos;
+            } else {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * 在内存映射等缓冲区上逐行回调，不复制内容
+     *
+     * @param buffer  内容，从 position 读到 limit
+     * @param handler 回调，偏移为缓冲区中的绝对位置
+     */
+    public static void forEach(ByteBuffer buffer, BufferLineHandler handler) throws IOException, InterruptedException {
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        for (int pos = lineStart; pos < limit; pos++) {
+            byte b = buffer.get(pos);
+            if (b == '\n' || b == '\r') {
+                handler.line(buffer, lineStart, pos - lineStart);
+                if (b == '\r' && pos + 1 < limit && buffer.get(pos + 1) == '\n') {
+                    pos++;
+                }
+                lineStart = pos + 1;
+            }
+        }
+        if (lineStart < limit) {
+            handler.line(buffer, lineStart, limit - lineStart);
+        }
+    }
+
+    /**
+     * 行回调
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+
+        void line(byte[] data, int off, int len) throws IOException, InterruptedException;
+    }
+
+    /**
+     * 缓冲区行回调
+     */
+    @FunctionalInterface
+    public interface BufferLineHandler {
+
+        void line(ByteBuffer data, int off, int len) throws IOException, InterruptedException;
+    }
+}
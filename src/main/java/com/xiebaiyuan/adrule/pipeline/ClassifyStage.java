@@ -0,0 +1,242 @@
+package com.xiebaiyuan.adrule.pipeline;
+
+import cn.hutool.core.util.CharUtil;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.classifier.RuleClassifier;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.model.Classification;
+import com.xiebaiyuan.adrule.snapshot.ParsedLine;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分类阶段
+ * <p>
+ * 读取线程（IO，每个规则源一个虚拟线程）把未解码的行按块提交，同时在分类的块数有上限，
+ * 达到上限时读取线程阻塞，下载速度不会超过分类速度太多。每块在 fork-join 池中继续对半拆分，
+ * 空闲的分类线程可以窃取其他块的一半，大规则源不会只占用一个核心。
+ * 注释等一定会被丢弃的纯 ASCII 行直接在字节上判定，不创建字符串。
+ * 分类和规范化与顺序无关；分类结果由读取线程按原始顺序依次去重和输出，
+ * 快照和"首次出现"的去重语义不变。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class ClassifyStage {
+
+    /**
+     * 拆分到不超过该行数后直接分类
+     */
+    static final int SPLIT_LINES = 128;
+
+    /**
+     * 每 64 行记录一次单行分类耗时
+     */
+    private static final int LATENCY_SAMPLE_MASK = 63;
+
+    private final RuleClassifier classifier;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * 同时在分类的块数
+     */
+    private final Semaphore slots;
+
+    private final int capacity;
+
+    /**
+     * 每块行数
+     */
+    @Getter
+    private final int chunkLines;
+
+    /**
+     * 读取线程因在分类的块数达到上限而阻塞的次数和时间
+     */
+    private final LongAdder producerStalls = new LongAdder();
+
+    private final LongAdder producerStallNanos = new LongAdder();
+
+    /**
+     * 提交时在分类的块数
+     */
+    private final LongAdder depthSum = new LongAdder();
+
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder chunks = new LongAdder();
+
+    private final LongAdder lines = new LongAdder();
+
+    /**
+     * 在字节上直接拒绝、没有解码的行数
+     */
+    private final LongAdder quickRejects = new LongAdder();
+
+    /**
+     * 单行分类耗时，抽样记录
+     */
+    private final LatencyHistogram latency;
+
+    public ClassifyStage(RuleClassifier classifier, int threads, int queueCapacity, int chunkLines,
+                         LatencyHistogram latency) {
+        this.classifier = classifier;
+        this.latency = latency;
+        this.capacity = queueCapacity;
+        this.slots = new Semaphore(queueCapacity);
+        this.chunkLines = chunkLines;
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("rule-classify-" + worker.getPoolIndex());
+            return worker;
+        }, null, false);
+    }
+
+    /**
+     * 提交一块待分类的行，在分类的块数达到上限时阻塞
+     *
+     * @return 分类完成的同一块，结果已完成规范化
+     */
+    public CompletableFuture<LineChunk> submit(LineChunk chunk) throws InterruptedException {
+        int depth = capacity - slots.availablePermits();
+        depthSum.add(depth);
+        maxDepth.accumulate(depth);
+        if (!slots.tryAcquire()) {
+            long start = System.nanoTime();
+            slots.acquire();
+            producerStalls.increment();
+            producerStallNanos.add(System.nanoTime() - start);
+        }
+        CompletableFuture<LineChunk> result = new CompletableFuture<>();
+        pool.execute(() -> {
+            try {
+                chunk.prepare();
+                new ClassifyTask(chunk, 0, chunk.getSize()).invoke();
+                chunks.increment();
+                lines.add(chunk.getSize());
+                result.complete(chunk);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                slots.release();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 清理并分类一行规则
+     */
+    public ParsedLine classify(String line) {
+        Classification result = classifier.classify(line);
+        return new ParsedLine(line, result.getType(), result.getReason(), result.isCleanRejected());
+    }
+
+    /**
+     * 所有读取线程结束后调用，等待分类线程退出
+     */
+    public void close() throws InterruptedException {
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 输出在分类的块数、阻塞时间和窃取次数
+     */
+    public void log() {
+        long count = chunks.sum();
+        log.info("Classify<{} threads> chunks => {}, lines => {} ({} rejected undecoded), in flight avg => {}, max => {}, "
+                        + "reader stalls => {} ({} ms), steals => {}",
+                pool.getParallelism(), count, lines.sum(), quickRejects.sum(), count == 0 ? 0 : depthSum.sum() / count, maxDepth.get(),
+                producerStalls.sum(), producerStallNanos.sum() / 1_000_000, pool.getStealCount());
+    }
+
+    /**
+     * 分类一行：纯 ASCII 的行先尝试在字节上直接判定，只有无法判定时才解码
+     */
+    private void classify(LineChunk chunk, int index) {
+        byte[] data = chunk.getData();
+        int from = chunk.getStart(index);
+        int to = chunk.getEnd(index);
+        if (isAscii(data, from, to)) {
+            while (from < to && CharUtil.isBlankChar(data[from])) {
+                from++;
+            }
+            while (to > from && CharUtil.isBlankChar(data[to - 1])) {
+                to--;
+            }
+            if (from == to) {
+                return;
+            }
+            RejectReason reason = classifier.quickReject(data, from, to);
+            if (reason != null) {
+                quickRejects.increment();
+                chunk.setRejected(index, reason);
+                return;
+            }
+        }
+        String line = chunk.getLine(index);
+        if (StrUtil.isBlank(line)) {
+            return;
+        }
+        ParsedLine parsed = classify(line);
+        parsed.canonicalize();
+        chunk.setParsed(index, parsed);
+    }
+
+    private static boolean isAscii(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 对半拆分直到足够小，再逐行分类
+     */
+    private class ClassifyTask extends RecursiveAction {
+
+        private final LineChunk chunk;
+
+        private final int from;
+
+        private final int to;
+
+        private ClassifyTask(LineChunk chunk, int from, int to) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_LINES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ClassifyTask(chunk, from, mid), new ClassifyTask(chunk, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if ((i & LATENCY_SAMPLE_MASK) == 0) {
+                    long start = System.nanoTime();
+                    classify(chunk, i);
+                    latency.record(System.nanoTime() - start);
+                } else {
+                    classify(chunk, i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.xiebaiyuan.adrule.pipeline;
+
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.snapshot.ParsedLine;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 一块原始行
+ * <p>
+ * 所有行的字节依次保存在同一个数组中，读取时不为每行创建字符串。
+ * 分类后每行的结果为以下三种之一：
+ * <ul>
+ *     <li>{@link #getParsed(int)} 不为 null：解码后完整分类的结果</li>
+ *     <li>{@link #getRejected(int)} 不为 null：在字节上直接判定的清理阶段拒绝，没有创建字符串</li>
+ *     <li>都为 null：空白行，忽略</li>
+ * </ul>
+ *
+ * @author xiebaiyuan
+ */
+public class LineChunk {
+
+    /**
+     * 内容字符集，ASCII 部分必须与 ASCII 一致
+     */
+    @Getter
+    private final Charset charset;
+
+    private byte[] data;
+
+    private int length;
+
+    private int[] starts;
+
+    private int[] ends;
+
+    @Getter
+    private int size;
+
+    private ParsedLine[] parsed;
+
+    private RejectReason[] rejected;
+
+    public LineChunk(Charset charset, int lines) {
+        this.charset = charset;
+        this.data = new byte[lines * 64];
+        this.starts = new int[lines];
+        this.ends = new int[lines];
+    }
+
+    /**
+     * 追加一行，复制内容
+     */
+    public void add(byte[] src, int off, int len) {
+        reserve(len);
+        System.arraycopy(src, off, data, length, len);
+        append(len);
+    }
+
+    /**
+     * 追加一行，从缓冲区的绝对位置批量复制
+     */
+    public void add(ByteBuffer src, int off, int len) {
+        reserve(len);
+        src.get(off, data, length, len);
+        append(len);
+    }
+
+    /**
+     * 追加一行字符串，用于不能按字节拆分行的字符集，以 UTF-8 保存
+     */
+    public void add(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        add(bytes, 0, bytes.length);
+    }
+
+    private void reserve(int len) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        if (length + len > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + len));
+        }
+    }
+
+    private void append(int len) {
+        starts[size] = length;
+        length += len;
+        ends[size] = length;
+        size++;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * 解码一行
+     */
+    public String getLine(int index) {
+        return new String(data, starts[index], ends[index] - starts[index], charset);
+    }
+
+    public ParsedLine getParsed(int index) {
+        return parsed == null ? null : parsed[index];
+    }
+
+    public RejectReason getRejected(int index) {
+        return rejected == null ? null : rejected[index];
+    }
+
+    /**
+     * 分类前调用，分配结果数组
+     */
+    void prepare() {
+        parsed = new ParsedLine[size];
+        rejected = new RejectReason[size];
+    }
+
+    void setParsed(int index, ParsedLine line) {
+        parsed[index] = line;
+    }
+
+    void setRejected(int index, RejectReason reason) {
+        rejected[index] = reason;
+    }
+}
@@ -0,0 +1,60 @@
+package com.xiebaiyuan.adrule.pipeline;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 构建流程的阶段
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+@AllArgsConstructor
+public enum Stage {
+
+    /**
+     * 打开规则源：本地文件、缓存或远程响应头
+     */
+    FETCH("Fetch"),
+
+    /**
+     * 读取、分类、去重
+     */
+    PARSE("Parse"),
+
+    /**
+     * 父域名覆盖裁剪
+     */
+    MERGE("Merge"),
+
+    /**
+     * 编译并探测正则规则
+     */
+    VET("Vet"),
+
+    /**
+     * 合并修饰符相同的正则规则
+     */
+    COMBINE("Combine"),
+
+    /**
+     * 等待写入线程写完临时正文
+     */
+    WRITE("Write"),
+
+    /**
+     * 排序、加文件头、替换正式文件
+     */
+    FINALIZE("Finalize"),
+
+    /**
+     * 提取域名黑白名单
+     */
+    EXTRACT("Extract")
+    ;
+
+    /**
+     * Description
+     */
+    private final String desc;
+}
@@ -0,0 +1,117 @@
+package com.xiebaiyuan.adrule.pipeline;
+
+import com.xiebaiyuan.adrule.model.StageReport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 阶段计时
+ * <p>
+ * 同一阶段可能有多个任务并行执行，分别记录墙钟时间（最早开始到最晚结束）、
+ * 累计耗时和任务数。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class StageTimer {
+
+    private final Map<Stage, Timing> timings = new EnumMap<>(Stage.class);
+
+    public StageTimer() {
+        for (Stage stage : Stage.values()) {
+            timings.put(stage, new Timing());
+        }
+    }
+
+    /**
+     * 包装一个计时任务，受检异常包装为 {@link CompletionException} 向后传播
+     */
+    public <T> Supplier<T> time(Stage stage, Callable<T> task) {
+        return () -> {
+            Timing timing = timings.get(stage);
+            long start = System.nanoTime();
+            timing.start.accumulate(-start);
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                long end = System.nanoTime();
+                timing.end.accumulate(end);
+                timing.busy.add(end - start);
+                timing.tasks.incrementAndGet();
+            }
+        };
+    }
+
+    /**
+     * 包装一个无返回值的计时任务
+     */
+    public Runnable time(Stage stage, ThrowingRunnable task) {
+        Supplier<Void> supplier = time(stage, () -> {
+            task.run();
+            return null;
+        });
+        return supplier::get;
+    }
+
+    /**
+     * 输出各阶段耗时
+     */
+    public void log() {
+        snapshot().forEach((stage, report) -> log.info("Stage<{}> wall => {} ms, busy => {} ms, tasks => {}",
+                stage.getDesc(), report.getWallMillis(), report.getBusyMillis(), report.getTasks()));
+    }
+
+    /**
+     * @return 已执行过的阶段的耗时，按阶段顺序
+     */
+    public Map<Stage, StageReport> snapshot() {
+        Map<Stage, StageReport> reports = new EnumMap<>(Stage.class);
+        timings.forEach((stage, timing) -> {
+            long tasks = timing.tasks.get();
+            if (tasks == 0) {
+                return;
+            }
+            reports.put(stage, StageReport.builder()
+                    .wallMillis((timing.end.get() + timing.start.get()) / 1_000_000)
+                    .busyMillis(timing.busy.sum() / 1_000_000)
+                    .tasks(tasks)
+                    .build());
+        });
+        return reports;
+    }
+
+    /**
+     * 可抛出受检异常的任务
+     */
+    @FunctionalInterface
+    public interface ThrowingRunnable {
+
+        void run() throws Exception;
+    }
+
+    private static final class Timing {
+
+        /**
+         * 记录的是开始时间的相反数，取最大值即得到最早的开始时间
+         */
+        private final LongAccumulator start = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        private final LongAccumulator end = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+        private final LongAdder busy = new LongAdder();
+
+        private final AtomicLong tasks = new AtomicLong();
+    }
+}
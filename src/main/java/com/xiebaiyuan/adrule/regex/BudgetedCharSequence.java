@@ -0,0 +1,62 @@
+package com.xiebaiyuan.adrule.regex;
+
+/**
+ * 统计正则引擎读取字符次数的输入
+ * <p>
+ * {@link java.util.regex.Matcher} 每次回溯都会重新读取字符，读取次数即为匹配的步数，
+ * 超过预算时抛出 {@link BudgetExceededException} 中止匹配。
+ *
+ * @author xiebaiyuan
+ */
+final class BudgetedCharSequence implements CharSequence {
+
+    private final String text;
+
+    private final long budget;
+
+    private long steps;
+
+    BudgetedCharSequence(String text, long budget) {
+        this.text = text;
+        this.budget = budget;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (++steps > budget) {
+            throw BudgetExceededException.INSTANCE;
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    long getSteps() {
+        return steps;
+    }
+
+    /**
+     * 步数超过预算，不记录堆栈
+     */
+    static final class BudgetExceededException extends RuntimeException {
+
+        static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super("Step budget exceeded", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.xiebaiyuan.adrule.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 探测用的域名集合
+ * <p>
+ * 固定种子生成，每次运行相同：一部分是常见形态的域名，另一部分是各种字符重复到
+ * 单个标签或整个域名长度上限的长域名，后缀故意不匹配，用来触发嵌套量词的回溯。
+ *
+ * @author xiebaiyuan
+ */
+final class ProbeCorpus {
+
+    /** 单个标签最大长度 */
+    private static final int MAX_LABEL = 63;
+
+    /** 域名最大长度 */
+    private static final int MAX_NAME = 253;
+
+    private static final String LABEL_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789-";
+
+    private static final String[] TLDS = {"com", "net", "org", "cn", "io", "xyz", "top", "co.uk", "com.cn"};
+
+    private static final int RANDOM_HOSTS = 192;
+
+    private static final List<String> HOSTNAMES = Collections.unmodifiableList(generate(20240601L));
+
+    private ProbeCorpus() {
+    }
+
+    static List<String> hostnames() {
+        return HOSTNAMES;
+    }
+
+    private static List<String> generate(long seed) {
+        Random random = new Random(seed);
+        List<String> hosts = new ArrayList<>();
+        for (int i = 0; i < RANDOM_HOSTS; i++) {
+            int labels = 1 + random.nextInt(4);
+            StringBuilder host = new StringBuilder();
+            for (int j = 0; j < labels; j++) {
+                host.append(label(random, 1 + random.nextInt(j == 0 ? 24 : 12))).append('.');
+            }
+            hosts.add(host.append(TLDS[random.nextInt(TLDS.length)]).toString());
+        }
+        for (char c : new char[]{'a', '0', '-', 'x'}) {
+            for (int length = 16; length < MAX_LABEL; length *= 2) {
+                hosts.add(String.valueOf(c).repeat(length) + ".com");
+                hosts.add(String.valueOf(c).repeat(length) + ".invalid-");
+            }
+            hosts.add(String.valueOf(c).repeat(MAX_LABEL) + ".com");
+            hosts.add(String.valueOf(c).repeat(MAX_LABEL) + "." + String.valueOf(c).repeat(MAX_LABEL) + ".-");
+        }
+        // 整个域名长度上限：短标签重复
+        for (String label : new String[]{"a.", "ab.", "a-", "a1.", "ad."}) {
+            String host = label.repeat((MAX_NAME - 4) / label.length()) + "zz";
+            hosts.add(host);
+            hosts.add(host.substring(0, Math.min(host.length(), MAX_NAME - 4)) + ".com");
+        }
+        return hosts;
+    }
+
+    private static String label(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            // 首尾不能是 -
+            int bound = i == 0 || i == length - 1 ? LABEL_CHARS.length() - 1 : LABEL_CHARS.length();
+            chars[i] = LABEL_CHARS.charAt(random.nextInt(bound));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,202 @@
+package com.xiebaiyuan.adrule.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 把表达式切分为顶层原子（字面量、转义、字符类、分组），每个原子带上紧随的量词
+ * <p>
+ * 只做词法切分，不验证语法，切分出的原子按顺序拼接后与原表达式相同。
+ *
+ * @author xiebaiyuan
+ */
+public final class RegexAtoms {
+
+    private RegexAtoms() {
+    }
+
+    /**
+     * @param pattern 表达式
+     * @return 顶层原子，顶层含 | 或无法切分时返回 null
+     */
+    public static List<String> split(String pattern) {
+        List<String> atoms = new ArrayList<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            int start = i;
+            char c = pattern.charAt(i);
+            if (c == '|' || c == ')') {
+                return null;
+            } else if (c == '\\') {
+                i = escapeEnd(pattern, i);
+            } else if (c == '[') {
+                i = classEnd(pattern, i);
+            } else if (c == '(') {
+                i = groupEnd(pattern, i);
+            } else {
+                i++;
+            }
+            if (i < 0 || i > pattern.length()) {
+                return null;
+            }
+            i = quantifierEnd(pattern, i);
+            atoms.add(pattern.substring(start, i));
+        }
+        return atoms;
+    }
+
+    private static int escapeEnd(String pattern, int i) {
+        if (i + 1 >= pattern.length()) {
+            return -1;
+        }
+        char c = pattern.charAt(i + 1);
+        if ((c == 'p' || c == 'P' || c == 'N' || c == 'x') && i + 2 < pattern.length() && pattern.charAt(i + 2) == '{') {
+            int close = pattern.indexOf('}', i);
+            return close < 0 ? -1 : close + 1;
+        }
+        switch (c) {
+            case 'p':
+            case 'P':
+            case 'c':
+                return i + 3;
+            case 'x':
+                return i + 4;
+            case 'u':
+                return i + 6;
+            case '0':
+                int end = i + 2;
+                while (end < pattern.length() && end < i + 5 && pattern.charAt(end) >= '0' && pattern.charAt(end) <= '7') {
+                    end++;
+                }
+                return end;
+            default:
+                return i + 2;
+        }
+    }
+
+    /**
+     * 字符类可以嵌套，紧跟 [ 或 [^ 的 ] 是字面量
+     */
+    private static int classEnd(String pattern, int i) {
+        int j = i + 1;
+        if (j < pattern.length() && pattern.charAt(j) == '^') {
+            j++;
+        }
+        if (j < pattern.length() && pattern.charAt(j) == ']') {
+            j++;
+        }
+        while (j < pattern.length()) {
+            char c = pattern.charAt(j);
+            if (c == '\\') {
+                j = escapeEnd(pattern, j);
+                if (j < 0) {
+                    return -1;
+                }
+            } else if (c == '[') {
+                j = classEnd(pattern, j);
+                if (j < 0) {
+                    return -1;
+                }
+            } else if (c == ']') {
+                return j + 1;
+            } else {
+                j++;
+            }
+        }
+        return -1;
+    }
+
+    private static int groupEnd(String pattern, int i) {
+        int depth = 0;
+        int j = i;
+        while (j < pattern.length()) {
+            char c = pattern.charAt(j);
+            if (c == '\\') {
+                j = escapeEnd(pattern, j);
+            } else if (c == '[') {
+                j = classEnd(pattern, j);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return j + 1;
+                }
+                j++;
+            }
+            if (j < 0) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int quantifierEnd(String pattern, int i) {
+        if (i >= pattern.length()) {
+            return i;
+        }
+        char c = pattern.charAt(i);
+        int end = i;
+        if (c == '?' || c == '*' || c == '+') {
+            end = i + 1;
+        } else if (c == '{') {
+            int close = pattern.indexOf('}', i);
+            if (close > 0 && pattern.substring(i + 1, close).matches("\\d+(,\\d*)?")) {
+                end = close + 1;
+            }
+        }
+        // 懒惰或占有
+        if (end > i && end < pattern.length() && (pattern.charAt(end) == '?' || pattern.charAt(end) == '+')) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * 任何匹配都必须包含的最长字面量，用于匹配前的预筛选
+     *
+     * @param pattern   表达式
+     * @param minLength 字面量的最小长度
+     * @return 小写的字面量，不存在或短于 {@code minLength} 时返回 null
+     */
+    public static String requiredLiteral(String pattern, int minLength) {
+        List<String> atoms = split(pattern);
+        if (atoms == null) {
+            return null;
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        for (String atom : atoms) {
+            char literal = literal(atom);
+            String quantifier = literal == 0 ? "" : atom.substring(atom.charAt(0) == '\\' ? 2 : 1);
+            if (literal != 0 && quantifier.isEmpty()) {
+                run.append(literal);
+                continue;
+            }
+            // 量词为 + 时该字符必然出现，但之后的字符不再连续
+            if (literal != 0 && "+".equals(quantifier)) {
+                run.append(literal);
+            }
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+        }
+        if (run.length() > longest.length()) {
+            longest = run.toString();
+        }
+        return longest.length() >= minLength ? longest.toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * @return 原子表示的单个字面字符（忽略量词），不是字面字符时返回 0
+     */
+    private static char literal(String atom) {
+        char c = atom.charAt(0);
+        if (c == '\\') {
+            char escaped = atom.length() > 1 ? atom.charAt(1) : 0;
+            return Character.isLetterOrDigit(escaped) ? 0 : escaped;
+        }
+        return ".^$[(".indexOf(c) >= 0 ? 0 : c;
+    }
+}
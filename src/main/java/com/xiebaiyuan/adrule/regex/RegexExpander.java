@@ -0,0 +1,443 @@
+package com.xiebaiyuan.adrule.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把只能匹配有限个域名的正则规则改写为域名规则
+ * <p>
+ * 表达式先解析成只包含字面量、字符类、分组、选择和有限次重复的语法树，
+ * 出现 . * + 反向引用、分组外的 | 等无法有限展开的结构时放弃。能改写的只有两种形态：
+ * <ul>
+ *     <li>^X$，只匹配 X 本身，改写为纯域名 example.com</li>
+ *     <li>^(\S+\.)?X$、(^|\.)X$ 等，匹配 X 及其子域名，改写为 ||example.com^</li>
+ * </ul>
+ * 展开结果超过上限、包含大写字母或不是合法域名时保留原正则。
+ *
+ * @author xiebaiyuan
+ */
+public class RegexExpander {
+
+    /**
+     * 在域名上等价于"任意子域名前缀"的写法，^ 之后
+     */
+    private static final String[] SUBDOMAIN_PREFIXES = {
+            "(.*\\.)?", "(.+\\.)?", "(\\S+\\.)?", "(\\S*\\.)?", "(?:.*\\.)?", "(?:.+\\.)?", "(?:\\S+\\.)?",
+            "(?:\\S*\\.)?", "(.*\\.)*", "([^.]+\\.)*", "(?:[^.]+\\.)*", "([a-z0-9-]+\\.)*", "(?:[a-z0-9-]+\\.)*"
+    };
+
+    /**
+     * 自带起始锚点的子域名前缀
+     */
+    private static final String[] ANCHORED_SUBDOMAIN_PREFIXES = {"(^|\\.)", "(?:^|\\.)"};
+
+    private static final String DIGITS = "0123456789";
+
+    /** 域名最大长度，重复次数不会超过它 */
+    private static final int MAX_NAME = 253;
+
+    private final int maxExpansion;
+
+    /**
+     * @param maxExpansion 单条正则最多改写成的域名规则数
+     */
+    public RegexExpander(int maxExpansion) {
+        this.maxExpansion = maxExpansion;
+    }
+
+    /**
+     * @param line 正则规则，可带 @@ 前缀和 $important
+     * @return 等价的域名规则，无法改写时返回 null
+     */
+    public List<String> expand(String line) {
+        String rule = line.trim();
+        String prefix = "";
+        if (rule.startsWith("@@")) {
+            prefix = "@@";
+            rule = rule.substring(2);
+        }
+        String suffix = "";
+        if (rule.endsWith("/$important")) {
+            suffix = "$important";
+            rule = rule.substring(0, rule.length() - suffix.length());
+        }
+        if (rule.length() < 3 || rule.charAt(0) != '/' || rule.charAt(rule.length() - 1) != '/') {
+            return null;
+        }
+        String pattern = rule.substring(1, rule.length() - 1);
+
+        boolean subdomains = false;
+        String body = null;
+        if (pattern.startsWith("^")) {
+            body = pattern.substring(1);
+            for (String sub : SUBDOMAIN_PREFIXES) {
+                if (body.startsWith(sub)) {
+                    subdomains = true;
+                    body = body.substring(sub.length());
+                    break;
+                }
+            }
+        } else {
+            for (String sub : ANCHORED_SUBDOMAIN_PREFIXES) {
+                if (pattern.startsWith(sub)) {
+                    subdomains = true;
+                    body = pattern.substring(sub.length());
+                    break;
+                }
+            }
+        }
+        if (body == null || !body.endsWith("$") || body.endsWith("\\$")) {
+            return null;
+        }
+        body = body.substring(0, body.length() - 1);
+
+        Set<String> names;
+        try {
+            Node node = new Parser(body).parse();
+            names = node.expand(maxExpansion);
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+        if (names == null || names.isEmpty()) {
+            return null;
+        }
+        List<String> rules = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (!isHostname(name)) {
+                return null;
+            }
+            rules.add(prefix + (subdomains ? "||" + name + "^" : name) + suffix);
+        }
+        return rules;
+    }
+
+    /**
+     * 小写字母、数字、- 和 _ 组成的非空标签，以 . 分隔，标签首尾不能是 -
+     */
+    private static boolean isHostname(String name) {
+        if (name.isEmpty() || name.startsWith(".") || name.endsWith(".") || name.contains("..")
+                || name.startsWith("-") || name.endsWith("-") || name.contains("-.") || name.contains(".-")) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 语法树节点
+     */
+    private abstract static class Node {
+
+        /**
+         * @return 匹配的所有字符串，超过 {@code limit} 个时返回 null
+         */
+        abstract Set<String> expand(int limit);
+    }
+
+    /**
+     * 单个字符或字符类
+     */
+    private static final class Chars extends Node {
+
+        private final String chars;
+
+        private Chars(String chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        Set<String> expand(int limit) {
+            if (chars.length() > limit) {
+                return null;
+            }
+            Set<String> result = new LinkedHashSet<>();
+            for (int i = 0; i < chars.length(); i++) {
+                result.add(String.valueOf(chars.charAt(i)));
+            }
+            return result;
+        }
+    }
+
+    private static final class Concat extends Node {
+
+        private final List<Node> parts;
+
+        private Concat(List<Node> parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        Set<String> expand(int limit) {
+            Set<String> result = Collections.singleton("");
+            for (Node part : parts) {
+                Set<String> next = part.expand(limit);
+                if (next == null || (long) result.size() * next.size() > limit) {
+                    return null;
+                }
+                Set<String> product = new LinkedHashSet<>();
+                for (String head : result) {
+                    for (String tail : next) {
+                        product.add(head + tail);
+                    }
+                }
+                result = product;
+            }
+            return result;
+        }
+    }
+
+    private static final class Alternation extends Node {
+
+        private final List<Node> options;
+
+        private Alternation(List<Node> options) {
+            this.options = options;
+        }
+
+        @Override
+        Set<String> expand(int limit) {
+            Set<String> result = new LinkedHashSet<>();
+            for (Node option : options) {
+                Set<String> next = option.expand(limit);
+                if (next == null) {
+                    return null;
+                }
+                result.addAll(next);
+                if (result.size() > limit) {
+                    return null;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 有限次重复，? 即 {0,1}
+     */
+    private static final class Repeat extends Node {
+
+        private final Node node;
+
+        private final int min;
+
+        private final int max;
+
+        private Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        Set<String> expand(int limit) {
+            Set<String> one = node.expand(limit);
+            if (one == null) {
+                return null;
+            }
+            Set<String> result = new LinkedHashSet<>();
+            Set<String> current = Collections.singleton("");
+            for (int count = 0; count <= max; count++) {
+                if (count >= min) {
+                    result.addAll(current);
+                    if (result.size() > limit) {
+                        return null;
+                    }
+                }
+                if (count == max) {
+                    break;
+                }
+                if ((long) current.size() * one.size() > limit) {
+                    return null;
+                }
+                Set<String> next = new LinkedHashSet<>();
+                for (String head : current) {
+                    for (String tail : one) {
+                        next.add(head + tail);
+                    }
+                }
+                current = next;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 递归下降解析，遇到不支持的结构抛出 {@link UnsupportedOperationException}
+     */
+    private static final class Parser {
+
+        private final String pattern;
+
+        private int pos;
+
+        private Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        /**
+         * 顶层不允许出现分组外的 |：去掉的 ^ 只作用于第一个分支，$ 只作用于最后一个分支，
+         * 例如 ^a\.com|b\.net$ 还能匹配 a.com.evil.org 和 xb.net，不能当作两个完整域名展开
+         */
+        Node parse() {
+            Node node = concat();
+            if (pos != pattern.length()) {
+                throw new UnsupportedOperationException();
+            }
+            return node;
+        }
+
+        private Node alternation() {
+            List<Node> options = new ArrayList<>();
+            options.add(concat());
+            while (peek() == '|') {
+                pos++;
+                options.add(concat());
+            }
+            return options.size() == 1 ? options.get(0) : new Alternation(options);
+        }
+
+        private Node concat() {
+            List<Node> parts = new ArrayList<>();
+            while (pos < pattern.length() && peek() != '|' && peek() != ')') {
+                parts.add(quantified(atom()));
+            }
+            return parts.size() == 1 ? parts.get(0) : new Concat(parts);
+        }
+
+        private Node quantified(Node atom) {
+            Node node = atom;
+            while (pos < pattern.length()) {
+                char c = peek();
+                if (c == '?') {
+                    pos++;
+                    node = new Repeat(node, 0, 1);
+                } else if (c == '{') {
+                    int close = pattern.indexOf('}', pos);
+                    if (close < 0) {
+                        throw new UnsupportedOperationException();
+                    }
+                    String[] bounds = pattern.substring(pos + 1, close).split(",", -1);
+                    int min = number(bounds[0]);
+                    int max = bounds.length == 1 ? min : number(bounds[1]);
+                    if (bounds.length > 2 || max < min || max > MAX_NAME) {
+                        throw new UnsupportedOperationException();
+                    }
+                    pos = close + 1;
+                    node = new Repeat(node, min, max);
+                } else if (c == '*' || c == '+') {
+                    throw new UnsupportedOperationException();
+                } else {
+                    break;
+                }
+                // 懒惰和占有量词的匹配范围不变，但仍然放弃，保持解析器简单
+                if (pos < pattern.length() && (peek() == '?' || peek() == '+')) {
+                    throw new UnsupportedOperationException();
+                }
+            }
+            return node;
+        }
+
+        private Node atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '(':
+                    if (pattern.startsWith("?:", pos)) {
+                        pos += 2;
+                    } else if (peek() == '?') {
+                        // 断言、命名分组等
+                        throw new UnsupportedOperationException();
+                    }
+                    Node group = alternation();
+                    if (pos >= pattern.length() || pattern.charAt(pos++) != ')') {
+                        throw new UnsupportedOperationException();
+                    }
+                    return group;
+                case '[':
+                    return charClass();
+                case '\\':
+                    return new Chars(escape());
+                case '.':
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case ')':
+                    throw new UnsupportedOperationException();
+                default:
+                    return new Chars(String.valueOf(c));
+            }
+        }
+
+        private Node charClass() {
+            if (peek() == '^') {
+                throw new UnsupportedOperationException();
+            }
+            StringBuilder chars = new StringBuilder();
+            while (pos < pattern.length() && peek() != ']') {
+                String from = pattern.charAt(pos) == '\\' ? nextEscape() : String.valueOf(pattern.charAt(pos++));
+                if (from.length() == 1 && peek() == '-' && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    String to = pattern.charAt(pos) == '\\' ? nextEscape() : String.valueOf(pattern.charAt(pos++));
+                    if (to.length() != 1 || to.charAt(0) < from.charAt(0)) {
+                        throw new UnsupportedOperationException();
+                    }
+                    for (char c = from.charAt(0); c <= to.charAt(0); c++) {
+                        chars.append(c);
+                    }
+                } else {
+                    chars.append(from);
+                }
+            }
+            if (pos >= pattern.length()) {
+                throw new UnsupportedOperationException();
+            }
+            pos++;
+            return new Chars(chars.chars().distinct()
+                    .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString());
+        }
+
+        private String nextEscape() {
+            pos++;
+            return escape();
+        }
+
+        /**
+         * 反斜杠之后的转义，只支持 \d 和转义的标点
+         */
+        private String escape() {
+            if (pos >= pattern.length()) {
+                throw new UnsupportedOperationException();
+            }
+            char c = pattern.charAt(pos++);
+            if (c == 'd') {
+                return DIGITS;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                throw new UnsupportedOperationException();
+            }
+            return String.valueOf(c);
+        }
+
+        private char peek() {
+            return pos < pattern.length() ? pattern.charAt(pos) : 0;
+        }
+
+        private static int number(String s) {
+            try {
+                return Integer.parseInt(s.trim());
+            } catch (NumberFormatException e) {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+}
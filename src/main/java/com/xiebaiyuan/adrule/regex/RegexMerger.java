@@ -0,0 +1,321 @@
+package com.xiebaiyuan.adrule.regex;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.TimeInterval;
+import com.google.common.collect.Lists;
+import com.xiebaiyuan.adrule.model.RegexMergeReport;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * 把修饰符相同的正则规则合并成少量选择表达式
+ * <p>
+ * 下游逐条匹配正则规则，规则条数决定了每次查询的开销。例外标记和修饰符都相同的规则按字典序
+ * 每至多 {@code groupSize} 条合并为一条：表达式按顶层原子（字面量、转义、字符类、分组及其量词）
+ * 切分后建成前缀树，共同前缀只匹配一次，例如 ^admarvel\. 和 ^admaster\. 合并为
+ * ^adma(?:rvel\.|ster\.)。顶层含 | 的表达式整体作为一个原子。含反向引用、内联标志或命名分组
+ * 的规则合并后语义可能改变，不参与合并。
+ * <p>
+ * 每条合并规则都在 {@link ProbeCorpus} 和抽样的域名上验证：匹配结果必须与其成员的并集完全一致，
+ * 否则保留原规则。验证时顺带统计读取字符的次数和耗时，作为合并前后的开销估算。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class RegexMerger {
+
+    private final int groupSize;
+
+    /**
+     * @param groupSize 一条合并规则最多包含的规则数
+     */
+    public RegexMerger(int groupSize) {
+        this.groupSize = groupSize;
+    }
+
+    /**
+     * @param rules   通过审查的正则规则
+     * @param domains 额外的验证域名
+     */
+    public Result merge(List<String> rules, List<String> domains) {
+        TimeInterval interval = DateUtil.timer();
+        List<String> hosts = new ArrayList<>(ProbeCorpus.hostnames());
+        hosts.addAll(domains);
+
+        List<String> sorted = rules.stream().distinct().sorted().collect(Collectors.toList());
+        Map<String, List<Member>> groups = new TreeMap<>();
+        long incompatible = 0;
+        for (String rule : sorted) {
+            Member member = Member.parse(rule);
+            if (member == null) {
+                incompatible++;
+                continue;
+            }
+            groups.computeIfAbsent(member.key(), key -> new ArrayList<>()).add(member);
+        }
+
+        Map<String, Probe> before = sorted.parallelStream()
+                .collect(Collectors.toMap(Function.identity(), rule -> probe(Pattern.compile(RegexVetter.pattern(rule)), hosts)));
+
+        List<List<Member>> chunks = groups.values().stream()
+                .flatMap(group -> Lists.partition(group, chunkSize(group.size())).stream())
+                .filter(chunk -> chunk.size() > 1)
+                .collect(Collectors.toList());
+        List<Combined> merged = chunks.parallelStream()
+                .map(chunk -> combine(chunk, before, hosts))
+                .collect(Collectors.toList());
+
+        Set<String> replaced = new HashSet<>();
+        List<String> combined = new ArrayList<>();
+        long fallbacks = 0;
+        long stepsBefore = before.values().stream().mapToLong(probe -> probe.steps).sum();
+        long nanosBefore = before.values().stream().mapToLong(probe -> probe.nanos).sum();
+        long stepsAfter = stepsBefore;
+        long nanosAfter = nanosBefore;
+        for (Combined result : merged) {
+            if (result.probe == null) {
+                fallbacks++;
+                log.warn("Combined regex does not match like its {} members, keeping them: {}",
+                        result.members.size(), result.rule);
+                continue;
+            }
+            combined.add(result.rule);
+            for (Member member : result.members) {
+                replaced.add(member.rule);
+                stepsAfter -= before.get(member.rule).steps;
+                nanosAfter -= before.get(member.rule).nanos;
+            }
+            stepsAfter += result.probe.steps;
+            nanosAfter += result.probe.nanos;
+        }
+
+        int size = Math.max(1, hosts.size());
+        RegexMergeReport report = RegexMergeReport.builder()
+                .rulesBefore(sorted.size())
+                .rulesAfter(sorted.size() - replaced.size() + combined.size())
+                .combined(combined.size())
+                .incompatible(incompatible)
+                .fallbacks(fallbacks)
+                .corpus(hosts.size())
+                .stepsPerHostBefore(stepsBefore / size)
+                .stepsPerHostAfter(stepsAfter / size)
+                .nanosPerHostBefore(nanosBefore / size)
+                .nanosPerHostAfter(nanosAfter / size)
+                .build();
+        log.info("合并正则规则 {} -> {} 条，合并规则: {}，保留原规则的分组: {}，每个域名读取字符: {} -> {}，耗时: {}ms",
+                report.getRulesBefore(), report.getRulesAfter(), combined.size(), fallbacks,
+                report.getStepsPerHostBefore(), report.getStepsPerHostAfter(), interval.intervalMs());
+        Collections.sort(combined);
+        return new Result(replaced, combined, report);
+    }
+
+    /**
+     * 分组超过上限时均分，避免最后一段只剩几条规则
+     */
+    private int chunkSize(int size) {
+        int chunks = (size + groupSize - 1) / groupSize;
+        return (size + chunks - 1) / chunks;
+    }
+
+    private static Combined combine(List<Member> members, Map<String, Probe> before, List<String> hosts) {
+        List<List<String>> atoms = members.stream().map(member -> member.atoms).collect(Collectors.toList());
+        Member first = members.get(0);
+        String pattern = String.join("|", alternatives(atoms, 0));
+        String rule = first.exception + "/" + pattern + "/" + first.modifiers;
+        Combined combined = new Combined(rule, members);
+        BitSet expected = new BitSet(hosts.size());
+        members.forEach(member -> expected.or(before.get(member.rule).matches));
+        try {
+            Probe probe = probe(Pattern.compile(pattern), hosts);
+            if (probe.matches.equals(expected)) {
+                combined.probe = probe;
+            }
+        } catch (PatternSyntaxException | StackOverflowError e) {
+            log.debug("Combined regex rejected: {} => {}", rule, e.getMessage());
+        }
+        return combined;
+    }
+
+    /**
+     * 前缀树展开：首个原子相同的序列共享该原子，其余部分递归合并
+     *
+     * @param atoms 原子序列，按字典序排列且互不相同
+     * @param depth 已共享的原子数
+     * @return 各分支的表达式
+     */
+    private static List<String> alternatives(List<List<String>> atoms, int depth) {
+        Map<String, List<List<String>>> byHead = new LinkedHashMap<>();
+        boolean empty = false;
+        for (List<String> sequence : atoms) {
+            if (sequence.size() == depth) {
+                empty = true;
+            } else {
+                byHead.computeIfAbsent(sequence.get(depth), head -> new ArrayList<>()).add(sequence);
+            }
+        }
+        List<String> branches = new ArrayList<>();
+        byHead.forEach((head, sequences) -> {
+            if (sequences.size() == 1) {
+                List<String> sequence = sequences.get(0);
+                branches.add(String.join("", sequence.subList(depth, sequence.size())));
+            } else {
+                List<String> tails = alternatives(sequences, depth + 1);
+                branches.add(head + (tails.size() == 1 ? tails.get(0) : "(?:" + String.join("|", tails) + ")"));
+            }
+        });
+        if (empty) {
+            branches.add("");
+        }
+        return branches;
+    }
+
+    private static Probe probe(Pattern pattern, List<String> hosts) {
+        Probe probe = new Probe(hosts.size());
+        long start = System.nanoTime();
+        for (int i = 0; i < hosts.size(); i++) {
+            BudgetedCharSequence input = new BudgetedCharSequence(hosts.get(i), Long.MAX_VALUE);
+            if (pattern.matcher(input).find()) {
+                probe.matches.set(i);
+            }
+            probe.steps += input.getSteps();
+        }
+        probe.nanos = System.nanoTime() - start;
+        return probe;
+    }
+
+    /**
+     * 可以参与合并的规则
+     */
+    private static final class Member {
+
+        private final String rule;
+
+        private final String exception;
+
+        /** 空，或 $ 开头的修饰符 */
+        private final String modifiers;
+
+        private final List<String> atoms;
+
+        private Member(String rule, String exception, String modifiers, List<String> atoms) {
+            this.rule = rule;
+            this.exception = exception;
+            this.modifiers = modifiers;
+            this.atoms = atoms;
+        }
+
+        private String key() {
+            return exception + modifiers;
+        }
+
+        /**
+         * @return 不能参与合并时返回 null
+         */
+        private static Member parse(String rule) {
+            String exception = rule.startsWith("@@") ? "@@" : "";
+            String body = rule.substring(exception.length());
+            int end = body.endsWith("/") ? body.length() - 1 : body.lastIndexOf("/$");
+            if (!body.startsWith("/") || end <= 1) {
+                return null;
+            }
+            String pattern = body.substring(1, end);
+            if (!compatible(pattern)) {
+                return null;
+            }
+            List<String> atoms = RegexAtoms.split(pattern);
+            return new Member(rule, exception, body.substring(end + 1),
+                    atoms != null ? atoms : Collections.singletonList("(?:" + pattern + ")"));
+        }
+
+        /**
+         * 反向引用的编号随分组位置变化，内联标志和 \Q 会影响后续字符，命名分组合并后可能重名
+         */
+        private static boolean compatible(String pattern) {
+            for (int i = 0; i < pattern.length() - 1; i++) {
+                char c = pattern.charAt(i);
+                char next = pattern.charAt(i + 1);
+                if (c == '\\') {
+                    if ((next >= '1' && next <= '9') || next == 'k' || next == 'Q') {
+                        return false;
+                    }
+                    i++;
+                } else if (c == '(' && next == '?') {
+                    char kind = i + 2 < pattern.length() ? pattern.charAt(i + 2) : 0;
+                    boolean lookbehind = kind == '<' && i + 3 < pattern.length()
+                            && (pattern.charAt(i + 3) == '=' || pattern.charAt(i + 3) == '!');
+                    if (kind != ':' && kind != '=' && kind != '!' && kind != '>' && !lookbehind) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Probe {
+
+        private final BitSet matches;
+
+        private long steps;
+
+        private long nanos;
+
+        private Probe(int hosts) {
+            this.matches = new BitSet(hosts);
+        }
+    }
+
+    private static final class Combined {
+
+        private final String rule;
+
+        private final List<Member> members;
+
+        /** 验证通过时的开销，否则为 null */
+        private Probe probe;
+
+        private Combined(String rule, List<Member> members) {
+            this.rule = rule;
+            this.members = members;
+        }
+    }
+
+    /**
+     * 合并结果
+     */
+    @Getter
+    public static final class Result {
+
+        /**
+         * 被合并规则替代的原规则
+         */
+        private final Set<String> replaced;
+
+        /**
+         * 合并规则
+         */
+        private final List<String> combined;
+
+        private final RegexMergeReport report;
+
+        private Result(Set<String> replaced, List<String> combined, RegexMergeReport report) {
+            this.replaced = replaced;
+            this.combined = combined;
+            this.report = report;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.xiebaiyuan.adrule.regex;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.TimeInterval;
+import com.xiebaiyuan.adrule.enums.QuarantineReason;
+import com.xiebaiyuan.adrule.model.RegexCost;
+import com.xiebaiyuan.adrule.model.RegexReport;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * 正则规则审查
+ * <p>
+ * 正则规则只按形状分类，从未编译过。规则线程把已接受的正则规则登记进来，全部读完后并行编译，
+ * 并在 {@link ProbeCorpus} 的每个域名上匹配一次：无法编译、匹配单个域名读取字符次数超过预算
+ * 或者栈溢出的规则被隔离，不写入输出文件；通过的规则记录平均步数和耗时，用于报告开销排行。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class RegexVetter {
+
+    private final Queue<String> rules = new ConcurrentLinkedQueue<>();
+
+    private final long stepBudget;
+
+    private final int reportTop;
+
+    public RegexVetter(long stepBudget, int reportTop) {
+        this.stepBudget = stepBudget;
+        this.reportTop = reportTop;
+    }
+
+    /**
+     * 登记一条已接受的正则规则，可在多个线程中调用
+     *
+     * @param line 规则
+     */
+    public void add(String line) {
+        rules.add(line);
+    }
+
+    /**
+     * 并行编译并探测所有登记的规则
+     */
+    public Result vet() {
+        TimeInterval interval = DateUtil.timer();
+        List<String> hosts = ProbeCorpus.hostnames();
+        List<Probe> probes = rules.parallelStream()
+                .map(rule -> probe(rule, hosts))
+                .collect(Collectors.toList());
+
+        Map<String, QuarantineReason> quarantined = new LinkedHashMap<>();
+        Map<QuarantineReason, Long> counts = new EnumMap<>(QuarantineReason.class);
+        for (Probe probe : probes) {
+            if (probe.reason != null) {
+                quarantined.put(probe.rule, probe.reason);
+                counts.merge(probe.reason, 1L, Long::sum);
+                log.info("Quarantined regex ({}): {}", probe.reason.getDesc(), probe.rule);
+            }
+        }
+        // 按步数排序，步数与机器无关，排行在多次运行间稳定
+        List<RegexCost> mostExpensive = probes.stream()
+                .filter(probe -> probe.reason == null)
+                .sorted(Comparator.comparingLong((Probe probe) -> probe.steps).reversed()
+                        .thenComparing(probe -> probe.rule))
+                .limit(reportTop)
+                .map(probe -> RegexCost.builder()
+                        .rule(probe.rule)
+                        .stepsPerMatch(probe.steps / hosts.size())
+                        .maxSteps(probe.maxSteps)
+                        .nanosPerMatch(probe.nanos / hosts.size())
+                        .build())
+                .collect(Collectors.toList());
+        log.info("审查正则规则 {} 条，隔离 {} 条，耗时: {}ms", probes.size(), quarantined.size(), interval.intervalMs());
+        List<String> passed = probes.stream()
+                .filter(probe -> probe.reason == null)
+                .map(probe -> probe.rule)
+                .collect(Collectors.toList());
+        return new Result(quarantined, passed, RegexReport.builder()
+                .vetted(probes.size())
+                .quarantined(counts)
+                .stepBudget(stepBudget)
+                .probes(hosts.size())
+                .mostExpensive(mostExpensive)
+                .build());
+    }
+
+    private Probe probe(String rule, List<String> hosts) {
+        Probe probe = new Probe(rule);
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(pattern(rule));
+        } catch (PatternSyntaxException e) {
+            probe.reason = QuarantineReason.INVALID;
+            return probe;
+        }
+        long start = System.nanoTime();
+        for (String host : hosts) {
+            BudgetedCharSequence input = new BudgetedCharSequence(host, stepBudget);
+            try {
+                pattern.matcher(input).find();
+            } catch (BudgetedCharSequence.BudgetExceededException e) {
+                probe.reason = QuarantineReason.STEP_BUDGET;
+                return probe;
+            } catch (StackOverflowError e) {
+                probe.reason = QuarantineReason.STACK_OVERFLOW;
+                return probe;
+            }
+            probe.steps += input.getSteps();
+            probe.maxSteps = Math.max(probe.maxSteps, input.getSteps());
+        }
+        probe.nanos = System.nanoTime() - start;
+        return probe;
+    }
+
+    /**
+     * 取出 /pattern/ 或 /pattern/$modifiers 中的表达式
+     */
+    static String pattern(String rule) {
+        String s = rule.startsWith("@@") ? rule.substring(2) : rule;
+        int end = s.endsWith("/") ? s.length() - 1 : s.lastIndexOf("/$");
+        return end > 0 ? s.substring(1, end) : s.substring(1);
+    }
+
+    private static final class Probe {
+
+        private final String rule;
+
+        private QuarantineReason reason;
+
+        private long steps;
+
+        private long maxSteps;
+
+        private long nanos;
+
+        private Probe(String rule) {
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * 审查结果
+     */
+    @Getter
+    public static final class Result {
+
+        /**
+         * 被隔离的规则及原因
+         */
+        private final Map<String, QuarantineReason> quarantined;
+
+        /**
+         * 通过审查的规则
+         */
+        private final List<String> passed;
+
+        private final RegexReport report;
+
+        private Result(Map<String, QuarantineReason> quarantined, List<String> passed, RegexReport report) {
+            this.quarantined = quarantined;
+            this.passed = passed;
+            this.report = report;
+        }
+    }
+}
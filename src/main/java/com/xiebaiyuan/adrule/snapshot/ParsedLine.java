@@ -0,0 +1,58 @@
+package com.xiebaiyuan.adrule.snapshot;
+
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.dedup.RuleCanonicalizer;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+import lombok.Data;
+
+/**
+ * 一行规则的分类结果，快照中按原始顺序保存
+ *
+ * @author xiebaiyuan
+ */
+@Data
+public class ParsedLine {
+
+    /**
+     * 原始内容
+     */
+    private final String line;
+
+    /**
+     * 规则类型，无效时为 null
+     */
+    private final RuleType type;
+
+    /**
+     * 拒绝原因，有效时为 null
+     */
+    private final RejectReason reason;
+
+    /**
+     * 是否在清理阶段就被丢弃，此时不参与去重
+     */
+    private final boolean cleanRejected;
+
+    /**
+     * 规范化规则，不是域名类规则时为 null，不写入快照
+     */
+    private CanonicalRule canonical;
+
+    /**
+     * 去重键，{@link #canonicalize()} 之前为 null，不写入快照
+     */
+    private String key;
+
+    /**
+     * 计算规范化规则和去重键，与顺序无关，可以在分类线程中提前完成
+     */
+    public void canonicalize() {
+        if (key != null || cleanRejected) {
+            return;
+        }
+        canonical = RuleCanonicalizer.parse(line);
+        key = canonical != null ? canonical.getKey() : StrUtil.trim(line);
+    }
+}
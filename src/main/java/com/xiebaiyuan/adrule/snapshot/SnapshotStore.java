@@ -0,0 +1,160 @@
+package com.xiebaiyuan.adrule.snapshot;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * 规则源解析结果快照
+ * <p>
+ * 每个规则源一个二进制快照，记录内容哈希、分类器版本标记以及每一行的分类结果。
+ * 规则源内容和分类器都没有变化时，直接按原始顺序回放快照，不再清理和分类。
+ * <p>
+ * 格式：魔数、版本标记、内容哈希、字符集、条目部分的长度和 CRC32C，随后每行为 1 字节类别、1 字节类型或原因、
+ * 4 字节长度和 UTF-8 内容，最后以 {@link #END} 结尾。回放前先完整校验一遍条目部分，
+ * 截断或损坏的快照不会交出任何一行，调用方按未命中处理并重新解析。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class SnapshotStore {
+
+    static final int MAGIC = 0x41444753;
+
+    /**
+     * 快照格式版本，格式变化时加一
+     */
+    static final int FORMAT = 2;
+
+    static final byte ACCEPTED = 0;
+
+    static final byte INVALID = 1;
+
+    static final byte CLEAN_REJECTED = 2;
+
+    static final byte END = -1;
+
+    private final File dir;
+
+    private final String versionTag;
+
+    /**
+     * @param dir        快照目录
+     * @param versionTag 分类器版本标记，变化后所有快照失效
+     */
+    public SnapshotStore(File dir, String versionTag) {
+        this.dir = dir;
+        // 枚举顺序也写在快照里，一并纳入版本标记
+        this.versionTag = FORMAT + "/" + versionTag + "/" + SecureUtil.sha256(
+                Arrays.toString(RuleType.values()) + Arrays.toString(RejectReason.values()));
+        FileUtil.mkdir(dir);
+    }
+
+    /**
+     * 回放快照
+     *
+     * @param source      规则源
+     * @param contentHash 当前内容哈希
+     * @param charset     读取内容使用的字符集
+     * @param visitor     按原始顺序接收每一行
+     * @return 快照有效并已回放时返回 true
+     */
+    public boolean replay(String source, String contentHash, String charset, Consumer<ParsedLine> visitor) {
+        File file = fileOf(source);
+        if (!file.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = open(file)) {
+            if (!matches(in, contentHash, charset)) {
+                return false;
+            }
+            if (!isIntact(in, in.readLong(), in.readInt())) {
+                // 快照经过临时文件原子替换，只有被外部破坏时才会走到这里
+                log.error("Snapshot of {} is truncated or corrupt, parsing again", source);
+                FileUtil.del(file);
+                return false;
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read snapshot of {} => {}", source, e.getMessage());
+            return false;
+        }
+        // 校验通过后才开始交出规则，此后读取失败说明文件在回放期间被改动，已交出的部分无法撤回，只能让本次解析失败
+        try (DataInputStream in = open(file)) {
+            matches(in, contentHash, charset);
+            in.readLong();
+            in.readInt();
+            RuleType[] types = RuleType.values();
+            RejectReason[] reasons = RejectReason.values();
+            byte kind;
+            while ((kind = in.readByte()) != END) {
+                int code = in.readUnsignedByte();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String line = new String(bytes, StandardCharsets.UTF_8);
+                if (kind == ACCEPTED) {
+                    visitor.accept(new ParsedLine(line, types[code], null, false));
+                } else {
+                    visitor.accept(new ParsedLine(line, null, reasons[code], kind == CLEAN_REJECTED));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot of " + source + " changed during replay", e);
+        }
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+    }
+
+    /**
+     * 读取文件头并与当前版本标记、内容哈希和字符集比较
+     */
+    private boolean matches(DataInputStream in, String contentHash, String charset) throws IOException {
+        return in.readInt() == MAGIC && versionTag.equals(in.readUTF()) &&
+                contentHash.equals(in.readUTF()) && charset.equals(in.readUTF());
+    }
+
+    /**
+     * 读完条目部分，长度和校验和都与文件头一致时才算完整
+     */
+    private static boolean isIntact(DataInputStream in, long length, int checksum) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[8192];
+        long read = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            crc.update(buffer, 0, n);
+            read += n;
+        }
+        return read == length && (int) crc.getValue() == checksum;
+    }
+
+    /**
+     * 创建快照写入器
+     *
+     * @param source  规则源
+     * @param charset 读取内容使用的字符集
+     * @return 写入器
+     */
+    public SnapshotWriter writer(String source, String charset) throws IOException {
+        return new SnapshotWriter(fileOf(source), versionTag, charset);
+    }
+
+    private File fileOf(String source) {
+        return new File(dir, SecureUtil.sha256(source) + ".snap");
+    }
+}
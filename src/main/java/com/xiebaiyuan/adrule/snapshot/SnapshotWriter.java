@@ -0,0 +1,153 @@
+package com.xiebaiyuan.adrule.snapshot;
+
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 快照写入器，非线程安全
+ * <p>
+ * 流式下载时内容哈希要到读完才知道，因此每行结果先写入临时文件，
+ * {@link #commit(String)} 时再拼上文件头并原子替换旧快照；未提交直接关闭时丢弃。
+ * 写入失败只会放弃本次快照，不影响规则处理。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class SnapshotWriter implements Closeable {
+
+    private final File file;
+
+    private final File entries;
+
+    private final File tmp;
+
+    private final String versionTag;
+
+    private final String charset;
+
+    private final CRC32C checksum = new CRC32C();
+
+    private final DataOutputStream out;
+
+    private boolean committed;
+
+    private boolean failed;
+
+    SnapshotWriter(File file, String versionTag, String charset) throws IOException {
+        this.file = file;
+        this.entries = new File(file.getParentFile(), file.getName() + ".entries");
+        this.tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        this.versionTag = versionTag;
+        this.charset = charset;
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Files.newOutputStream(entries.toPath()), checksum)));
+    }
+
+    /**
+     * 追加一行的分类结果
+     */
+    public void add(ParsedLine parsed) {
+        if (failed) {
+            return;
+        }
+        try {
+            if (parsed.getType() != null) {
+                out.writeByte(SnapshotStore.ACCEPTED);
+                out.writeByte(parsed.getType().ordinal());
+            } else {
+                out.writeByte(parsed.isCleanRejected() ? SnapshotStore.CLEAN_REJECTED : SnapshotStore.INVALID);
+                out.writeByte(parsed.getReason().ordinal());
+            }
+            byte[] bytes = parsed.getLine().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            failed = true;
+            log.warn("Failed to write snapshot {} => {}", file.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 追加一行清理阶段就被拒绝的内容，直接写入原始字节
+     *
+     * @param data UTF-8 字节
+     */
+    public void addRejected(RejectReason reason, byte[] data, int off, int len) {
+        if (failed) {
+            return;
+        }
+        try {
+            out.writeByte(SnapshotStore.CLEAN_REJECTED);
+            out.writeByte(reason.ordinal());
+            out.writeInt(len);
+            out.write(data, off, len);
+        } catch (IOException e) {
+            failed = true;
+            log.warn("Failed to write snapshot {} => {}", file.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 写入文件头和结束标记并替换旧快照
+     *
+     * @param contentHash 内容哈希
+     */
+    public void commit(String contentHash) throws IOException {
+        if (failed) {
+            return;
+        }
+        out.writeByte(SnapshotStore.END);
+        out.close();
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream headerOut = new DataOutputStream(header)) {
+            headerOut.writeInt(SnapshotStore.MAGIC);
+            headerOut.writeUTF(versionTag);
+            headerOut.writeUTF(contentHash);
+            headerOut.writeUTF(charset);
+            // 回放前用长度和校验和确认快照完整
+            headerOut.writeLong(entries.length());
+            headerOut.writeInt((int) checksum.getValue());
+        }
+        try (FileChannel target = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel source = FileChannel.open(entries.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(header.toByteArray());
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            long position = 0;
+            long size = source.size();
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+        Files.deleteIfExists(entries.toPath());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            out.close();
+            Files.deleteIfExists(entries.toPath());
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+}
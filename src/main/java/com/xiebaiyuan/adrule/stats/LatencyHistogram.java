@@ -0,0 +1,193 @@
+package com.xiebaiyuan.adrule.stats;
+
+import cn.hutool.core.util.NumberUtil;
+import com.xiebaiyuan.adrule.model.LatencyReport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 延迟分布，分桶方式与 HdrHistogram 相同
+ * <p>
+ * 小于 {@link #LINEAR} 纳秒的值每纳秒一个桶，更大的值每个 2 的幂区间再等分为 {@link #HALF} 个桶，
+ * 相对误差不超过 1/{@link #HALF}。每个平台线程写自己的分片，单写者只需有序写入，不争用缓存行；
+ * 虚拟线程数量不固定，按线程 id 分散到 {@link #STRIPES} 个原子分片上，长期存在的虚拟线程可以用
+ * {@link #newRecorder()} 取得自己的单写者分片。读取时合并所有分片，得到的是某一时刻的快照。
+ *
+ * @author xiebaiyuan
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+
+    private static final int LINEAR = 1 << SUB_BITS;
+
+    private static final int HALF = LINEAR >> 1;
+
+    /** 最后一个桶是 index(Long.MAX_VALUE) */
+    static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * HALF;
+
+    private final Queue<Shard> shards = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Shard> local = ThreadLocal.withInitial(() -> register(new Shard(false)));
+
+    /** 虚拟线程共用的原子分片数，不小于核数的 2 的幂 */
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    /** 按需创建，没有虚拟线程写入时不占用内存 */
+    private final AtomicReferenceArray<Shard> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 纳秒，负值按 0 记录
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        Thread thread = Thread.currentThread();
+        Shard shard = thread.isVirtual() ? stripe((int) thread.threadId() & (STRIPES - 1)) : local.get();
+        shard.add(index(value), value);
+    }
+
+    /**
+     * 为长期存在的线程分配一个单写者分片，写入不需要原子操作
+     *
+     * @return 只能由调用线程使用的记录器
+     */
+    public Recorder newRecorder() {
+        Shard shard = register(new Shard(false));
+        return nanos -> {
+            long value = Math.max(0, nanos);
+            shard.add(index(value), value);
+        };
+    }
+
+    /**
+     * @return 合并所有分片后的分布
+     */
+    public LatencyReport snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (Shard shard : shards) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = shard.counts.get(i);
+                counts[i] += c;
+                count += c;
+            }
+            sum += shard.sum.get();
+            max = Math.max(max, shard.max.get());
+        }
+        return LatencyReport.builder()
+                .count(count)
+                .meanMicros(count == 0 ? 0 : micros(sum / count))
+                .p50Micros(micros(percentile(counts, count, max, 0.50)))
+                .p90Micros(micros(percentile(counts, count, max, 0.90)))
+                .p99Micros(micros(percentile(counts, count, max, 0.99)))
+                .p999Micros(micros(percentile(counts, count, max, 0.999)))
+                .maxMicros(micros(max))
+                .build();
+    }
+
+    private Shard stripe(int i) {
+        Shard shard = stripes.get(i);
+        if (shard == null) {
+            Shard created = new Shard(true);
+            shard = stripes.compareAndExchange(i, null, created);
+            if (shard == null) {
+                shard = register(created);
+            }
+        }
+        return shard;
+    }
+
+    private Shard register(Shard shard) {
+        shards.add(shard);
+        return shard;
+    }
+
+    /**
+     * @return 至少有 {@code ratio} 的值不超过的桶上界，不超过记录到的最大值
+     */
+    static long percentile(long[] counts, long count, long max, double ratio) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * ratio));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long sub = index - (long) shift * HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private static double micros(long nanos) {
+        return NumberUtil.round(nanos / 1000.0, 1).doubleValue();
+    }
+
+    /**
+     * 单个线程专用的记录入口
+     */
+    @FunctionalInterface
+    public interface Recorder {
+
+        /**
+         * @param nanos 纳秒，负值按 0 记录
+         */
+        void record(long nanos);
+    }
+
+    private static final class Shard {
+
+        private final boolean atomic;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLong sum = new AtomicLong();
+
+        private final AtomicLong max = new AtomicLong();
+
+        private Shard(boolean atomic) {
+            this.atomic = atomic;
+        }
+
+        void add(int index, long value) {
+            if (atomic) {
+                counts.incrementAndGet(index);
+                sum.addAndGet(value);
+                max.accumulateAndGet(value, Math::max);
+                return;
+            }
+            // 只有所属线程写入，有序写入即可保证其他线程读到的是某个完整的旧值
+            counts.lazySet(index, counts.get(index) + 1);
+            sum.lazySet(sum.get() + value);
+            if (value > max.get()) {
+                max.lazySet(value);
+            }
+        }
+    }
+}
@@ -1,9 +1,27 @@
 package com.xiebaiyuan.adrule.stats;
 
+import cn.hutool.core.date.DateUtil;
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.LatencyReport;
+import com.xiebaiyuan.adrule.model.RegexReport;
 import com.xiebaiyuan.adrule.model.RuleStats;
+import com.xiebaiyuan.adrule.model.RunReport;
+import com.xiebaiyuan.adrule.model.SourceReport;
+import com.xiebaiyuan.adrule.model.StageReport;
+import com.xiebaiyuan.adrule.pipeline.Stage;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -14,13 +32,38 @@ import java.util.concurrent.atomic.AtomicLong;
 @Slf4j
 public class RuleStatsCollector {
     
-    private final AtomicLong totalRules = new AtomicLong(0);
-    private final AtomicLong domainRules = new AtomicLong(0);
-    private final AtomicLong regexRules = new AtomicLong(0);
-    private final AtomicLong hostsRules = new AtomicLong(0);
-    private final AtomicLong modifyRules = new AtomicLong(0);
-    private final AtomicLong invalidRules = new AtomicLong(0);
-    private final AtomicLong originalRulesCount = new AtomicLong(0);
+    /** 从 DOMAIN 文件中移除的被父域名覆盖的 DOMAIN 规则数 */
+    private final AtomicLong subsumedDomainRules = new AtomicLong(0);
+    
+    /** 被父域名覆盖的 HOSTS 规则数，只从同时包含 DOMAIN 的文件中移除，hosts 文件保留 */
+    private final AtomicLong subsumedHostsRules = new AtomicLong(0);
+    
+    /** 每个父域名覆盖的规则数 */
+    private volatile Map<String, Integer> subsumedByParent = Collections.emptyMap();
+    
+    /** 从正则文件中移除的规则数：被隔离的规则和被合并规则替代的原规则 */
+    private final AtomicLong removedRegexRules = new AtomicLong(0);
+    
+    /** 定稿前追加到正则文件的合并规则数 */
+    private final AtomicLong combinedRegexRules = new AtomicLong(0);
+    
+    private volatile RegexReport regexReport;
+    
+    private final ConcurrentLinkedQueue<SourceReport> sourceReports = new ConcurrentLinkedQueue<>();
+    
+    private final ConcurrentLinkedQueue<SourceStats> sourceStats = new ConcurrentLinkedQueue<>();
+    
+    /** 每个规则源打开内容的耗时 */
+    @Getter
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+    
+    /** 单行分类耗时，抽样记录 */
+    @Getter
+    private final LatencyHistogram classifyLatency = new LatencyHistogram();
+    
+    /** 每批规则写入输出文件的耗时 */
+    @Getter
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
     
     private List<String> upstreamSources;
     private long startTime;
@@ -35,66 +78,183 @@ public class RuleStatsCollector {
     public void finish() {
         this.endTime = System.currentTimeMillis();
         log.info("统计完成，耗时: {}ms", getProcessingTime());
+        long downloaded = 0;
+        long saved = 0;
+        for (SourceReport report : getSourceReports()) {
+            log.info("Source<{}> {} => {}ms, downloaded {}B, saved {}B", report.getSource(),
+                    report.getStatus().getDesc(), report.getFetchMillis(), report.getBytesDownloaded(), report.getBytesSaved());
+            downloaded += report.getBytesDownloaded();
+            saved += report.getBytesSaved();
+        }
+        log.info("远程规则下载: {}KB，缓存节省: {}KB", downloaded / 1024, saved / 1024);
+        getLatencies().forEach((name, latency) -> log.info(
+                "Latency<{}> count => {}, p50 => {} µs, p99 => {} µs, max => {} µs", name, latency.getCount(),
+                latency.getP50Micros(), latency.getP99Micros(), latency.getMaxMicros()));
     }
     
-    public void incrementDomainRules() {
-        domainRules.incrementAndGet();
-        totalRules.incrementAndGet();
+    /**
+     * @return 各延迟分布的快照
+     */
+    public Map<String, LatencyReport> getLatencies() {
+        Map<String, LatencyReport> latencies = new LinkedHashMap<>();
+        latencies.put("fetch", fetchLatency.snapshot());
+        latencies.put("classify", classifyLatency.snapshot());
+        latencies.put("write", writeLatency.snapshot());
+        return latencies;
     }
     
-    public void incrementRegexRules() {
-        regexRules.incrementAndGet();
-        totalRules.incrementAndGet();
+    /**
+     * 记录单个规则源的获取报告
+     */
+    public void addSourceReport(SourceReport report) {
+        sourceReports.add(report);
     }
     
-    public void incrementHostsRules() {
-        hostsRules.incrementAndGet();
-        totalRules.incrementAndGet();
+    /**
+     * @return 按规则源排序的获取报告
+     */
+    public List<SourceReport> getSourceReports() {
+        List<SourceReport> reports = new ArrayList<>(sourceReports);
+        reports.sort(Comparator.comparing(SourceReport::getSource));
+        return reports;
     }
     
-    public void incrementModifyRules() {
-        modifyRules.incrementAndGet();
-        totalRules.incrementAndGet();
+    /**
+     * 为一次解析创建统计，只由解析线程写入
+     */
+    public SourceStats newSource(String source) {
+        SourceStats stats = new SourceStats(source);
+        sourceStats.add(stats);
+        return stats;
     }
     
-    public void incrementInvalidRules() {
-        invalidRules.incrementAndGet();
+    /**
+     * @return 按规则源排序的解析统计，附带对应的获取报告
+     */
+    public List<SourceStats> getSourceStats() {
+        Map<String, SourceReport> reports = new HashMap<>();
+        sourceReports.forEach(report -> reports.put(report.getSource(), report));
+        List<SourceStats> stats = new ArrayList<>(sourceStats);
+        stats.forEach(e -> e.setFetch(reports.get(e.getSource())));
+        stats.sort(Comparator.comparing(SourceStats::getSource));
+        return stats;
     }
     
-    public void incrementOriginalRules() {
-        originalRulesCount.incrementAndGet();
+    /**
+     * 记录定稿时从 DOMAIN 文件中移除的被覆盖规则，使文件头的数量与正文一致
+     *
+     * @param domain 被覆盖的 DOMAIN 规则数
+     * @param hosts  被覆盖的 HOSTS 规则数
+     */
+    public void setSubsumedRules(long domain, long hosts) {
+        subsumedDomainRules.set(domain);
+        subsumedHostsRules.set(hosts);
     }
     
-    public long getProcessingTime() {
-        return endTime > 0 ? endTime - startTime : System.currentTimeMillis() - startTime;
+    /**
+     * @param byParent 每个父域名覆盖的规则数，写入运行报告
+     */
+    public void setSubsumedByParent(Map<String, Integer> byParent) {
+        this.subsumedByParent = byParent;
     }
     
-    public double getDeduplicationRate() {
-        long original = originalRulesCount.get();
-        long total = totalRules.get();
-        if (original == 0) return 0.0;
-        return ((double) (original - total) / original) * 100.0;
+    /**
+     * 记录定稿时正则文件的变化，使文件头的数量与正文一致
+     *
+     * @param removed  移除的规则数
+     * @param combined 追加的合并规则数
+     */
+    public void setRegexAdjustment(long removed, long combined) {
+        removedRegexRules.set(removed);
+        combinedRegexRules.set(combined);
     }
     
-    public long getAdghRules() {
-        // AdGuardHome 规则 = 域名规则 + 正则规则
-        return domainRules.get() + regexRules.get();
+    public void setRegexReport(RegexReport report) {
+        this.regexReport = report;
     }
     
+    public long getProcessingTime() {
+        return endTime > 0 ? endTime - startTime : System.currentTimeMillis() - startTime;
+    }
+    
+    /**
+     * 汇总各规则源的统计
+     */
     public RuleStats build() {
+        long[] accepted = new long[RuleType.values().length];
+        long original = 0;
+        long invalid = 0;
+        long duplicates = 0;
+        long rewritten = 0;
+        for (SourceStats stats : sourceStats) {
+            for (RuleType type : RuleType.values()) {
+                accepted[type.ordinal()] += stats.getAccepted(type);
+            }
+            original += stats.getLines();
+            invalid += stats.getTotalRejected();
+            duplicates += stats.getDuplicates();
+            rewritten += stats.getRewritten();
+        }
+        // 被隔离或被合并的正则不会出现在输出文件中
+        accepted[RuleType.REGEX.ordinal()] += combinedRegexRules.get() - removedRegexRules.get();
+        // 被父域名覆盖的规则从包含 DOMAIN 的文件中移除，hosts 文件不裁剪，覆盖的 HOSTS 规则只从总数中扣除
+        accepted[RuleType.DOMAIN.ordinal()] -= subsumedDomainRules.get();
+        long domain = accepted[RuleType.DOMAIN.ordinal()];
+        long regex = accepted[RuleType.REGEX.ordinal()];
+        long total = -subsumedHostsRules.get();
+        for (long count : accepted) {
+            total += count;
+        }
         return RuleStats.builder()
                 .upstreamSources(upstreamSources)
                 .upstreamCount(upstreamSources != null ? upstreamSources.size() : 0)
-                .totalRules(totalRules.get())
-                .domainRules(domainRules.get())
-                .regexRules(regexRules.get())
-                .hostsRules(hostsRules.get())
-                .modifyRules(modifyRules.get())
-                .adghRules(getAdghRules())
+                .totalRules(total)
+                .domainRules(domain)
+                .regexRules(regex)
+                .hostsRules(accepted[RuleType.HOSTS.ordinal()])
+                .modifyRules(accepted[RuleType.MODIFY.ordinal()])
+                // AdGuardHome 规则 = 域名规则 + 正则规则
+                .adghRules(domain + regex)
                 .processingTime(getProcessingTime())
-                .deduplicationRate(getDeduplicationRate())
-                .originalRulesCount(originalRulesCount.get())
-                .invalidRules(invalidRules.get())
+                .deduplicationRate(original == 0 ? 0.0 : ((double) (original - total) / original) * 100.0)
+                .originalRulesCount(original)
+                .invalidRules(invalid)
+                .duplicateRules(duplicates)
+                .subsumedRules(subsumedDomainRules.get() + subsumedHostsRules.get())
+                .rewrittenRegexRules(rewritten)
+                .quarantinedRules(regexReport == null ? 0
+                        : regexReport.getQuarantined().values().stream().mapToLong(Long::longValue).sum())
+                .build();
+    }
+    
+    /**
+     * 生成运行报告，汇总统计与文件头使用同一份数据
+     *
+     * @param totals {@link #build()} 的结果
+     * @param stages 各阶段耗时
+     */
+    public RunReport report(RuleStats totals, Map<Stage, StageReport> stages) {
+        List<SourceStats> sources = getSourceStats();
+        Map<RejectReason, Long> rejected = new EnumMap<>(RejectReason.class);
+        for (SourceStats stats : sources) {
+            stats.getRejected().forEach((reason, count) -> rejected.merge(reason, count, Long::sum));
+        }
+        Map<String, StageReport> stageReports = new LinkedHashMap<>();
+        stages.forEach((stage, report) -> stageReports.put(stage.name(), report));
+        // 覆盖数从多到少，相同时按域名排序，输出与线程完成顺序无关
+        Map<String, Integer> subsumed = new LinkedHashMap<>();
+        subsumedByParent.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .forEach(e -> subsumed.put(e.getKey(), e.getValue()));
+        return RunReport.builder()
+                .generatedAt(DateUtil.now())
+                .totals(totals)
+                .rejected(rejected)
+                .regex(regexReport)
+                .subsumedByParent(subsumed)
+                .latencies(getLatencies())
+                .stages(stageReports)
+                .sources(sources)
                 .build();
     }
 }
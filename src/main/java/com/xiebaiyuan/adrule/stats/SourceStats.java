@@ -0,0 +1,125 @@
+package com.xiebaiyuan.adrule.stats;
+
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.SourceReport;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 单个规则源的解析统计
+ * <p>
+ * 只由解析该规则源的线程写入，解析阶段结束后再读取，因此不需要同步。
+ *
+ * @author xiebaiyuan
+ */
+@Getter
+public class SourceStats {
+
+    /** 规则源 */
+    private final String source;
+
+    /** 内容字节数 */
+    @Setter
+    private long bytes;
+
+    /** 读取的行数（不含空行） */
+    private long lines;
+
+    /** 解析耗时(ms) */
+    @Setter
+    private long parseMillis;
+
+    /** 是否回放了上次的分类结果 */
+    @Setter
+    private boolean snapshot;
+
+    /** 重复规则数 */
+    private long duplicates;
+
+    /** 改写为域名规则而消除的正则规则数 */
+    private long rewritten;
+
+    /** 获取报告，获取失败时可能为 null */
+    @Setter
+    private SourceReport fetch;
+
+    private final long[] accepted = new long[RuleType.values().length];
+
+    private final long[] rejected = new long[RejectReason.values().length];
+
+    SourceStats(String source) {
+        this.source = source;
+    }
+
+    public void line() {
+        lines++;
+    }
+
+    public void accept(RuleType type) {
+        accepted[type.ordinal()]++;
+    }
+
+    public void reject(RejectReason reason) {
+        rejected[reason.ordinal()]++;
+    }
+
+    public void duplicate() {
+        duplicates++;
+    }
+
+    public void rewrite() {
+        rewritten++;
+    }
+
+    public long getAccepted(RuleType type) {
+        return accepted[type.ordinal()];
+    }
+
+    public long getRejected(RejectReason reason) {
+        return rejected[reason.ordinal()];
+    }
+
+    /**
+     * @return 各类型的有效规则数，省略为 0 的类型
+     */
+    public Map<RuleType, Long> getAccepted() {
+        return nonZero(RuleType.class, RuleType.values(), accepted);
+    }
+
+    /**
+     * @return 各原因的拒绝数，省略为 0 的原因
+     */
+    public Map<RejectReason, Long> getRejected() {
+        return nonZero(RejectReason.class, RejectReason.values(), rejected);
+    }
+
+    public long getTotalAccepted() {
+        return sum(accepted);
+    }
+
+    public long getTotalRejected() {
+        return sum(rejected);
+    }
+
+    private static <E extends Enum<E>> Map<E, Long> nonZero(Class<E> type, E[] keys, long[] counts) {
+        Map<E, Long> map = new EnumMap<>(type);
+        for (E key : keys) {
+            if (counts[key.ordinal()] > 0) {
+                map.put(key, counts[key.ordinal()]);
+            }
+        }
+        return map;
+    }
+
+    private static long sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+}
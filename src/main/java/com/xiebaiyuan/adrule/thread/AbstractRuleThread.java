@@ -4,23 +4,34 @@ import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.date.TimeInterval;
 import cn.hutool.core.exceptions.ExceptionUtil;
 import cn.hutool.core.io.IoUtil;
-import cn.hutool.core.io.LineHandler;
-import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.StrUtil;
-import com.google.common.hash.BloomFilter;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import com.xiebaiyuan.adrule.Util;
+import com.xiebaiyuan.adrule.diagnostic.DiagnosticSinks;
+import com.xiebaiyuan.adrule.enums.RejectReason;
 import com.xiebaiyuan.adrule.enums.RuleType;
-import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
+import com.xiebaiyuan.adrule.fetch.SourceContent;
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+import com.xiebaiyuan.adrule.output.RuleBatch;
+import com.xiebaiyuan.adrule.pipeline.ByteLineReader;
+import com.xiebaiyuan.adrule.pipeline.ClassifyStage;
+import com.xiebaiyuan.adrule.pipeline.LineChunk;
+import com.xiebaiyuan.adrule.snapshot.ParsedLine;
+import com.xiebaiyuan.adrule.snapshot.SnapshotStore;
+import com.xiebaiyuan.adrule.snapshot.SnapshotWriter;
+import com.xiebaiyuan.adrule.stats.SourceStats;
 
-import java.io.File;
-import java.io.InputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Abstract rule processing thread
@@ -31,85 +42,290 @@ import java.util.concurrent.atomic.AtomicReference;
 @Data
 public abstract class AbstractRuleThread implements Runnable {
 
+    /**
+     * 每个规则源最多同时在分类的块数
+     */
+    private static final int MAX_PENDING_CHUNKS = 4;
+
     private final String ruleUrl;
 
-    private final Map<RuleType, Set<File>> typeFileMap;
+    private final RuleContext context;
 
-    private final BloomFilter<String> filter;
-    
-    private final RuleStatsCollector statsCollector;
+    /**
+     * 解析中途失败，已输出的部分规则不完整，本次构建不能发布
+     */
+    private volatile boolean incomplete;
 
-    public AbstractRuleThread(String ruleUrl, Map<RuleType, Set<File>> typeFileMap, BloomFilter<String> filter, RuleStatsCollector statsCollector) {
+    public AbstractRuleThread(String ruleUrl, RuleContext context) {
         this.ruleUrl = ruleUrl;
-        this.typeFileMap = typeFileMap;
-        this.filter = filter;
-        this.statsCollector = statsCollector;
+        this.context = context;
     }
 
-    private Charset charset = Charset.defaultCharset();
-
-    abstract InputStream getContentStream();
+    /**
+     * @return 规则内容，获取失败时返回 null
+     */
+    abstract SourceContent openContent() throws IOException;
 
     @Override
     public void run() {
-        TimeInterval interval = DateUtil.timer();
-        AtomicReference<Integer> invalid = new AtomicReference<>(0);
-        Map<File, Set<String>> fileDataMap = MapUtil.newHashMap();
+        parse(fetch());
+    }
+
+    /**
+     * 获取规则内容，IO 阶段，可以和其他规则源的解析并行执行
+     *
+     * @return 规则内容，获取失败时返回 null
+     */
+    public SourceContent fetch() {
+        long start = System.nanoTime();
         try {
-            // Read and process line by line
-            IoUtil.readLines(getContentStream(), charset, (LineHandler) line -> {
-                if (StrUtil.isNotBlank(line)) {
-                    statsCollector.incrementOriginalRules(); // 统计原始规则数
-                    
-                    String content = Util.clearRule(line);
-                    if (StrUtil.isNotBlank(content)) {
-                        if (!filter.mightContain(line)) {
-                            filter.put(line);
-
-                            if (Util.validRule(content, RuleType.DOMAIN)) {
-                                typeFileMap.getOrDefault(RuleType.DOMAIN, Collections.emptySet())
-                                        .forEach(item -> Util.safePut(fileDataMap, item, line));
-                                statsCollector.incrementDomainRules(); // 统计域名规则
-                                log.debug("Domain rule: {}", line);
-
-                            } else if (Util.validRule(content, RuleType.HOSTS)) {
-                                typeFileMap.getOrDefault(RuleType.HOSTS, Collections.emptySet())
-                                        .forEach(item -> Util.safePut(fileDataMap, item, line));
-                                statsCollector.incrementHostsRules(); // 统计Hosts规则
-                                log.debug("Hosts rule: {}", line);
-
-                            } else if (Util.validRule(content, RuleType.REGEX)) {
-                                // 直接检查是否为正则表达式规则
-                                typeFileMap.getOrDefault(RuleType.REGEX, Collections.emptySet())
-                                        .forEach(item -> Util.safePut(fileDataMap, item, line));
-                                statsCollector.incrementRegexRules(); // 统计正则规则
-                                log.debug("Regex rule: {}", line);
-
-                            } else if (Util.validRule(content, RuleType.MODIFY)) {
-                                // 如果不是正则表达式规则但是修饰符规则
-                                typeFileMap.getOrDefault(RuleType.MODIFY, Collections.emptySet())
-                                        .forEach(item -> Util.safePut(fileDataMap, item, line));
-                                statsCollector.incrementModifyRules(); // 统计修饰符规则
-                                log.debug("Modifier rule: {}", line);
-                            } else {
-                                invalid.getAndSet(invalid.get() + 1);
-                                statsCollector.incrementInvalidRules(); // 统计无效规则
-                                log.debug("Invalid rule: {}", line);
-                            }
+            return openContent();
+        } catch (Exception e) {
+            log.error(ExceptionUtil.stacktraceToString(e));
+            return null;
+        } finally {
+            context.getStatsCollector().getFetchLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 解析规则内容并关闭，CPU 阶段
+     *
+     * @param source {@link #fetch()} 的结果，可以为 null
+     */
+    public void parse(SourceContent source) {
+        TimeInterval interval = DateUtil.timer();
+        SourceStats stats = context.getStatsCollector().newSource(ruleUrl);
+        RuleBatch batch = context.getOutput().newBatch();
+        SnapshotStore snapshots = context.getSnapshots();
+        boolean fromSnapshot = false;
+        try (SourceContent content = source) {
+            if (content == null) {
+                return;
+            }
+            String charset = content.getCharset().name();
+            // 内容已在磁盘上时先比较哈希，内容和分类器都没有变化时直接回放上次的分类结果
+            String upfrontHash = content.getUpfrontHash();
+            if (upfrontHash != null) {
+                fromSnapshot = snapshots.replay(ruleUrl, upfrontHash, charset, parsed -> process(parsed, batch, stats));
+                if (fromSnapshot) {
+                    return;
+                }
+            }
+            // 读取在当前线程，按字节拆分行后交给分类线程，结果按原始顺序去重和输出，下载的内容边到边解析
+            try (SnapshotWriter snapshot = snapshots.writer(ruleUrl, charset)) {
+                Consumer<LineChunk> sink = chunk -> {
+                    for (int i = 0; i < chunk.getSize(); i++) {
+                        ParsedLine parsed = chunk.getParsed(i);
+                        RejectReason rejected = chunk.getRejected(i);
+                        if (parsed != null) {
+                            snapshot.add(parsed);
+                            process(parsed, batch, stats);
+                        } else if (rejected != null) {
+                            snapshot.addRejected(rejected, chunk.getData(), chunk.getStart(i),
+                                    chunk.getEnd(i) - chunk.getStart(i));
+                            reject(rejected, chunk, i, stats);
                         }
-                    }else {
-                        invalid.getAndSet(invalid.get() + 1);
-                        statsCollector.incrementInvalidRules(); // 统计无效规则
-                        log.debug("Not a rule: {}", line);
                     }
+                };
+                ChunkFeeder feeder = new ChunkFeeder(context.getClassifyStage(), sink,
+                        ByteLineReader.isSplittable(content.getCharset()) ? content.getCharset() : StandardCharsets.UTF_8);
+                ByteBuffer mapped = content.getMapped();
+                if (feeder.charset != content.getCharset()) {
+                    // 不能按字节拆分行的字符集先解码，再以 UTF-8 交给分类线程
+                    BufferedReader reader = IoUtil.getReader(content.getStream(), content.getCharset());
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        feeder.add(line);
+                    }
+                } else if (mapped != null) {
+                    ByteLineReader.forEach(mapped, feeder::add);
+                } else {
+                    new ByteLineReader(content.getStream()).forEach(feeder::add);
                 }
-            });
+                feeder.finish();
+                snapshot.commit(content.finishHash());
+            }
         } catch (Exception e) {
-            log.error(ExceptionUtil.stacktraceToString(e));
-        }finally {
-            fileDataMap.forEach(Util::write);
-            log.info("Rule<{}> time consumed => {} ms invalid count => {}",
-                    ruleUrl, interval.intervalMs(), invalid.get());
+            // 出错前的规则已经去重并交给输出，无法单独撤回，由构建丢弃整个结果
+            incomplete = true;
+            log.error("Rule<{}> parse failed, rules incomplete => {}", ruleUrl, ExceptionUtil.stacktraceToString(e));
+        } finally {
+            batch.flush();
+            stats.setBytes(source != null ? source.getBytesRead() : 0);
+            stats.setParseMillis(interval.intervalMs());
+            stats.setSnapshot(fromSnapshot);
+            log.info("Rule<{}> time consumed => {} ms invalid count => {}{}",
+                    ruleUrl, stats.getParseMillis(), stats.getTotalRejected(), fromSnapshot ? " (snapshot)" : "");
+        }
+    }
+
+    /**
+     * 把读到的行按块交给分类线程，并在提交后消费已完成的块
+     */
+    private static final class ChunkFeeder {
+
+        private final ClassifyStage classify;
+
+        private final Deque<CompletableFuture<LineChunk>> pending = new ArrayDeque<>();
+
+        private final Consumer<LineChunk> sink;
+
+        private final Charset charset;
+
+        private LineChunk chunk;
+
+        private ChunkFeeder(ClassifyStage classify, Consumer<LineChunk> sink, Charset charset) {
+            this.classify = classify;
+            this.sink = sink;
+            this.charset = charset;
+            this.chunk = new LineChunk(charset, classify.getChunkLines());
+        }
+
+        void add(byte[] data, int off, int len) throws InterruptedException {
+            chunk.add(data, off, len);
+            submitIfFull();
+        }
+
+        void add(ByteBuffer data, int off, int len) throws InterruptedException {
+            chunk.add(data, off, len);
+            submitIfFull();
+        }
+
+        void add(String line) throws InterruptedException {
+            chunk.add(line);
+            submitIfFull();
+        }
+
+        /**
+         * 提交最后一块并等待所有块完成
+         */
+        void finish() throws InterruptedException {
+            if (chunk.getSize() > 0) {
+                pending.add(classify.submit(chunk));
+            }
+            drain(pending, sink, 0);
+        }
+
+        private void submitIfFull() throws InterruptedException {
+            if (chunk.getSize() >= classify.getChunkLines()) {
+                pending.add(classify.submit(chunk));
+                chunk = new LineChunk(charset, classify.getChunkLines());
+                drain(pending, sink, MAX_PENDING_CHUNKS);
+            }
+        }
+    }
+
+    /**
+     * 按提交顺序消费已完成的分类结果，未完成的块超过 {@code limit} 时等待最早的一块
+     */
+    private static void drain(Deque<CompletableFuture<LineChunk>> pending, Consumer<LineChunk> sink, int limit) {
+        while (!pending.isEmpty() && (pending.size() > limit || pending.peekFirst().isDone())) {
+            sink.accept(pending.pollFirst().join());
+        }
+    }
+
+    /**
+     * 计数并记录在字节上直接拒绝的行，与 {@link #process(ParsedLine, RuleBatch, SourceStats)} 中清理阶段拒绝的处理一致，
+     * 只在需要抽样时才创建字符串
+     */
+    private void reject(RejectReason reason, LineChunk chunk, int index, SourceStats stats) {
+        DiagnosticSinks diagnostics = context.getDiagnostics();
+        stats.line(); // 统计原始规则数
+        boolean sampled = diagnostics.isRejectedSampled(stats.getRejected(reason));
+        if (sampled || log.isDebugEnabled()) {
+            String line = chunk.getLine(index);
+            if (sampled) {
+                diagnostics.rejected(reason, StrUtil.trim(line));
+            }
+            log.debug("Not a rule ({}): {}", reason.getDesc(), line);
+        }
+        stats.reject(reason); // 统计无效规则
+    }
+
+    /**
+     * 去重、计数并输出一行的分类结果
+     */
+    private void process(ParsedLine parsed, RuleBatch batch, SourceStats stats) {
+        DiagnosticSinks diagnostics = context.getDiagnostics();
+        String line = parsed.getLine();
+        stats.line(); // 统计原始规则数
+
+        if (parsed.isCleanRejected()) {
+            if (parsed.getReason() == RejectReason.URL_REGEX || parsed.getReason() == RejectReason.URL_PATH_REGEX) {
+                // URL 级别的正则对 DNS 层无效，记录后丢弃
+                diagnostics.filteredRegex(StrUtil.trim(line));
+            } else if (diagnostics.isRejectedSampled(stats.getRejected(parsed.getReason()))) {
+                diagnostics.rejected(parsed.getReason(), StrUtil.trim(line));
+            }
+            stats.reject(parsed.getReason()); // 统计无效规则
+            log.debug("Not a rule ({}): {}", parsed.getReason().getDesc(), line);
+            return;
+        }
+        accept(parsed, batch, stats);
+    }
+
+    /**
+     * 去重并输出一条已通过清理的规则，能改写为域名规则的正则改为输出改写结果
+     */
+    private void accept(ParsedLine parsed, RuleBatch batch, SourceStats stats) {
+        DiagnosticSinks diagnostics = context.getDiagnostics();
+        String line = parsed.getLine();
+
+        // 按输出类型和规范化键去重，同一类型中不同写法的同一条规则只保留首次出现的，
+        // hosts 条目和纯域名写入不同的文件，各自保留
+        parsed.canonicalize();
+        CanonicalRule canonical = parsed.getCanonical();
+        RuleType type = parsed.getType();
+        if (!context.getDeduplicator().add(type, parsed.getKey())) {
+            stats.duplicate(); // 统计重复规则
+            log.debug("Duplicate rule: {}", line);
+            return;
+        }
+        if (type == null) {
+            if (diagnostics.isRejectedSampled(stats.getRejected(parsed.getReason()))) {
+                diagnostics.rejected(parsed.getReason(), StrUtil.trim(line));
+            }
+            stats.reject(parsed.getReason()); // 统计无效规则
+            log.debug("Invalid rule ({}): {}", parsed.getReason().getDesc(), line);
+            return;
+        }
+        if (type == RuleType.REGEX) {
+            List<ParsedLine> rewritten = rewrite(line);
+            if (rewritten != null) {
+                stats.rewrite(); // 统计改写的正则
+                log.debug("Regex rewritten into {} domain rules: {}", rewritten.size(), line);
+                rewritten.forEach(rule -> accept(rule, batch, stats));
+                return;
+            }
+        }
+        batch.add(type, line);
+        stats.accept(type); // 统计各类型规则
+        context.getPruner().add(line, canonical, type);
+        if (type == RuleType.REGEX) {
+            context.getRegexVetter().add(line);
+        }
+        log.debug("{}: {}", type.getDesc(), line);
+    }
+
+    /**
+     * 把只匹配有限个域名的正则改写为域名规则，改写结果同样经过分类，不全是域名规则时放弃改写
+     *
+     * @return 改写后的规则，无法改写时返回 null
+     */
+    private List<ParsedLine> rewrite(String line) {
+        List<String> rules = context.getRegexExpander().expand(line);
+        if (rules == null) {
+            return null;
+        }
+        List<ParsedLine> parsed = new ArrayList<>(rules.size());
+        for (String rule : rules) {
+            ParsedLine result = context.getClassifyStage().classify(rule);
+            if (result.getType() != RuleType.DOMAIN) {
+                return null;
+            }
+            parsed.add(result);
         }
+        return parsed;
     }
 }
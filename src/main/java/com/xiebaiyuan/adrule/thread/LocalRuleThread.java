@@ -1,29 +1,33 @@
 package com.xiebaiyuan.adrule.thread;
 
 import cn.hutool.core.io.FileUtil;
-import com.google.common.hash.BloomFilter;
-import com.xiebaiyuan.adrule.enums.RuleType;
-import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
+import com.xiebaiyuan.adrule.fetch.SourceContent;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.io.InputStream;
-import java.util.Map;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Local rule processing
  *
  * @author ChengFengsheng on 2022/7/7
  */
+@Slf4j
 public class LocalRuleThread extends AbstractRuleThread {
 
 
-    public LocalRuleThread(String ruleUrl, Map<RuleType, Set<File>> typeFileMap, BloomFilter<String> filter, RuleStatsCollector statsCollector) {
-        super(ruleUrl, typeFileMap, filter, statsCollector);
+    public LocalRuleThread(String ruleUrl, RuleContext context) {
+        super(ruleUrl, context);
     }
 
     @Override
-    InputStream getContentStream() {
-        return FileUtil.getInputStream(getRuleUrl());
+    SourceContent openContent() throws IOException {
+        File file = FileUtil.file(getRuleUrl());
+        if (!file.isFile()) {
+            log.error("Local rule not found: {}", getRuleUrl());
+            return null;
+        }
+        return SourceContent.ofFile(file, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,80 @@
+package com.xiebaiyuan.adrule.thread;
+
+import com.xiebaiyuan.adrule.classifier.RuleClassifier;
+import com.xiebaiyuan.adrule.dedup.RuleDeduplicator;
+import com.xiebaiyuan.adrule.diagnostic.DiagnosticSinks;
+import com.xiebaiyuan.adrule.fetch.FetchCache;
+import com.xiebaiyuan.adrule.output.RuleOutput;
+import com.xiebaiyuan.adrule.pipeline.ClassifyStage;
+import com.xiebaiyuan.adrule.regex.RegexExpander;
+import com.xiebaiyuan.adrule.regex.RegexVetter;
+import com.xiebaiyuan.adrule.snapshot.SnapshotStore;
+import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
+import com.xiebaiyuan.adrule.trie.DomainPruner;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 一次运行中所有规则线程共享的组件
+ *
+ * @author xiebaiyuan
+ */
+@Data
+@Builder
+public class RuleContext {
+
+    /**
+     * 输出子系统
+     */
+    private final RuleOutput output;
+
+    /**
+     * 规则分类器
+     */
+    private final RuleClassifier classifier;
+
+    /**
+     * 分类线程池
+     */
+    private final ClassifyStage classifyStage;
+
+    /**
+     * 精确去重器
+     */
+    private final RuleDeduplicator deduplicator;
+
+    /**
+     * 父域名覆盖裁剪
+     */
+    private final DomainPruner pruner;
+
+    /**
+     * 把只匹配有限个域名的正则改写为域名规则
+     */
+    private final RegexExpander regexExpander;
+
+    /**
+     * 正则规则审查
+     */
+    private final RegexVetter regexVetter;
+
+    /**
+     * 统计收集器
+     */
+    private final RuleStatsCollector statsCollector;
+
+    /**
+     * 诊断输出文件
+     */
+    private final DiagnosticSinks diagnostics;
+
+    /**
+     * 远程规则缓存
+     */
+    private final FetchCache fetchCache;
+
+    /**
+     * 规则源解析结果快照
+     */
+    private final SnapshotStore snapshots;
+}
@@ -0,0 +1,182 @@
+package com.xiebaiyuan.adrule.trie;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.TimeInterval;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * 父域名覆盖裁剪
+ * <p>
+ * 规则线程把 DOMAIN/HOSTS 规则以及所有例外规则登记进来，全部完成后构建 {@link DomainSuffixTrie}，
+ * 找出已被无限制的父域名规则（||parent^，可带 $important）覆盖的子域名规则。
+ * 从父域名到目标域名的路径上只要出现任何 @@ 例外规则，就保留该规则，避免改变例外的生效范围。
+ * 自身带修饰符的规则不会被裁剪。
+ *
+ * @author xiebaiyuan
+ */
+@Slf4j
+public class DomainPruner {
+
+    private static final int BLOCK = 1;
+
+    private static final int EXCEPTION = 2;
+
+    /** 日志中展示的覆盖最多的父域名数量 */
+    private static final int TOP_PARENTS = 20;
+
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    private final Map<String, Integer> subsumedByParent = new HashMap<>();
+
+    private final Map<RuleType, Integer> subsumedByType = new EnumMap<>(RuleType.class);
+
+    /**
+     * 登记一条已接受的规则，可在多个线程中调用
+     *
+     * @param line      原始规则
+     * @param canonical 规范化结果，可为 null
+     * @param type      规则类型
+     */
+    public void add(String line, CanonicalRule canonical, RuleType type) {
+        if (canonical == null) {
+            return;
+        }
+        if (canonical.isException() || type == RuleType.DOMAIN || type == RuleType.HOSTS) {
+            entries.add(new Entry(line, canonical, type));
+        }
+    }
+
+    /**
+     * 按字典序等距抽取登记的域名，结果与规则线程的完成顺序无关，需在 {@link #prune()} 之前调用
+     *
+     * @param limit 最多抽取的域名数
+     * @return 去重后的域名，不含例外规则
+     */
+    public List<String> sample(int limit) {
+        List<String> domains = entries.stream()
+                .filter(entry -> !entry.canonical.isException())
+                .map(entry -> entry.canonical.getDomain())
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (domains.size() <= limit) {
+            return domains;
+        }
+        List<String> sample = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            sample.add(domains.get((int) ((long) i * domains.size() / limit)));
+        }
+        return sample;
+    }
+
+    /**
+     * 构建后缀树并计算被覆盖的规则
+     *
+     * @return 可以移除的原始规则
+     */
+    public Set<String> prune() {
+        TimeInterval interval = DateUtil.timer();
+        DomainSuffixTrie trie = new DomainSuffixTrie();
+        Map<Integer, String> blockers = new HashMap<>();
+
+        for (Entry entry : entries) {
+            CanonicalRule rule = entry.canonical;
+            int node = trie.insert(rule.getDomain());
+            if (rule.isException()) {
+                trie.setFlag(node, EXCEPTION);
+            } else if (rule.getAnchor() == CanonicalRule.Anchor.SUBDOMAIN && isUnrestricted(rule.getModifiers())) {
+                trie.setFlag(node, BLOCK);
+                blockers.putIfAbsent(node, rule.getDomain());
+            }
+        }
+
+        Set<String> redundant = new HashSet<>();
+        int[] path = new int[128];
+        for (Entry entry : entries) {
+            CanonicalRule rule = entry.canonical;
+            if (rule.isException() || !rule.getModifiers().isEmpty()) {
+                continue;
+            }
+            int depth = trie.path(rule.getDomain(), path);
+            int target = depth - 1;
+            if (target < 0 || trie.hasFlag(path[target], EXCEPTION)) {
+                continue;
+            }
+            // ||example.com^ 只能被严格的父域名覆盖，精确规则可以被同名的 ||example.com^ 覆盖
+            int from = rule.getAnchor() == CanonicalRule.Anchor.SUBDOMAIN ? target - 1 : target;
+            for (int i = from; i >= 0; i--) {
+                int node = path[i];
+                if (i != target && trie.hasFlag(node, EXCEPTION)) {
+                    break;
+                }
+                if (trie.hasFlag(node, BLOCK)) {
+                    if (redundant.add(entry.line)) {
+                        subsumedByParent.merge(blockers.get(node), 1, Integer::sum);
+                        subsumedByType.merge(entry.type, 1, Integer::sum);
+                    }
+                    break;
+                }
+            }
+        }
+
+        log.info("父域名覆盖裁剪完成，耗时 {} ms，登记规则: {}，树节点: {}，标签: {}，可移除规则: {}",
+                interval.intervalMs(), entries.size(), trie.getNodeCount(), trie.getLabelCount(), redundant.size());
+        subsumedByParent.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(TOP_PARENTS)
+                .forEach(e -> log.info("  ||{}^ 覆盖 {} 条规则", e.getKey(), e.getValue()));
+        entries.clear();
+        return redundant;
+    }
+
+    /**
+     * @return 每个父域名覆盖的规则数
+     */
+    public Map<String, Integer> getSubsumedByParent() {
+        return Collections.unmodifiableMap(subsumedByParent);
+    }
+
+    /**
+     * @param type 规则类型
+     * @return 该类型中被覆盖的规则数，与 {@link #prune()} 返回的规则一一对应
+     */
+    public int getSubsumed(RuleType type) {
+        return subsumedByType.getOrDefault(type, 0);
+    }
+
+    private static boolean isUnrestricted(List<String> modifiers) {
+        return modifiers.isEmpty() || (modifiers.size() == 1 && "important".equals(modifiers.get(0)));
+    }
+
+    private static final class Entry {
+
+        private final String line;
+
+        private final CanonicalRule canonical;
+
+        private final RuleType type;
+
+        private Entry(String line, CanonicalRule canonical, RuleType type) {
+            this.line = line;
+            this.canonical = canonical;
+            this.type = type;
+        }
+    }
+}
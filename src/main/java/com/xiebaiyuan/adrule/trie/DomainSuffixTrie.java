@@ -0,0 +1,176 @@
+package com.xiebaiyuan.adrule.trie;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按域名标签倒序组织的后缀树
+ * <p>
+ * ads.example.com 依次经过 com -> example -> ads 三个节点。
+ * 标签先被驻留为 int 编号，节点之间的边存放在一张 (父节点, 标签) -> 子节点 的开放寻址表里，
+ * 节点本身只占用一个 flag 字节，百万级域名也只需要几个基本类型数组。
+ * <p>
+ * 非线程安全，应在单个线程中构建和查询。
+ *
+ * @author xiebaiyuan
+ */
+public class DomainSuffixTrie {
+
+    public static final int ROOT = 0;
+
+    private static final int NO_NODE = -1;
+
+    private final Map<String, Integer> labels = new HashMap<>();
+
+    /** 边表：key = 父节点 << 32 | 标签编号，value = 子节点 + 1（0 表示空槽） */
+    private long[] edgeKeys;
+
+    private int[] edgeValues;
+
+    private int edgeCount;
+
+    private byte[] flags;
+
+    private int nodeCount = 1;
+
+    public DomainSuffixTrie() {
+        edgeKeys = new long[1 << 16];
+        edgeValues = new int[1 << 16];
+        flags = new byte[1 << 16];
+    }
+
+    /**
+     * 插入域名，返回对应节点，路径上缺失的节点会被创建
+     *
+     * @param domain 规范化后的域名
+     * @return 节点编号
+     */
+    public int insert(String domain) {
+        int node = ROOT;
+        int end = domain.length();
+        while (end > 0) {
+            int start = domain.lastIndexOf('.', end - 1) + 1;
+            int label = internLabel(domain.substring(start, end));
+            int child = child(node, label);
+            if (child == NO_NODE) {
+                child = newNode();
+                putEdge(node, label, child);
+            }
+            node = child;
+            end = start - 1;
+        }
+        return node;
+    }
+
+    /**
+     * 查找域名从顶级域名开始经过的节点
+     *
+     * @param domain 规范化后的域名
+     * @param nodes  输出路径上的节点，长度需不小于域名的标签数
+     * @return 找到的节点个数，等于标签数时表示域名本身也在树中
+     */
+    public int path(String domain, int[] nodes) {
+        int node = ROOT;
+        int end = domain.length();
+        int depth = 0;
+        while (end > 0 && depth < nodes.length) {
+            int start = domain.lastIndexOf('.', end - 1) + 1;
+            Integer label = labels.get(domain.substring(start, end));
+            if (label == null) {
+                break;
+            }
+            node = child(node, label);
+            if (node == NO_NODE) {
+                break;
+            }
+            nodes[depth++] = node;
+            end = start - 1;
+        }
+        return depth;
+    }
+
+    public void setFlag(int node, int flag) {
+        flags[node] |= (byte) flag;
+    }
+
+    public boolean hasFlag(int node, int flag) {
+        return (flags[node] & flag) != 0;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getLabelCount() {
+        return labels.size();
+    }
+
+    private int internLabel(String label) {
+        Integer id = labels.get(label);
+        if (id == null) {
+            id = labels.size();
+            labels.put(label, id);
+        }
+        return id;
+    }
+
+    private int newNode() {
+        if (nodeCount == flags.length) {
+            flags = Arrays.copyOf(flags, flags.length << 1);
+        }
+        return nodeCount++;
+    }
+
+    private int child(int parent, int label) {
+        long key = edgeKey(parent, label);
+        int mask = edgeKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (edgeValues[slot] != 0) {
+            if (edgeKeys[slot] == key) {
+                return edgeValues[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_NODE;
+    }
+
+    private void putEdge(int parent, int label, int child) {
+        if ((edgeCount + 1) * 4L > edgeKeys.length * 3L) {
+            resizeEdges();
+        }
+        insertEdge(edgeKeys, edgeValues, edgeKey(parent, label), child + 1);
+        edgeCount++;
+    }
+
+    private void resizeEdges() {
+        long[] oldKeys = edgeKeys;
+        int[] oldValues = edgeValues;
+        edgeKeys = new long[oldKeys.length << 1];
+        edgeValues = new int[oldValues.length << 1];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                insertEdge(edgeKeys, edgeValues, oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static void insertEdge(long[] keys, int[] values, long key, int value) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private static long edgeKey(int parent, int label) {
+        return ((long) parent << 32) | (label & 0xFFFFFFFFL);
+    }
+
+    private static int mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 29));
+    }
+}
@@ -0,0 +1,182 @@
+package com.xiebaiyuan.adrule;
+
+import cn.hutool.core.io.FileUtil;
+import com.sun.net.httpserver.HttpServer;
+import com.xiebaiyuan.adrule.config.JunkConfig;
+import com.xiebaiyuan.adrule.config.OutputConfig;
+import com.xiebaiyuan.adrule.config.PipelineConfig;
+import com.xiebaiyuan.adrule.config.RegexConfig;
+import com.xiebaiyuan.adrule.config.RuleConfig;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.fetch.FetchCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RuleBuildTest {
+
+    @TempDir
+    File dir;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private int build(List<String> sources) throws Exception {
+        return build(Collections.emptyList(), sources, null);
+    }
+
+    private int build(List<String> remote, List<String> local, FetchCache fetchCache) throws Exception {
+        RuleConfig ruleConfig = new RuleConfig();
+        ruleConfig.setRemote(remote);
+        ruleConfig.setLocal(local);
+        OutputConfig outputConfig = new OutputConfig();
+        outputConfig.setPath(new File(dir, "rule").getPath());
+        Map<String, List<RuleType>> files = new LinkedHashMap<>();
+        files.put("all.txt", List.of(RuleType.values()));
+        files.put("adgh.txt", List.of(RuleType.DOMAIN, RuleType.REGEX));
+        files.put("domain.txt", List.of(RuleType.DOMAIN));
+        files.put("hosts.txt", List.of(RuleType.HOSTS));
+        outputConfig.setFiles(files);
+        return RuleBuild.builder()
+                .ruleConfig(ruleConfig)
+                .outputConfig(outputConfig)
+                .junkConfig(new JunkConfig())
+                .pipelineConfig(new PipelineConfig())
+                .regexConfig(new RegexConfig())
+                .executor(executor)
+                .fetchCache(fetchCache)
+                .ruleDir(new File(dir, "rule").getPath())
+                .snapshotDir(new File(dir, "snapshot"))
+                .build()
+                .run();
+    }
+
+    private File source(String name, String content) {
+        File file = new File(dir, name);
+        FileUtil.writeUtf8String(content, file);
+        return file;
+    }
+
+    private List<String> body(String name) {
+        return FileUtil.readLines(new File(dir, "rule" + File.separator + name), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void keepsHostsEntryAndBareDomainFromDifferentSources() throws Exception {
+        String hosts = source("hosts.txt", "0.0.0.0 ads.x.com\n").getPath();
+        String domains = source("domains.txt", "ads.x.com\n").getPath();
+
+        // 两种写法规范化后的键相同，无论哪个规则源先读完，两类文件都要有这条拦截
+        for (List<String> sources : List.of(List.of(hosts, domains), List.of(domains, hosts))) {
+            assertEquals(0, build(sources));
+            assertEquals(List.of("ads.x.com"), body("domain.txt"));
+            assertEquals(List.of("ads.x.com"), body("adgh.txt"));
+            assertEquals(List.of("0.0.0.0 ads.x.com"), body("hosts.txt"));
+        }
+    }
+
+    @Test
+    void dropsDuplicatesWithinOneType() throws Exception {
+        String first = source("first.txt", "ads.x.com\n||b.com^\n").getPath();
+        String second = source("second.txt", "ads.x.com\n||b.com^\n").getPath();
+
+        assertEquals(0, build(List.of(first, second)));
+        assertEquals(1, body("domain.txt").stream().filter("ads.x.com"::equals).count());
+        assertEquals(1, body("domain.txt").stream().filter("||b.com^"::equals).count());
+    }
+
+    @Test
+    void truncatedDownloadFallsBackToCachedBody() throws Exception {
+        List<String> rules = IntStream.range(0, 2000).mapToObj(i -> "||ads" + i + ".x.com^").sorted().collect(Collectors.toList());
+        byte[] full = String.join("\n", rules).concat("\n").getBytes(StandardCharsets.UTF_8);
+        AtomicBoolean stall = new AtomicBoolean();
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/list.txt", exchange -> {
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (!stall.get()) {
+                    exchange.sendResponseHeaders(200, full.length);
+                    out.write(full);
+                    return;
+                }
+                // 正文发到一半停住，连接保持打开
+                exchange.sendResponseHeaders(200, 0);
+                out.write(full, 0, full.length / 2);
+                out.flush();
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/list.txt";
+        try (FetchCache cache = new FetchCache(new File(dir, "cache"), 300, 10_000, 4)) {
+            assertEquals(0, build(List.of(url), Collections.emptyList(), cache));
+            assertEquals(rules, body("domain.txt"));
+
+            // 下载被截断时不发布半份规则，改用上一份完整缓存重新构建
+            stall.set(true);
+            assertEquals(0, build(List.of(url), Collections.emptyList(), cache));
+            assertEquals(rules, body("domain.txt"));
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void truncatedDownloadWithoutCacheFailsBuild() throws Exception {
+        String local = source("local.txt", "||local.x.com^\n").getPath();
+        assertEquals(0, build(List.of(local)));
+
+        byte[] partial = "||ads0.x.com^\n||ads1.x.com^\n".getBytes(StandardCharsets.UTF_8);
+        CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/list.txt", exchange -> {
+            try (OutputStream out = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, 0);
+                out.write(partial);
+                out.flush();
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/list.txt";
+        try (FetchCache cache = new FetchCache(new File(dir, "cache"), 300, 10_000, 4)) {
+            // 没有可用的缓存，构建失败，上一次发布的文件保持不变
+            assertEquals(1, build(List.of(url), List.of(local), cache));
+            assertEquals(List.of("||local.x.com^"), body("domain.txt"));
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.xiebaiyuan.adrule.classifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeywordAutomatonTest {
+
+    private static final List<String> KEYWORDS = List.of("he", "she", "his", "hers", "ab", "bab", "购买", "买该域名", "域名");
+
+    private static KeywordAutomaton automaton() {
+        KeywordAutomaton.Builder builder = KeywordAutomaton.builder();
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            builder.add(KEYWORDS.get(i), 1L << i);
+        }
+        return builder.add("", 1L << 60).build();
+    }
+
+    private static long naive(String text) {
+        long hits = 0;
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            if (text.contains(KEYWORDS.get(i))) {
+                hits |= 1L << i;
+            }
+        }
+        return hits;
+    }
+
+    @Test
+    void findsOverlappingKeywords() {
+        KeywordAutomaton automaton = automaton();
+        assertEquals(naive("ushers"), automaton.scan("ushers", 0));
+        assertEquals(0b1011, automaton.scan("ushers", 0));
+        assertEquals(naive("babab"), automaton.scan("babab", 0));
+        assertEquals(0, automaton.scan("", 0));
+    }
+
+    @Test
+    void followsFailureLinksThroughWideCharacters() {
+        KeywordAutomaton automaton = automaton();
+        // 购买 之后失败到 买该域名，再经过 域名
+        String text = "请购买该域名";
+        assertEquals(naive(text), automaton.scan(text, 0));
+        assertEquals(naive("购域名he"), automaton.scan("购域名he", 0));
+    }
+
+    @Test
+    void mergesMasksOfRepeatedKeywords() {
+        KeywordAutomaton automaton = KeywordAutomaton.builder().add("ad", 1).add("ad", 2).build();
+        assertEquals(3, automaton.scan("bad", 0));
+    }
+
+    @Test
+    void stopsAtFirstStopMaskHit() {
+        KeywordAutomaton automaton = automaton();
+        // 扫描到 she 即返回，后面的 hers 不再计入
+        assertEquals(0b11, automaton.scan("she hers", 0b10));
+    }
+
+    @Test
+    void scansRanges() {
+        KeywordAutomaton automaton = automaton();
+        assertEquals(naive("ab"), automaton.scan("xhe ab", 4, 6, 0));
+        byte[] bytes = "xhe ab".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(automaton.scan("xhe ab", 1, 6, 0), automaton.scanAscii(bytes, 1, 6, 0));
+    }
+
+    @Test
+    void matchesNaiveSearchOnRandomText() {
+        KeywordAutomaton automaton = automaton();
+        Random random = new Random(5);
+        String alphabet = "abehirs 购买该域名";
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String s = text.toString();
+            assertEquals(naive(s), automaton.scan(s, 0), s);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.xiebaiyuan.adrule.classifier;
+
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.ReUtil;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.Constant;
+import com.xiebaiyuan.adrule.enums.RuleType;
+
+/**
+ * 重写为 {@link RuleClassifier} 之前的 Util.clearRule / Util.validRule，原样保留作为对照
+ * <p>
+ * 只去掉了把 URL 正则追加到 filtered-http-regex.txt 的文件写入，返回值不变。
+ */
+final class LegacyClassifier {
+
+    private LegacyClassifier() {
+    }
+
+    /**
+     * 原规则线程中的判定顺序
+     *
+     * @return 规则类型，清理后为空或不属于任何类型时返回 null
+     */
+    static RuleType classify(String line) {
+        String content = clearRule(line);
+        if (StrUtil.isBlank(content)) {
+            return null;
+        }
+        for (RuleType type : new RuleType[]{RuleType.DOMAIN, RuleType.HOSTS, RuleType.REGEX, RuleType.MODIFY}) {
+            if (validRule(content, type)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validate if content is a rule of specified type
+     *
+     * @param rule content
+     * @param type rule type
+     * @return validation result
+     */
+    static boolean validRule(String rule, RuleType type) {
+        // 预过滤：检查是否包含可疑内容
+        // 对于正则规则（RuleType.REGEX）要放宽对花括号和带大量括号/分组的检查，
+        // 否则像 {1,2}、{15,} 这样的量词会被误判为代码片段而被过滤掉。
+        if (type != RuleType.REGEX) {
+            if (rule.contains("<") && rule.contains(">") ||
+                rule.contains("function") || rule.contains("return") ||
+                rule.contains("console.") || rule.contains("Copyright") ||
+                rule.contains("pageOptions") || rule.contains("xhr.send") ||
+                (rule.contains("{") && rule.contains("}")) ||
+                rule.contains("Rights Reserved") || rule.contains("Privacy Policy") ||
+                rule.contains("购买该域名") || rule.contains("More domains") ||
+                rule.contains("Seo.Domains") || rule.equals("];") || rule.startsWith("];") ||
+                (rule.startsWith("#") && rule.replace("#", "").trim().isEmpty())) {
+                return false;
+            }
+        } else {
+            // 针对正则规则仍需要过滤明显非规则的代码/HTML片段和垃圾内容
+            if (rule.contains("<") && rule.contains(">") ||
+                rule.contains("function") || rule.contains("return") ||
+                rule.contains("console.") || rule.contains("Copyright") ||
+                rule.contains("pageOptions") || rule.contains("xhr.send") ||
+                rule.contains("Rights Reserved") || rule.contains("Privacy Policy") ||
+                rule.contains("购买该域名") || rule.contains("More domains") ||
+                rule.contains("Seo.Domains") || rule.equals("];") || rule.startsWith("];") ||
+                (rule.startsWith("#") && rule.replace("#", "").trim().isEmpty())) {
+                return false;
+            }
+            // 注意：不要在这里拒绝包含花括号或长括号表达式的规则（这些通常是合法的正则量词/分组）。
+        }
+
+        // 特殊处理：AdGuard Home格式的正则表达式规则
+        // 格式如: /^example\.com$/ 或 /example\.(net|org)/
+        if (type == RuleType.REGEX) {
+            // 检查是否包含不支持的修饰符
+            if (containsUnsupportedModifiers(rule)) {
+                return false;
+            }
+            
+            // 检查基本正则表达式格式
+            if (ReUtil.isMatch(Constant.ADG_REGEX_PATTERN, rule)) {
+                return true;
+            }
+            
+            // 检查带修饰符的正则表达式格式，如: /^(\S+\.)?advert/$denyallow=...
+            if (ReUtil.isMatch(Constant.ADG_REGEX_WITH_MODIFIER_PATTERN, rule)) {
+                // 提取修饰符部分
+                String modifierPart = null;
+                int dollarPos = rule.lastIndexOf('$');
+                if (dollarPos > rule.lastIndexOf('/') && dollarPos > 0) {
+                    modifierPart = rule.substring(dollarPos);
+                    
+                    // 检查修饰符是否包含不支持的修饰符
+                    if (modifierPart != null && containsUnsupportedModifiers(modifierPart)) {
+                        return false;
+                    }
+                    
+                    // 检查修饰符是否有效
+                    if (modifierPart != null) {
+                        for (String modifier : Constant.ADG_MODIFIERS) {
+                            if (modifierPart.contains(modifier)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+                
+                // 没有修饰符或没有识别到有效修饰符，但格式仍然是正则表达式
+                // 再次检查是否为纯正则表达式（无修饰符）
+                if (dollarPos < 0 || dollarPos <= rule.lastIndexOf('/')) {
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        // Match identifier, must match when identifier exists
+        if (ArrayUtil.isNotEmpty(type.getIdentify())) {
+            if (!StrUtil.containsAny(rule, type.getIdentify())) {
+                return false;
+            }
+        }
+
+        if (ArrayUtil.isNotEmpty(type.getMatch()) || ArrayUtil.isNotEmpty(type.getExclude())) {
+            // Match positive rules, need to satisfy at least one
+            if (ArrayUtil.isNotEmpty(type.getMatch())) {
+                boolean math = false;
+                for (String pattern : type.getMatch()) {
+                    if (ReUtil.contains(pattern, rule)) {
+                        math = true;
+                        break;
+                    }
+                }
+                if (!math) {
+                    return false;
+                }
+            }
+
+            // Match negative rules, need to satisfy none
+            if (ArrayUtil.isNotEmpty(type.getExclude())) {
+                for (String pattern : type.getExclude()) {
+                    if (ReUtil.contains(pattern, rule)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            return true; // 如果有match模式且已通过，无exclude模式，则通过
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Clean rule string, remove spaces and certain specific symbols
+     *
+     * @param content content
+     * @return cleaned result
+     */
+    static String clearRule(String content) {
+        content = StrUtil.isNotBlank(content) ? StrUtil.trim(content) : StrUtil.EMPTY;
+
+    // 判断是否为正则表达式（以 '/' 开头），正则中会包含大量特殊符号和量词，
+    // 对这些符号的严格过滤会误伤合法正则规则，因此对正则放宽某些检查。
+    boolean isRegex = content.startsWith("/");
+
+        // 如果是正则，先判断是否为 URL 级别的正则（包含协议或 '://'），这类规则对 DNS 层无效，记录后丢弃
+        if (isRegex) {
+            // 规范化 escaped slash（\/ -> /）用于检测，例如 /^https:\/\/.../ 会被正确识别
+            String detect = content.replaceAll("\\\\/", "/");
+            if (detect.contains("://") || detect.matches("^/https?:/{2}.*")) {
+                return StrUtil.EMPTY;
+            }
+
+            // 进一步检测：是否为域名后跟路径的正则（例如 doseofporn.com/... 或 idnes.cz/...），
+            // 这类规则实际是 URL 级别的（包含 path），对 DNS 层无效，应记录并丢弃
+            try {
+                java.util.regex.Pattern p = java.util.regex.Pattern.compile(".*[A-Za-z0-9\\-]+\\.[A-Za-z]{2,6}(/|/.*).*");
+                java.util.regex.Matcher m2 = p.matcher(detect);
+                if (m2.find()) {
+                    return StrUtil.EMPTY;
+                }
+            } catch (Exception ignored) {}
+
+            // 严格过滤纯 IP 段/端口匹配的正则，这类规则对 AdGuardHome 意义有限，丢弃它们。
+            if (isPureIpRegex(content)) {
+                return StrUtil.EMPTY;
+            }
+        }
+
+        // Basic validity check
+        if (ReUtil.contains(Constant.EFFICIENT_REGEX, content)) {
+            return StrUtil.EMPTY;
+        }
+        
+        // Additional check for code fragments
+        if (ReUtil.contains(Constant.CODE_FRAGMENT_REGEX, content)) {
+            return StrUtil.EMPTY;
+        }
+        
+        // Check for long separator lines (e.g., ########################)
+        if (content.startsWith("#") && content.replace("#", "").trim().isEmpty()) {
+            return StrUtil.EMPTY;
+        }
+        
+        // Check for domain sales messages and common website footer patterns
+        if (content.contains("购买该域名") || content.contains("More domains") || 
+            content.contains("Seo.Domains") || content.contains("Copyright") ||
+            content.startsWith("];") || content.equals("];") ||
+            content.matches(".*\\d{4}.*Copyright.*") || content.matches(".*©.*\\d{4}.*")) {
+            return StrUtil.EMPTY;
+        }
+        
+        // Check for common non-rule patterns
+        // 对于普通规则，如果包含花括号或过长的带括号表达式，通常是代码片段或噪声，予以过滤。
+        // 但如果是正则（isRegex），这些符号通常合法（量词、分组等），不应直接过滤。
+        if ((!isRegex && content.contains("{") && content.contains("}")) ||
+            (!isRegex && content.contains("(") && content.contains(")") && content.length() > 30) ||
+            content.startsWith(".") || (content.startsWith("#") && !content.startsWith("##")) ||
+            content.contains("JSON.parse") || content.contains("arguments.push") ||
+            content.length() > 300) { // 一般规则不会太长
+            return StrUtil.EMPTY;
+        }
+
+        // 保留正则表达式规则中的修饰符
+        if (content.startsWith("/") && content.contains("/$")) {
+            // 这是带修饰符的正则表达式规则，直接返回，不做进一步处理
+            return content;
+        }
+
+        // Remove basic modifier symbols from start/end
+        if (ReUtil.contains(Constant.BASIC_MODIFY_REGEX, content)) {
+           content = ReUtil.replaceAll(content, Constant.BASIC_MODIFY_REGEX, StrUtil.EMPTY);
+        }
+
+        return StrUtil.trim(content);
+    }
+
+    /**
+     * 检查规则是否包含AdGuard Home不支持的修饰符
+     * @param rule 规则字符串
+     * @return true if contains unsupported modifiers
+     */
+    private static boolean containsUnsupportedModifiers(String rule) {
+        if (rule == null || rule.isEmpty()) {
+            return false;
+        }
+        
+        // 提取修饰符部分（$之后的内容）
+        int dollarPos = rule.lastIndexOf('$');
+        if (dollarPos < 0) {
+            return false; // 没有修饰符
+        }
+        
+        String modifierPart = rule.substring(dollarPos + 1);
+        
+        // 首先检查是否包含AdGuard Home支持的修饰符
+        boolean hasAdGuardModifier = false;
+        for (String supportedModifier : Constant.ADG_MODIFIERS) {
+            if (modifierPart.contains(supportedModifier)) {
+                hasAdGuardModifier = true;
+                break;
+            }
+        }
+        
+        // 如果包含AdGuard Home支持的修饰符，则保留该规则
+        if (hasAdGuardModifier) {
+            return false;
+        }
+        
+        // 检查是否只包含不支持的修饰符
+        for (String unsupportedModifier : Constant.UNSUPPORTED_MODIFIERS) {
+            if (modifierPart.contains(unsupportedModifier)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+
+    /**
+     * 检测是否为纯 IP 或 IP:端口 的正则表达式模式
+     */
+    private static boolean isPureIpRegex(String rule) {
+        if (rule == null) return false;
+        String s = rule.trim();
+        // 去掉起始和结束的 /
+        if (s.startsWith("/")) {
+            int last = s.lastIndexOf('/');
+            if (last > 0) {
+                s = s.substring(1, last);
+            } else {
+                s = s.substring(1);
+            }
+        }
+
+        // 如果包含明显的 IP 字段（例如 104\.154\. 这种 escaped-dot 前面是数字），则视为 IP 风格
+        int ipSegmentCount = 0;
+        int from = 0;
+        while (true) {
+            int idx = s.indexOf("\\.", from); // 查找 "\."
+            if (idx < 0) break;
+            // 向前检查连续数字（1-3 位）
+            int j = idx - 1;
+            int digitCount = 0;
+            while (j >= 0 && Character.isDigit(s.charAt(j)) && digitCount <= 3) {
+                digitCount++;
+                j--;
+            }
+            if (digitCount >= 1 && digitCount <= 3) {
+                ipSegmentCount++;
+            }
+            from = idx + 2;
+        }
+        if (ipSegmentCount >= 2) {
+            // 检查是否含有异常长的任意字符量词，例如 ".{100,}"，如果存在则认为是可疑且丢弃
+            java.util.regex.Matcher m = java.util.regex.Pattern.compile("\\\\.\\{\\s*(\\d+)").matcher(s);
+            if (m.find()) {
+                try {
+                    int lower = Integer.parseInt(m.group(1));
+                    if (lower >= 10) { // 下界较大的量词（例如 >=10 或用户示例的 100）视为垃圾
+                        return true;
+                    }
+                } catch (NumberFormatException ignore) {
+                }
+            }
+            // 如果没有大下界量词，仅仅是纯 IP 段，也把它作为纯 IP 风格处理（可被丢弃）
+            return true;
+        }
+        // 归一化：把常见转义序列视作数字/标点（例如 \d -> 0， \\. -> .），并移除字符类内容
+        String norm = s.replaceAll("\\\\d", "0"); // \d -> 0
+        norm = norm.replaceAll("\\\\\\.", "."); // \. -> .
+        norm = norm.replaceAll("\\\\:", ":"); // \: -> :
+        // 移除字符类内容 [ ... ]，例如 [0-9] 或 [5-7]
+        norm = norm.replaceAll("\\[.*?\\]", "");
+        // 移除花括号量词内容 {1,3}
+        norm = norm.replaceAll("\\{.*?\\}", "");
+        // 移除非字母数字和点、冒号、连字符、竖线等符号
+        String filtered = norm.replaceAll("[^A-Za-z0-9.:-]", "");
+
+        int digits = 0, letters = 0;
+        for (char c : filtered.toCharArray()) {
+            if (Character.isDigit(c)) digits++;
+            if (Character.isLetter(c)) letters++;
+        }
+        if (digits > 4 && letters == 0 && filtered.contains(".")) {
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package com.xiebaiyuan.adrule.classifier;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import com.xiebaiyuan.adrule.Constant;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleClassifierTest {
+
+    private static final List<String> SAMPLES = List.of(
+            "||example.com^", "@@||example.com^", "example.com", "||ads.example.com^$important",
+            "0.0.0.0 ads.example.com", "127.0.0.1 localhost", ":: ads.example.com", "360.cn",
+            "/^ad[0-9]+\\.example\\.com$/", "/^(\\S+\\.)?advert/$denyallow=example.com",
+            "/(a|c)\\.[0-9a-f]{56}\\.com$/", "/^https:\\/\\/ads\\.example\\.com\\//", "/example\\.com\\/path/",
+            "/104\\.154\\.\\d+\\.\\d+/", "||example.com^$dnstype=AAAA", "||example.com^$popup",
+            "||example.com^$third-party", "-ad.", "_ad_", "|ads.example.com^", "##.banner",
+            "example.com##.banner", "! comment", "# comment", "########", "[Adblock Plus 2.0]",
+            "function foo() { return 1; }", "var x = 1;", "Copyright 2024 Example", "© 2024 Example",
+            "];", "<div>ads</div>", "a(b)c(d)e(f)g(h)i(j)k(l)m(n)o(p)q", "{x}", ".example.com",
+            "||例子.测试^", "ads.example.com # trailing", "@@/^ads\\./", "/ads/$important,client=1.2.3.4"
+    );
+
+    @Test
+    void matchesLegacyClassificationOnSamples() {
+        assertSameAsLegacy(withVariants(SAMPLES));
+    }
+
+    @Test
+    void matchesLegacyClassificationOnRuleFixtures() {
+        List<String> lines = new ArrayList<>();
+        for (String name : List.of("hosts.txt", "regex.txt", "filtered-http-regex.txt", "mylist.txt", "domain_allow.txt")) {
+            File file = FileUtil.file(Constant.LOCAL_RULE_SUFFIX, name);
+            if (file.isFile()) {
+                FileUtil.readLines(file, StandardCharsets.UTF_8).stream()
+                        .filter(StrUtil::isNotBlank)
+                        .limit(5_000)
+                        .forEach(lines::add);
+            }
+        }
+        assertSameAsLegacy(withVariants(lines));
+    }
+
+    @Test
+    void classifiesCommonRuleShapes() {
+        RuleClassifier classifier = RuleClassifier.getDefault();
+        assertEquals(RuleType.DOMAIN, classifier.classify("||example.com^").getType());
+        assertEquals(RuleType.HOSTS, classifier.classify("0.0.0.0 ads.example.com").getType());
+        assertEquals(RuleType.REGEX, classifier.classify("/^ad[0-9]+\\.example\\.com$/").getType());
+        assertTrue(classifier.classify("! comment").isCleanRejected());
+    }
+
+    /**
+     * 加上前后缀、修饰符、U+0085、花括号和大小写变化，覆盖手写扫描器与原正则的边界
+     */
+    private static Set<String> withVariants(List<String> lines) {
+        Set<String> variants = new LinkedHashSet<>();
+        for (String line : lines) {
+            variants.add(line);
+            variants.add("  " + line + "\t");
+            variants.add("@@" + line);
+            variants.add("||" + line);
+            variants.add(line + "^");
+            variants.add(line + "$important");
+            variants.add(line + "$");
+            variants.add(line + "\u0085");
+            variants.add(line + "{}");
+            variants.add(line.toUpperCase());
+        }
+        return variants;
+    }
+
+    private static void assertSameAsLegacy(Set<String> lines) {
+        RuleClassifier classifier = RuleClassifier.getDefault();
+        List<String> differences = new ArrayList<>();
+        for (String line : lines) {
+            RuleType expected = LegacyClassifier.classify(line);
+            RuleType actual = classifier.classify(line).getType();
+            if (expected != actual) {
+                differences.add(line + " => legacy " + expected + ", classifier " + actual);
+            }
+        }
+        assertTrue(differences.isEmpty(), () -> differences.size() + " differences, e.g. "
+                + differences.subList(0, Math.min(10, differences.size())));
+    }
+}
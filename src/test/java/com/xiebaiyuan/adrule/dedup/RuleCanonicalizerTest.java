@@ -0,0 +1,73 @@
+package com.xiebaiyuan.adrule.dedup;
+
+import com.xiebaiyuan.adrule.model.CanonicalRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleCanonicalizerTest {
+
+    @Test
+    void hostsEntriesAndBareDomainsShareExactKey() {
+        assertEquals("|example.com^", RuleCanonicalizer.key("0.0.0.0 example.com"));
+        assertEquals("|example.com^", RuleCanonicalizer.key("127.0.0.1\tExample.COM # tracker"));
+        assertEquals("|example.com^", RuleCanonicalizer.key(":: example.com"));
+        assertEquals("|example.com^", RuleCanonicalizer.key("example.com"));
+        assertEquals("|example.com^", RuleCanonicalizer.key("|example.com.^"));
+    }
+
+    @Test
+    void bareDomainsStartingWithDigitsAreNotHosts() {
+        for (String domain : List.of("360.cn", "1rx.io", "51.la")) {
+            CanonicalRule rule = RuleCanonicalizer.parse(domain);
+            assertNotNull(rule, domain);
+            assertEquals(domain, rule.getDomain());
+            assertEquals(CanonicalRule.Anchor.EXACT, rule.getAnchor());
+        }
+        assertEquals("||360.cn^", RuleCanonicalizer.key("||360.cn^"));
+        assertEquals("|360.cn^", RuleCanonicalizer.key("0.0.0.0 360.cn"));
+    }
+
+    @Test
+    void hostsEntriesToRealAddressesAreNotRules() {
+        assertNull(RuleCanonicalizer.parse("1.2.3.4 example.com"));
+        assertNull(RuleCanonicalizer.parse("0.0.0.0 a.com b.com"));
+    }
+
+    @Test
+    void subdomainAnchorDiffersFromExact() {
+        CanonicalRule rule = RuleCanonicalizer.parse("||ADS.Example.org^");
+        assertNotNull(rule);
+        assertEquals(CanonicalRule.Anchor.SUBDOMAIN, rule.getAnchor());
+        assertEquals("||ads.example.org^", rule.getKey());
+        assertFalse(rule.getKey().equals(RuleCanonicalizer.key("ads.example.org")));
+    }
+
+    @Test
+    void modifiersAreSortedAndDeduplicated() {
+        assertEquals(RuleCanonicalizer.key("||example.org^$important,dnstype=AAAA|A"),
+                RuleCanonicalizer.key("||example.org^$DNSTYPE=A|AAAA,important,important"));
+        assertEquals("@@||example.org^$client=a|b,important",
+                RuleCanonicalizer.key("@@||example.org^$important,client=b|a"));
+    }
+
+    @Test
+    void internationalDomainsUsePunycode() {
+        assertEquals("||xn--fiqs8s.cn^", RuleCanonicalizer.key("||中国.cn^"));
+    }
+
+    @Test
+    void nonDomainRulesKeepTrimmedText() {
+        assertNull(RuleCanonicalizer.parse("||example.com"));
+        assertNull(RuleCanonicalizer.parse("example.com^"));
+        assertNull(RuleCanonicalizer.parse("/ads[0-9]+\\.example/"));
+        assertEquals("/ads[0-9]+\\.example/", RuleCanonicalizer.key("  /ads[0-9]+\\.example/ "));
+        assertTrue(RuleCanonicalizer.key("||example.org^$").startsWith("||example.org^$"));
+    }
+}
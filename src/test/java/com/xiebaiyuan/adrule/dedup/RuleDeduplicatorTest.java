@@ -0,0 +1,91 @@
+package com.xiebaiyuan.adrule.dedup;
+
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleDeduplicatorTest {
+
+    @Test
+    void countsDuplicates() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        assertTrue(deduplicator.add("||example.org^"));
+        assertTrue(deduplicator.add("||example.com^"));
+        assertFalse(deduplicator.add("||example.org^"));
+        assertEquals(2, deduplicator.size());
+        assertEquals(1, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    void separatesKeysByType() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        assertTrue(deduplicator.add(RuleType.HOSTS, "|ads.x.com^"));
+        assertTrue(deduplicator.add(RuleType.DOMAIN, "|ads.x.com^"));
+        assertTrue(deduplicator.add(null, "|ads.x.com^"));
+        assertFalse(deduplicator.add(RuleType.DOMAIN, "|ads.x.com^"));
+        assertEquals(3, deduplicator.size());
+    }
+
+    @Test
+    void keepsFingerprintsSharingHighWord() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        // 高位相同即落在同一条带的同一槽位，只能靠低位区分
+        long hi = 0x1234_5678_9ABC_DEF0L;
+        for (long lo = 1; lo <= 100; lo++) {
+            assertTrue(deduplicator.add(hi, lo));
+        }
+        for (long lo = 1; lo <= 100; lo++) {
+            assertFalse(deduplicator.add(hi, lo));
+        }
+        assertEquals(100, deduplicator.size());
+    }
+
+    @Test
+    void treatsZeroFingerprintAsOrdinaryValue() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        // 全 0 指纹不能和其他指纹混在一起，也不能被当作空槽
+        assertTrue(deduplicator.add(0, 0));
+        assertTrue(deduplicator.add(0, 1));
+        assertFalse(deduplicator.add(0, 0));
+        assertFalse(deduplicator.add(0, 1));
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(deduplicator.add(i + 1L, i));
+        }
+        // 扩容后仍然保留全 0 指纹
+        assertFalse(deduplicator.add(0, 0));
+        assertEquals(10_002, deduplicator.size());
+    }
+
+    @Test
+    void keepsEntriesAcrossResize() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        long before = deduplicator.getMemoryBytes();
+        // 最高 6 位相同，全部落在一个条带里，超过初始容量的负载上限后扩容多次
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(deduplicator.add(0x0400_0000_0000_0000L | i, i));
+        }
+        assertTrue(deduplicator.getMemoryBytes() > before);
+        for (int i = 0; i < count; i++) {
+            assertFalse(deduplicator.add(0x0400_0000_0000_0000L | i, i));
+        }
+        assertEquals(count, deduplicator.size());
+        assertEquals(count, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    void keepsRulesAcrossResize() {
+        RuleDeduplicator deduplicator = new RuleDeduplicator();
+        int count = 300_000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(deduplicator.add("||host" + i + ".example^"));
+        }
+        for (int i = 0; i < count; i++) {
+            assertFalse(deduplicator.add("||host" + i + ".example^"));
+        }
+        assertEquals(count, deduplicator.size());
+    }
+}
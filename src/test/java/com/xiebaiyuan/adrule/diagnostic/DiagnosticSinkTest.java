@@ -0,0 +1,75 @@
+package com.xiebaiyuan.adrule.diagnostic;
+
+import cn.hutool.core.io.FileUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DiagnosticSinkTest {
+
+    @TempDir
+    File dir;
+
+    private static List<String> offerConcurrently(DiagnosticSink sink, int threads, int perThread) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            workers.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    // 各线程提交交错且部分重复的内容
+                    sink.offer("rule-" + ((i * threads + offset) % (perThread * threads / 2)));
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return IntStream.range(0, perThread * threads / 2)
+                .mapToObj(i -> "rule-" + i)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void writesSortedDistinctLinesRegardlessOfThreadTiming() throws InterruptedException {
+        File file = new File(dir, "filtered.txt");
+        DiagnosticSink sink = new DiagnosticSink(file, 0, 4096);
+        sink.open();
+        List<String> expected = offerConcurrently(sink, 8, 5_000);
+
+        assertEquals(expected.size(), sink.flush());
+        assertEquals(expected, FileUtil.readLines(file, StandardCharsets.UTF_8));
+        assertFalse(new File(dir, ".filtered.txt.spool").exists());
+    }
+
+    @Test
+    void limitedSinkKeepsSmallestEntries() throws InterruptedException {
+        File file = new File(dir, "samples.txt");
+        DiagnosticSink sink = new DiagnosticSink(file, 100, 4096);
+        sink.open();
+        List<String> expected = offerConcurrently(sink, 4, 2_000).subList(0, 100);
+
+        assertEquals(100, sink.flush());
+        assertEquals(expected, FileUtil.readLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void openTruncatesPreviousRun() {
+        File file = new File(dir, "quarantined.txt");
+        FileUtil.writeUtf8String("stale\r\n", file);
+        DiagnosticSink sink = new DiagnosticSink(file, 0, 4096);
+        sink.open();
+
+        assertEquals(0, sink.flush());
+        assertEquals(0, file.length());
+    }
+}
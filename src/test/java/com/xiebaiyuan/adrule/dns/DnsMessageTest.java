@@ -0,0 +1,148 @@
+package com.xiebaiyuan.adrule.dns;
+
+import com.xiebaiyuan.adrule.enums.BlockMode;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DnsMessageTest {
+
+    private static int u16(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    @Test
+    void parsesFirstQuestion() {
+        byte[] query = DnsMessage.query(0x1234, "Ads.Example.COM.", DnsMessage.TYPE_AAAA);
+        DnsMessage.Question question = DnsMessage.parse(query, query.length);
+        assertNotNull(question);
+        assertEquals("ads.example.com", question.getName());
+        assertEquals(DnsMessage.TYPE_AAAA, question.getType());
+        assertEquals(query.length, question.getEnd());
+        assertEquals(0x1234, DnsMessage.id(query));
+    }
+
+    @Test
+    void parsesRootName() {
+        byte[] query = DnsMessage.query(1, ".", DnsMessage.TYPE_A);
+        DnsMessage.Question question = DnsMessage.parse(query, query.length);
+        assertNotNull(question);
+        assertEquals("", question.getName());
+    }
+
+    @Test
+    void rejectsTruncatedPackets() {
+        byte[] query = DnsMessage.query(1, "ads.example.com", DnsMessage.TYPE_A);
+        for (int length = 0; length < query.length; length++) {
+            // 报头、标签、结束符或类型和类别不完整
+            assertNull(DnsMessage.parse(query, length), "length " + length);
+            assertNull(DnsMessage.parse(Arrays.copyOf(query, length), length), "copy of length " + length);
+        }
+    }
+
+    @Test
+    void rejectsCompressedNames() {
+        byte[] query = DnsMessage.query(1, "example.com", DnsMessage.TYPE_A);
+        byte[] compressed = Arrays.copyOf(query, query.length);
+        // 名称替换为指向报头的压缩指针
+        compressed[DnsMessage.HEADER] = (byte) 0xC0;
+        compressed[DnsMessage.HEADER + 1] = 0;
+        assertNull(DnsMessage.parse(compressed, compressed.length));
+
+        byte[] suffix = Arrays.copyOf(query, query.length);
+        // example 之后的标签改为压缩指针
+        suffix[DnsMessage.HEADER + 8] = (byte) 0xC0;
+        assertNull(DnsMessage.parse(suffix, suffix.length));
+    }
+
+    @Test
+    void rejectsNonQueries() {
+        byte[] query = DnsMessage.query(1, "example.com", DnsMessage.TYPE_A);
+        byte[] response = DnsMessage.error(query, DnsMessage.parse(query, query.length), DnsMessage.NOERROR);
+        assertNull(DnsMessage.parse(response, response.length));
+
+        byte[] notify = Arrays.copyOf(query, query.length);
+        notify[2] |= 0x20;
+        assertNull(DnsMessage.parse(notify, notify.length));
+
+        byte[] empty = Arrays.copyOf(query, query.length);
+        empty[5] = 0;
+        assertNull(DnsMessage.parse(empty, empty.length));
+    }
+
+    @Test
+    void rejectsOverlongLabels() {
+        byte[] query = DnsMessage.query(1, "example.com", DnsMessage.TYPE_A);
+        query[DnsMessage.HEADER] = 64;
+        assertNull(DnsMessage.parse(query, query.length));
+    }
+
+    @Test
+    void blocksWithZeroAddress() {
+        byte[] query = DnsMessage.query(7, "ads.example.com", DnsMessage.TYPE_A);
+        DnsMessage.Question question = DnsMessage.parse(query, query.length);
+        byte[] response = DnsMessage.blocked(query, question, BlockMode.ZERO_IP, 300);
+
+        assertEquals(7, DnsMessage.id(response));
+        assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(response));
+        assertFalse(DnsMessage.truncated(response));
+        assertEquals(1, u16(response, 4));
+        assertEquals(1, u16(response, 6));
+        int pos = question.getEnd();
+        // 压缩指针指向问题中的名称
+        assertEquals(0xC000 | DnsMessage.HEADER, u16(response, pos));
+        assertEquals(DnsMessage.TYPE_A, u16(response, pos + 2));
+        assertEquals(300, u16(response, pos + 6) << 16 | u16(response, pos + 8));
+        assertEquals(4, u16(response, pos + 10));
+        assertArrayEquals(new byte[4], Arrays.copyOfRange(response, pos + 12, response.length));
+
+        byte[] aaaa = DnsMessage.query(8, "ads.example.com", DnsMessage.TYPE_AAAA);
+        byte[] v6 = DnsMessage.blocked(aaaa, DnsMessage.parse(aaaa, aaaa.length), BlockMode.ZERO_IP, 300);
+        assertEquals(aaaa.length + 12 + 16, v6.length);
+    }
+
+    @Test
+    void blocksWithNxdomain() {
+        byte[] query = DnsMessage.query(9, "ads.example.com", DnsMessage.TYPE_A);
+        DnsMessage.Question question = DnsMessage.parse(query, query.length);
+        byte[] response = DnsMessage.blocked(query, question, BlockMode.NXDOMAIN, 300);
+        assertEquals(DnsMessage.NXDOMAIN, DnsMessage.rcode(response));
+        assertEquals(query.length, response.length);
+        assertEquals(0, u16(response, 6));
+    }
+
+    @Test
+    void answersOtherTypesWithoutRecords() {
+        byte[] query = DnsMessage.query(3, "example.com", 16);
+        byte[] response = DnsMessage.blocked(query, DnsMessage.parse(query, query.length), BlockMode.ZERO_IP, 300);
+        assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(response));
+        assertEquals(0, u16(response, 6));
+        assertEquals(query.length, response.length);
+    }
+
+    @Test
+    void errorWithoutQuestionKeepsHeaderOnly() {
+        byte[] garbage = new byte[20];
+        garbage[1] = 5;
+        byte[] response = DnsMessage.error(garbage, null, DnsMessage.FORMERR);
+        assertEquals(DnsMessage.HEADER, response.length);
+        assertEquals(5, DnsMessage.id(response));
+        assertEquals(DnsMessage.FORMERR, DnsMessage.rcode(response));
+        assertEquals(0, u16(response, 4));
+    }
+
+    @Test
+    void parsesUpstreamAddresses() {
+        assertEquals(new InetSocketAddress("127.0.0.1", 53), DnsServer.address("127.0.0.1"));
+        assertEquals(new InetSocketAddress("127.0.0.1", 5353), DnsServer.address("127.0.0.1:5353"));
+        assertEquals(new InetSocketAddress("::1", 53), DnsServer.address("[::1]"));
+        assertEquals(new InetSocketAddress("::1", 5353), DnsServer.address("[::1]:5353"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.xiebaiyuan.adrule.dns;
+
+import com.xiebaiyuan.adrule.config.DnsConfig;
+import com.xiebaiyuan.adrule.matcher.RuleMatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DnsServerTest {
+
+    @TempDir
+    File dir;
+
+    private DnsServer server;
+
+    private InetSocketAddress address;
+
+    private static RuleMatcher rules(String... rules) {
+        return RuleMatcher.builder().addAll(List.of(rules)).build();
+    }
+
+    @BeforeEach
+    void start() throws IOException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        DnsConfig config = new DnsConfig();
+        config.setPort(port);
+        server = new DnsServer(config, rules("||ads.example.com^"), new File(dir, "dns-report.json"));
+        server.start();
+        address = new InetSocketAddress(config.getBind(), port);
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    private byte[] udp(String name) throws IOException {
+        byte[] query = DnsMessage.query(name.length(), name, DnsMessage.TYPE_A);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(5_000);
+            socket.send(new DatagramPacket(query, query.length, address));
+            DatagramPacket packet = new DatagramPacket(new byte[512], 512);
+            socket.receive(packet);
+            return Arrays.copyOf(packet.getData(), packet.getLength());
+        }
+    }
+
+    private byte[] tcp(Socket socket, String name) throws IOException {
+        byte[] query = DnsMessage.query(name.length(), name, DnsMessage.TYPE_A);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeShort(query.length);
+        out.write(query);
+        out.flush();
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] response = new byte[in.readUnsignedShort()];
+        in.readFully(response);
+        return response;
+    }
+
+    @Test
+    void answersBlockedNamesOverUdp() throws IOException {
+        byte[] blocked = udp("x.ads.example.com");
+        assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(blocked));
+        assertEquals("x.ads.example.com".length(), DnsMessage.id(blocked));
+        // 没有配置上游时其余查询返回 SERVFAIL
+        assertEquals(DnsMessage.SERVFAIL, DnsMessage.rcode(udp("example.com")));
+    }
+
+    @Test
+    void answersSeveralQueriesPerTcpConnection() throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setSoTimeout(5_000);
+            for (int i = 0; i < 20; i++) {
+                assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(tcp(socket, "ads.example.com")));
+                assertEquals(DnsMessage.SERVFAIL, DnsMessage.rcode(tcp(socket, "example.com")));
+            }
+        }
+    }
+
+    @Test
+    void usesSwappedRules() throws IOException {
+        assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(udp("ads.example.com")));
+        server.swap(rules("/^tracker\\./"));
+        assertEquals(DnsMessage.SERVFAIL, DnsMessage.rcode(udp("ads.example.com")));
+        assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(udp("tracker.example.com")));
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setSoTimeout(5_000);
+            assertEquals(DnsMessage.NOERROR, DnsMessage.rcode(tcp(socket, "tracker.example.com")));
+            assertEquals(DnsMessage.SERVFAIL, DnsMessage.rcode(tcp(socket, "ads.example.com")));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.xiebaiyuan.adrule.fetch;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import com.xiebaiyuan.adrule.enums.FetchStatus;
+import com.xiebaiyuan.adrule.model.SourceReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FetchCacheTest {
+
+    private static final byte[] BODY = "||a.com^\n||b.com^\n||c.com^\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    File dir;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private HttpServer server;
+
+    private volatile boolean stall;
+
+    private String url;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/list.txt", exchange -> {
+            try (OutputStream out = exchange.getResponseBody()) {
+                if (!stall) {
+                    exchange.sendResponseHeaders(200, BODY.length);
+                    out.write(BODY);
+                    return;
+                }
+                // 发出一半内容后不再发送，也不关闭连接
+                exchange.sendResponseHeaders(200, 0);
+                out.write(BODY, 0, BODY.length / 2);
+                out.flush();
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/list.txt";
+    }
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void stalledBodyTimesOutAndNextOpenUsesCache() throws Exception {
+        List<SourceReport> reports = new ArrayList<>();
+        try (FetchCache cache = new FetchCache(dir, 300, 10_000, 4)) {
+            try (SourceContent content = cache.open(url, reports::add)) {
+                assertArrayEquals(BODY, ByteStreams.toByteArray(content.getStream()));
+            }
+
+            stall = true;
+            long start = System.nanoTime();
+            SourceContent stalled = cache.open(url, reports::add);
+            assertThrows(HttpTimeoutException.class, () -> ByteStreams.exhaust(stalled.getStream()));
+            stalled.close();
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(FetchStatus.FAILED, reports.get(reports.size() - 1).getStatus());
+
+            // 被截断的下载没有替换缓存，下次获取直接使用上一份完整内容
+            try (SourceContent cached = cache.open(url, reports::add)) {
+                assertArrayEquals(BODY, ByteStreams.toByteArray(cached.getStream()));
+            }
+            assertEquals(FetchStatus.STALE, reports.get(reports.size() - 1).getStatus());
+        }
+    }
+
+    @Test
+    void bodyDeadlineCutsSlowDownload() throws Exception {
+        stall = true;
+        try (FetchCache cache = new FetchCache(dir, 10_000, 300, 4)) {
+            SourceContent content = cache.open(url, report -> {
+            });
+            HttpTimeoutException e = assertThrows(HttpTimeoutException.class,
+                    () -> ByteStreams.exhaust(content.getStream()));
+            assertTrue(e.getMessage().contains("300 ms"), e.getMessage());
+            content.close();
+        }
+    }
+}
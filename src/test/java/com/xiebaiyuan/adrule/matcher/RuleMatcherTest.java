@@ -0,0 +1,84 @@
+package com.xiebaiyuan.adrule.matcher;
+
+import com.xiebaiyuan.adrule.enums.Verdict;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RuleMatcherTest {
+
+    private static RuleMatcher matcher(String... rules) {
+        return RuleMatcher.builder().addAll(List.of(rules)).build();
+    }
+
+    @Test
+    void matchesDomainAnchors() {
+        RuleMatcher matcher = matcher("||ads.example.com^", "tracker.example.org", "0.0.0.0 pixel.example.net");
+        assertEquals(Verdict.BLOCKED, matcher.match("ads.example.com"));
+        assertEquals(Verdict.BLOCKED, matcher.match("x.ADS.example.com."));
+        assertEquals(Verdict.BLOCKED, matcher.match("tracker.example.org"));
+        assertEquals(Verdict.NONE, matcher.match("a.tracker.example.org"));
+        assertEquals(Verdict.BLOCKED, matcher.match("pixel.example.net"));
+        assertEquals(Verdict.NONE, matcher.match("example.com"));
+        assertEquals(Verdict.NONE, matcher.match("notads.example.com"));
+    }
+
+    @Test
+    void exceptionWinsOverBlock() {
+        RuleMatcher matcher = matcher("||example.com^", "@@||safe.example.com^", "/^ad[0-9]+\\./", "@@/^ad1\\./");
+        assertEquals(Verdict.BLOCKED, matcher.match("example.com"));
+        assertEquals(Verdict.ALLOWED, matcher.match("safe.example.com"));
+        assertEquals(Verdict.ALLOWED, matcher.match("x.safe.example.com"));
+        assertEquals(Verdict.BLOCKED, matcher.match("ad2.example.org"));
+        assertEquals(Verdict.ALLOWED, matcher.match("ad1.example.org"));
+    }
+
+    @Test
+    void importantBlockWinsOverException() {
+        RuleMatcher matcher = matcher("@@||example.com^", "||ads.example.com^$important", "@@/tracker/",
+                "/^tracker\\./$important");
+        assertEquals(Verdict.ALLOWED, matcher.match("www.example.com"));
+        assertEquals(Verdict.BLOCKED, matcher.match("ads.example.com"));
+        assertEquals(Verdict.BLOCKED, matcher.match("tracker.example.org"));
+        assertEquals(Verdict.ALLOWED, matcher.match("mytracker.example.org"));
+    }
+
+    @Test
+    void importantExceptionWinsOverImportantBlock() {
+        RuleMatcher matcher = matcher("||example.com^$important", "@@||cdn.example.com^$important",
+                "/ads/$important", "@@/^ads\\.safe\\./$important");
+        assertEquals(Verdict.BLOCKED, matcher.match("example.com"));
+        assertEquals(Verdict.ALLOWED, matcher.match("cdn.example.com"));
+        assertEquals(Verdict.BLOCKED, matcher.match("ads.example.org"));
+        assertEquals(Verdict.ALLOWED, matcher.match("ads.safe.example.org"));
+    }
+
+    @Test
+    void convertsBasicRulesAndSkipsUnsupportedModifiers() {
+        RuleMatcher matcher = matcher("||example.org", "|ad*.example.net^", "||x.com^$dnstype=AAAA", "||y.com^$client=1.2.3.4");
+        assertEquals(Verdict.BLOCKED, matcher.match("example.org.cn"));
+        assertEquals(Verdict.BLOCKED, matcher.match("ads.cdn.example.net"));
+        assertEquals(Verdict.NONE, matcher.match("my-ad.example.net"));
+        assertEquals(Verdict.NONE, matcher.match("x.com"));
+        assertEquals(2, matcher.getSkippedRules());
+    }
+
+    @Test
+    void explicitScratchMatchesLikeThreadLocal() {
+        RuleMatcher matcher = matcher("||example.com^", "/^ad[0-9]+\\./", "@@||safe.example.com^");
+        RuleMatcher.Scratch scratch = matcher.newScratch();
+        for (String host : List.of("example.com", "ad1.test", "safe.example.com", "other.org", "AD22.Test.")) {
+            assertEquals(matcher.match(host), matcher.match(host, scratch), host);
+        }
+    }
+
+    @Test
+    void rejectsScratchOfAnotherMatcher() {
+        RuleMatcher.Scratch scratch = matcher("/ads/").newScratch();
+        RuleMatcher other = matcher("/ads/");
+        assertThrows(IllegalArgumentException.class, () -> other.match("ads.com", scratch));
+    }
+}
@@ -0,0 +1,114 @@
+package com.xiebaiyuan.adrule.output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExternalSorterTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> randomRules(int count, long seed) {
+        Random random = new Random(seed);
+        String[] prefixes = {"||", "@@||", "/", "-", ""};
+        List<String> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String prefix = prefixes[random.nextInt(prefixes.length)];
+            String name = Integer.toString(random.nextInt(count / 2), 36) + ".com";
+            rules.add(prefix.equals("/") ? "/" + name + "/" : prefix + name + "^");
+        }
+        return rules;
+    }
+
+    private long sort(ExternalSorter sorter, List<String> lines, Predicate<String> filter, Path out) throws IOException {
+        try (BufferedReader in = new BufferedReader(new StringReader(String.join("\n", lines)))) {
+            return sorter.sort(in, filter, out);
+        }
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void sortsInMemoryWhenBufferFits() throws IOException {
+        List<String> rules = randomRules(1_000, 1);
+        Path out = dir.resolve("out.txt");
+        long written = sort(new ExternalSorter(RuleOrder.COMPARATOR, 1L << 30, dir), rules, rule -> true, out);
+
+        List<String> expected = rules.stream().sorted(RuleOrder.COMPARATOR).collect(Collectors.toList());
+        assertEquals(expected.size(), written);
+        assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void spillsAndMergesRunsInOrder() throws IOException {
+        List<String> rules = randomRules(50_000, 2);
+        Path out = dir.resolve("out.txt");
+        // 每个顺串只容纳几十条，强制产生上千个顺串
+        long written = sort(new ExternalSorter(RuleOrder.COMPARATOR, 4096, dir), rules, rule -> true, out);
+
+        List<String> expected = rules.stream().sorted(RuleOrder.COMPARATOR).collect(Collectors.toList());
+        assertEquals(expected.size(), written);
+        assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+        // 临时顺串全部删除
+        assertEquals(List.of("out.txt"), files());
+    }
+
+    @Test
+    void writesCrlfSeparatedLines() throws IOException {
+        Path out = dir.resolve("out.txt");
+        sort(new ExternalSorter(Comparator.naturalOrder(), 16, dir), List.of("b", "a"), rule -> true, out);
+        assertArrayEquals("a\r\nb\r\n".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(out));
+    }
+
+    @Test
+    void appliesFilterBeforeSorting() throws IOException {
+        List<String> rules = randomRules(20_000, 3);
+        Predicate<String> filter = rule -> !rule.startsWith("@@");
+        Path out = dir.resolve("out.txt");
+        long written = sort(new ExternalSorter(RuleOrder.COMPARATOR, 4096, dir), rules, filter, out);
+
+        List<String> expected = rules.stream().filter(filter).sorted(RuleOrder.COMPARATOR).collect(Collectors.toList());
+        assertEquals(expected.size(), written);
+        assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void distinctDropsDuplicatesInMemoryAndAcrossRuns() throws IOException {
+        List<String> rules = randomRules(20_000, 4);
+        List<String> expected = rules.stream().distinct().sorted(RuleOrder.COMPARATOR).collect(Collectors.toList());
+        for (long budget : new long[]{1L << 30, 4096}) {
+            Path out = dir.resolve("out-" + budget + ".txt");
+            long written = sort(new ExternalSorter(RuleOrder.COMPARATOR, budget, dir, true), rules, rule -> true, out);
+            assertEquals(expected.size(), written);
+            assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void writesEmptyFileForEmptyInput() throws IOException {
+        Path out = dir.resolve("out.txt");
+        assertEquals(0, sort(new ExternalSorter(RuleOrder.COMPARATOR, 16, dir), List.of(), rule -> true, out));
+        assertEquals(0, Files.size(out));
+    }
+}
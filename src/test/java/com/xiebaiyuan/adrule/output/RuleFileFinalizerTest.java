@@ -0,0 +1,89 @@
+package com.xiebaiyuan.adrule.output;
+
+import cn.hutool.core.io.FileUtil;
+import com.xiebaiyuan.adrule.model.RuleStats;
+import com.xiebaiyuan.adrule.stats.LatencyHistogram;
+import com.xiebaiyuan.adrule.stats.RuleStatsCollector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleFileFinalizerTest {
+
+    @TempDir
+    File dir;
+
+    private static RuleStats stats() {
+        RuleStatsCollector collector = new RuleStatsCollector();
+        collector.start(Collections.emptyList());
+        return collector.build();
+    }
+
+    private static List<String> body(File file) {
+        return FileUtil.readLines(file, StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void publishesSortedBodyWithoutExcludedRules() throws Exception {
+        File file = new File(dir, "all.txt");
+        RuleFileWriter writer = new RuleFileWriter(file, 4, new LatencyHistogram());
+        writer.start();
+        writer.submit(List.of("||b.com^", "||a.com^", "# comment"));
+        writer.submit(List.of("||c.com^", ""));
+        writer.close();
+
+        new RuleFileFinalizer(writer, stats(), Set.of("||c.com^"), 1 << 20).run();
+
+        assertEquals(List.of("||a.com^", "||b.com^"), body(file));
+        assertFalse(writer.getBody().exists());
+    }
+
+    @Test
+    void failedWriteKeepsPreviousList() throws Exception {
+        File file = new File(dir, "all.txt");
+        FileUtil.writeUtf8String("||previous.com^\r\n", file);
+        RuleFileWriter writer = new RuleFileWriter(file, 4, new LatencyHistogram());
+        // 临时正文路径被目录占用，写入线程无法打开
+        assertTrue(writer.getBody().mkdirs());
+        writer.start();
+        writer.submit(List.of("||a.com^"));
+
+        assertThrows(IOException.class, writer::close);
+        assertTrue(writer.isFailed());
+        assertThrows(IOException.class,
+                () -> new RuleFileFinalizer(writer, stats(), Collections.emptySet(), 1 << 20).run());
+        assertEquals(List.of("||previous.com^"), FileUtil.readLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void interruptedSubmitFailsClose() throws Exception {
+        File file = new File(dir, "all.txt");
+        FileUtil.writeUtf8String("||previous.com^\r\n", file);
+        RuleFileWriter writer = new RuleFileWriter(file, 4, new LatencyHistogram());
+        writer.start();
+        Thread.currentThread().interrupt();
+        writer.submit(List.of("||a.com^"));
+        // 清除中断标记，close 才能正常等待写入线程
+        assertTrue(Thread.interrupted());
+
+        assertThrows(IOException.class, writer::close);
+        assertTrue(writer.isFailed());
+        assertThrows(IOException.class,
+                () -> new RuleFileFinalizer(writer, stats(), Collections.emptySet(), 1 << 20).run());
+        assertEquals(List.of("||previous.com^"), FileUtil.readLines(file, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,67 @@
+package com.xiebaiyuan.adrule.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RegexExpanderTest {
+
+    private final RegexExpander expander = new RegexExpander(32);
+
+    @Test
+    void expandsExactNames() {
+        assertEquals(List.of("ads.example.com"), expander.expand("/^ads\\.example\\.com$/"));
+        assertEquals(List.of("a.com", "b.com"), expander.expand("/^(a|b)\\.com$/"));
+        assertEquals(List.of("ad1.com", "ad2.com", "ad3.com"), expander.expand("/^ad[1-3]\\.com$/"));
+        assertEquals(List.of("ad.com", "ads.com"), expander.expand("/^ads?\\.com$/"));
+    }
+
+    @Test
+    void expandsSubdomainPrefixes() {
+        assertEquals(List.of("||foo.com^", "||bar.com^"), expander.expand("/^(\\S+\\.)?(foo|bar)\\.com$/"));
+        assertEquals(List.of("||foo.com^"), expander.expand("/(^|\\.)foo\\.com$/"));
+        assertEquals(List.of("||foo.com^"), expander.expand("/^(?:.*\\.)?foo\\.com$/"));
+    }
+
+    @Test
+    void keepsExceptionPrefixAndImportant() {
+        assertEquals(List.of("@@||foo.com^$important"), expander.expand("@@/^(.*\\.)?foo\\.com$/$important"));
+    }
+
+    @Test
+    void rejectsTopLevelAlternation() {
+        // 锚点只作用于首尾分支，还能匹配 a.com.evil.org 和 xb.net
+        assertNull(expander.expand("/^a\\.com|b\\.net$/"));
+        assertNull(expander.expand("/^(\\S+\\.)?foo\\.com|bar\\.com$/"));
+        assertNull(expander.expand("/(^|\\.)foo\\.com|bar\\.com$/"));
+        assertNull(expander.expand("/^a\\.com$|^b\\.net$/"));
+        assertNull(expander.expand("/^(a|b)\\.com|c\\.com$/"));
+    }
+
+    @Test
+    void rejectsUnanchoredAlternation() {
+        assertNull(expander.expand("/a\\.com|b\\.net/"));
+        assertNull(expander.expand("/(a|b)\\.com$/"));
+        assertNull(expander.expand("/^(a|b)\\.com/"));
+    }
+
+    @Test
+    void rejectsOpenEndedOrInvalidPatterns() {
+        assertNull(expander.expand("/^ads.\\.com$/"));
+        assertNull(expander.expand("/^ad[0-9]+\\.com$/"));
+        assertNull(expander.expand("/^[^.]\\.com$/"));
+        assertNull(expander.expand("/^Ads\\.com$/"));
+        assertNull(expander.expand("/^ads\\.com\\$/"));
+        assertNull(expander.expand("/^(?=a)a\\.com$/"));
+        assertNull(expander.expand("/^ads\\.com$/$denyallow=a.com"));
+    }
+
+    @Test
+    void rejectsExpansionsOverLimit() {
+        assertNull(expander.expand("/^ad[0-9][0-9]\\.com$/"));
+        assertEquals(32, new RegexExpander(32).expand("/^ad[0-9a-v]\\.com$/").size());
+    }
+}
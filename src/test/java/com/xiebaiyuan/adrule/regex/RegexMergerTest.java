@@ -0,0 +1,90 @@
+package com.xiebaiyuan.adrule.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegexMergerTest {
+
+    private static final List<String> RULES = List.of(
+            "/^admarvel\\./", "/^admaster\\./", "/^ad[0-9]+\\.cdn\\./", "/(^|\\.)track(er)?s?\\./",
+            "/^pixel\\.|^beacon\\./", "/^(\\S+\\.)?metrics\\.[a-z]{2,}$/");
+
+    private static boolean matches(List<String> rules, String host) {
+        return rules.stream().anyMatch(rule -> Pattern.compile(RegexVetter.pattern(rule)).matcher(host).find());
+    }
+
+    private static List<String> hosts(int count) {
+        String[] labels = {"admarvel", "admaster", "adma", "ad12", "cdn", "track", "tracker", "trackers", "pixel",
+                "beacon", "metrics", "www", "example", "com", "io", "x"};
+        Random random = new Random(23);
+        List<String> hosts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int parts = 1 + random.nextInt(4);
+            StringBuilder host = new StringBuilder();
+            for (int p = 0; p < parts; p++) {
+                host.append(p == 0 ? "" : ".").append(labels[random.nextInt(labels.length)]);
+            }
+            hosts.add(host.toString());
+        }
+        return hosts;
+    }
+
+    @Test
+    void sharesCommonPrefixes() {
+        RegexMerger.Result result = new RegexMerger(10).merge(List.of("/^admaster\\./", "/^admarvel\\./"),
+                Collections.emptyList());
+        assertEquals(List.of("/^adma(?:rvel\\.|ster\\.)/"), result.getCombined());
+        assertEquals(Set.of("/^admarvel\\./", "/^admaster\\./"), result.getReplaced());
+        assertEquals(1, result.getReport().getRulesAfter());
+    }
+
+    @Test
+    void combinedRulesMatchLikeTheirMembers() {
+        List<String> domains = hosts(2_000);
+        RegexMerger.Result result = new RegexMerger(4).merge(RULES, domains);
+        List<String> after = new ArrayList<>(result.getCombined());
+        RULES.stream().filter(rule -> !result.getReplaced().contains(rule)).forEach(after::add);
+
+        assertTrue(after.size() < RULES.size());
+        // 与合并时未见过的域名比较
+        for (String host : hosts(4_000).subList(2_000, 4_000)) {
+            assertEquals(matches(RULES, host), matches(after, host), host);
+        }
+    }
+
+    @Test
+    void groupsOnlyRulesWithSameExceptionAndModifiers() {
+        RegexMerger.Result result = new RegexMerger(10).merge(List.of("/^ads\\./", "@@/^adv\\./",
+                "/^adx\\./$important", "/^ady\\./$important"), Collections.emptyList());
+        assertEquals(List.of("/^ad(?:x\\.|y\\.)/$important"), result.getCombined());
+        assertEquals(Set.of("/^adx\\./$important", "/^ady\\./$important"), result.getReplaced());
+    }
+
+    @Test
+    void leavesIncompatibleRulesAlone() {
+        RegexMerger.Result result = new RegexMerger(10).merge(List.of("/^(ad)\\1\\./", "/^(?i)ads\\./",
+                "/^(?<n>ad)s\\./"), Collections.emptyList());
+        assertTrue(result.getCombined().isEmpty());
+        assertTrue(result.getReplaced().isEmpty());
+        assertEquals(3, result.getReport().getIncompatible());
+    }
+
+    @Test
+    void splitsLargeGroupsEvenly() {
+        List<String> rules = List.of("/^a1\\./", "/^a2\\./", "/^a3\\./", "/^a4\\./", "/^a5\\./");
+        RegexMerger.Result result = new RegexMerger(2).merge(rules, Collections.emptyList());
+        // 5 条分成 2、2、1，最后一段单独保留
+        assertEquals(2, result.getCombined().size());
+        assertEquals(4, result.getReplaced().size());
+        assertEquals(3, result.getReport().getRulesAfter());
+    }
+}
@@ -0,0 +1,57 @@
+package com.xiebaiyuan.adrule.regex;
+
+import com.xiebaiyuan.adrule.enums.QuarantineReason;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegexVetterTest {
+
+    private static RegexVetter.Result vet(String... rules) {
+        RegexVetter vetter = new RegexVetter(1_000_000, 20);
+        for (String rule : rules) {
+            vetter.add(rule);
+        }
+        return vetter.vet();
+    }
+
+    @Test
+    void extractsPatternFromRule() {
+        assertEquals("^ads\\.", RegexVetter.pattern("/^ads\\./"));
+        assertEquals("^ads\\.", RegexVetter.pattern("@@/^ads\\./"));
+        assertEquals("^ads\\.", RegexVetter.pattern("/^ads\\./$important,client=1.2.3.4"));
+    }
+
+    @Test
+    void passesOrdinaryRules() {
+        RegexVetter.Result result = vet("/^ad[0-9]+\\.example\\.com$/", "@@/^(\\S+\\.)?tracker\\./$important");
+        assertTrue(result.getQuarantined().isEmpty());
+        assertEquals(Set.of("/^ad[0-9]+\\.example\\.com$/", "@@/^(\\S+\\.)?tracker\\./$important"),
+                Set.copyOf(result.getPassed()));
+        assertEquals(2, result.getReport().getVetted());
+    }
+
+    @Test
+    void quarantinesInvalidAndCatastrophicRules() {
+        String invalid = "/^ads[0-9\\./";
+        String catastrophic = "/^(.*)*(.*)*(.*)*@$/";
+        RegexVetter.Result result = vet(invalid, catastrophic, "/^ads\\./");
+
+        assertEquals(Map.of(invalid, QuarantineReason.INVALID, catastrophic, QuarantineReason.STEP_BUDGET),
+                result.getQuarantined());
+        assertEquals(List.of("/^ads\\./"), result.getPassed());
+        assertEquals(Map.of(QuarantineReason.INVALID, 1L, QuarantineReason.STEP_BUDGET, 1L),
+                result.getReport().getQuarantined());
+    }
+
+    @Test
+    void ranksPassedRulesBySteps() {
+        RegexVetter.Result result = vet("/^a/", "/[0-9]+x[0-9]+y/");
+        assertEquals("/[0-9]+x[0-9]+y/", result.getReport().getMostExpensive().get(0).getRule());
+    }
+}
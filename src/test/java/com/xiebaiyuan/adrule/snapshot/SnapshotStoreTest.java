@@ -0,0 +1,104 @@
+package com.xiebaiyuan.adrule.snapshot;
+
+import com.xiebaiyuan.adrule.enums.RejectReason;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotStoreTest {
+
+    private static final String SOURCE = "https://example.com/list.txt";
+
+    private static final String HASH = "content-hash";
+
+    private static final String CHARSET = StandardCharsets.UTF_8.name();
+
+    @TempDir
+    File dir;
+
+    private SnapshotStore store() {
+        return new SnapshotStore(dir, "test");
+    }
+
+    private File commit(SnapshotStore store) throws Exception {
+        try (SnapshotWriter writer = store.writer(SOURCE, CHARSET)) {
+            for (int i = 0; i < 100; i++) {
+                writer.add(new ParsedLine("||ads" + i + ".example.com^", RuleType.DOMAIN, null, false));
+            }
+            byte[] comment = "! comment".getBytes(StandardCharsets.UTF_8);
+            writer.addRejected(RejectReason.values()[0], comment, 0, comment.length);
+            writer.commit(HASH);
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".snap"));
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    @Test
+    void replaysCommittedSnapshotInOrder() throws Exception {
+        SnapshotStore store = store();
+        commit(store);
+
+        List<ParsedLine> lines = new ArrayList<>();
+        assertTrue(store.replay(SOURCE, HASH, CHARSET, lines::add));
+        assertEquals(101, lines.size());
+        assertEquals("||ads0.example.com^", lines.get(0).getLine());
+        assertEquals(RuleType.DOMAIN, lines.get(99).getType());
+        assertTrue(lines.get(100).isCleanRejected());
+    }
+
+    @Test
+    void truncatedSnapshotEmitsNothing() throws Exception {
+        SnapshotStore store = store();
+        File file = commit(store);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // 截掉结束标记和最后几行
+            raf.setLength(raf.length() - 40);
+        }
+
+        List<ParsedLine> lines = new ArrayList<>();
+        assertFalse(store.replay(SOURCE, HASH, CHARSET, lines::add));
+        assertTrue(lines.isEmpty(), () -> lines.stream().map(ParsedLine::getLine).collect(Collectors.joining(",")));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void corruptSnapshotEmitsNothing() throws Exception {
+        SnapshotStore store = store();
+        File file = commit(store);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // 长度不变，改动中间的一个字节
+            long position = raf.length() / 2;
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0x20);
+        }
+
+        List<ParsedLine> lines = new ArrayList<>();
+        assertFalse(store.replay(SOURCE, HASH, CHARSET, lines::add));
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    void changedContentIsNotReplayed() throws Exception {
+        SnapshotStore store = store();
+        commit(store);
+
+        List<ParsedLine> lines = new ArrayList<>();
+        assertFalse(store.replay(SOURCE, "other-hash", CHARSET, lines::add));
+        assertFalse(new SnapshotStore(dir, "other-classifier").replay(SOURCE, HASH, CHARSET, lines::add));
+        assertTrue(lines.isEmpty());
+    }
+}
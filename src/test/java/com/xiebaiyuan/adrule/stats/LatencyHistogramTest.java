@@ -0,0 +1,134 @@
+package com.xiebaiyuan.adrule.stats;
+
+import com.xiebaiyuan.adrule.model.LatencyReport;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    /**
+     * 每个 2 的幂区间分成 32 个桶，上界与值的相对误差不超过 1/32
+     */
+    private static void assertWithinBucket(long value, long bound) {
+        assertTrue(bound >= value, () -> value + " => " + bound);
+        assertTrue(bound - value <= value / 32, () -> value + " => " + bound);
+    }
+
+    @Test
+    void linearBucketsBelow64() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.upperBound((int) value));
+        }
+        assertEquals(64, LatencyHistogram.index(64));
+        assertEquals(64, LatencyHistogram.index(65));
+        assertEquals(65, LatencyHistogram.upperBound(64));
+        assertEquals(65, LatencyHistogram.index(66));
+    }
+
+    @Test
+    void bucketsAroundPowersOfTwo() {
+        for (int bit = 6; bit < 63; bit++) {
+            long power = 1L << bit;
+            for (long value : new long[]{power - 1, power, power + 1}) {
+                int index = LatencyHistogram.index(value);
+                assertWithinBucket(value, LatencyHistogram.upperBound(index));
+                // 上一个桶的上界小于值，桶首尾相接
+                assertTrue(LatencyHistogram.upperBound(index - 1) < value, () -> "value " + value);
+            }
+            // 2 的幂总是新桶的第一个值
+            assertEquals(power - 1, LatencyHistogram.upperBound(LatencyHistogram.index(power) - 1));
+        }
+    }
+
+    @Test
+    void lastBucketHoldsMaxValue() {
+        int index = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(LatencyHistogram.BUCKETS - 1, index);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(index));
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int index = 1; index < LatencyHistogram.BUCKETS; index++) {
+            long lower = LatencyHistogram.upperBound(index - 1) + 1;
+            assertEquals(index, LatencyHistogram.index(lower));
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.upperBound(index)));
+        }
+    }
+
+    @Test
+    void percentilesMatchSortedArray() {
+        Random random = new Random(19);
+        for (int round = 0; round < 50; round++) {
+            int n = 1 + random.nextInt(5_000);
+            long[] values = new long[n];
+            long[] counts = new long[LatencyHistogram.BUCKETS];
+            long max = 0;
+            for (int i = 0; i < n; i++) {
+                // 对数分布，覆盖纳秒到秒
+                values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+                counts[LatencyHistogram.index(values[i])]++;
+                max = Math.max(max, values[i]);
+            }
+            Arrays.sort(values);
+            for (double ratio : new double[]{0.0, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+                long expected = values[(int) Math.max(0, Math.ceil(n * ratio) - 1)];
+                long actual = LatencyHistogram.percentile(counts, n, max, ratio);
+                assertWithinBucket(expected, actual);
+                assertTrue(actual <= max);
+            }
+        }
+        assertEquals(0, LatencyHistogram.percentile(new long[LatencyHistogram.BUCKETS], 0, 0, 0.5));
+    }
+
+    @Test
+    void mergesShardsFromPlatformAndVirtualThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try (ExecutorService platform = Executors.newFixedThreadPool(4);
+             ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < 8; t++) {
+                ExecutorService executor = t % 2 == 0 ? platform : virtual;
+                executor.execute(() -> {
+                    for (int i = 1; i <= 1_000; i++) {
+                        histogram.record(i * 1_000L);
+                    }
+                });
+            }
+        }
+        LatencyReport report = histogram.snapshot();
+        assertEquals(8_000, report.getCount());
+        assertEquals(1_000.0, report.getMaxMicros());
+        assertEquals(500.5, report.getMeanMicros(), 0.1);
+        assertTrue(Math.abs(report.getP50Micros() - 500) <= 500 / 32.0, () -> "p50 " + report.getP50Micros());
+    }
+
+    @Test
+    void mergesRecordersWithSharedShards() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try (ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int t = 0; t < 4; t++) {
+                virtual.execute(() -> {
+                    // 长期线程用自己的分片
+                    LatencyHistogram.Recorder recorder = histogram.newRecorder();
+                    for (int i = 1; i <= 1_000; i++) {
+                        recorder.record(i * 1_000L);
+                    }
+                });
+            }
+            for (int t = 0; t < 100; t++) {
+                virtual.execute(() -> histogram.record(-1));
+            }
+        }
+        LatencyReport report = histogram.snapshot();
+        assertEquals(4_100, report.getCount());
+        assertEquals(1_000.0, report.getMaxMicros());
+    }
+}
@@ -0,0 +1,60 @@
+package com.xiebaiyuan.adrule.stats;
+
+import com.xiebaiyuan.adrule.enums.RuleType;
+import com.xiebaiyuan.adrule.model.RuleStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RuleStatsCollectorTest {
+
+    @Test
+    void headerCountsExcludeRemovedRegexRules() {
+        RuleStatsCollector collector = new RuleStatsCollector();
+        collector.start(List.of("local.txt"));
+        SourceStats source = collector.newSource("local.txt");
+        for (int i = 0; i < 10; i++) {
+            source.accept(RuleType.REGEX);
+        }
+        for (int i = 0; i < 5; i++) {
+            source.accept(RuleType.DOMAIN);
+        }
+        // 隔离 2 条，4 条被 1 条合并规则替代
+        collector.setRegexAdjustment(6, 1);
+
+        RuleStats stats = collector.build();
+        assertEquals(5, stats.getRegexRules());
+        assertEquals(5, stats.getDomainRules());
+        assertEquals(10, stats.getAdghRules());
+        assertEquals(10, stats.getTotalRules());
+    }
+
+    @Test
+    void headerCountsExcludeSubsumedRules() {
+        RuleStatsCollector collector = new RuleStatsCollector();
+        collector.start(List.of("local.txt"));
+        SourceStats source = collector.newSource("local.txt");
+        for (int i = 0; i < 6; i++) {
+            source.accept(RuleType.DOMAIN);
+        }
+        for (int i = 0; i < 4; i++) {
+            source.accept(RuleType.HOSTS);
+        }
+        source.accept(RuleType.REGEX);
+        // 3 条 DOMAIN、1 条 HOSTS 被父域名覆盖，hosts 文件不裁剪
+        collector.setSubsumedRules(3, 1);
+        collector.setSubsumedByParent(Map.of("b.com", 1, "a.com", 3));
+
+        RuleStats stats = collector.build();
+        assertEquals(3, stats.getDomainRules());
+        assertEquals(4, stats.getHostsRules());
+        assertEquals(4, stats.getAdghRules());
+        assertEquals(7, stats.getTotalRules());
+        assertEquals(4, stats.getSubsumedRules());
+        assertEquals(List.of("a.com", "b.com"),
+                List.copyOf(collector.report(stats, Map.of()).getSubsumedByParent().keySet()));
+    }
+}
@@ -0,0 +1,99 @@
+package com.xiebaiyuan.adrule.trie;
+
+import com.xiebaiyuan.adrule.dedup.RuleCanonicalizer;
+import com.xiebaiyuan.adrule.enums.RuleType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DomainPrunerTest {
+
+    private static Set<String> prune(String... lines) {
+        DomainPruner pruner = new DomainPruner();
+        for (String line : lines) {
+            add(pruner, line);
+        }
+        return pruner.prune();
+    }
+
+    private static void add(DomainPruner pruner, String line) {
+        RuleType type = line.startsWith("0.0.0.0 ") ? RuleType.HOSTS : RuleType.DOMAIN;
+        pruner.add(line, RuleCanonicalizer.parse(line), type);
+    }
+
+    @Test
+    void parentBlockCoversSubdomainRules() {
+        Set<String> redundant = prune("||example.com^", "||ads.example.com^", "cdn.example.com",
+                "0.0.0.0 a.b.example.com", "||example.com.cn^", "||notexample.com^");
+        assertEquals(Set.of("||ads.example.com^", "cdn.example.com", "0.0.0.0 a.b.example.com"), redundant);
+    }
+
+    @Test
+    void subdomainBlockCoversExactRuleForSameName() {
+        assertEquals(Set.of("example.com", "|example.com^"),
+                prune("||example.com^", "example.com", "|example.com^"));
+    }
+
+    @Test
+    void exactParentDoesNotCoverSubdomains() {
+        assertTrue(prune("|example.com^", "example.com", "||ads.example.com^").isEmpty());
+    }
+
+    @Test
+    void exceptionOnPathKeepsRules() {
+        Set<String> redundant = prune("||example.com^", "@@||ads.example.com^",
+                "||ads.example.com^", "||x.ads.example.com^", "||other.example.com^");
+        assertEquals(Set.of("||other.example.com^"), redundant);
+    }
+
+    @Test
+    void exceptionBelowTargetDoesNotKeepIt() {
+        assertEquals(Set.of("||ads.example.com^"),
+                prune("||example.com^", "||ads.example.com^", "@@||x.ads.example.com^"));
+    }
+
+    @Test
+    void onlyUnrestrictedParentsPrune() {
+        assertEquals(Set.of("||ads.example.com^"), prune("||example.com^$important", "||ads.example.com^"));
+        assertTrue(prune("||example.com^$dnstype=AAAA", "||ads.example.com^").isEmpty());
+        assertTrue(prune("||example.com^", "||ads.example.com^$important").isEmpty());
+    }
+
+    @Test
+    void countsRulesPerParent() {
+        DomainPruner pruner = new DomainPruner();
+        for (String line : List.of("||example.com^", "||a.example.com^", "||b.example.com^", "||other.org^", "||x.other.org^")) {
+            add(pruner, line);
+        }
+        pruner.prune();
+        assertEquals(2, pruner.getSubsumedByParent().get("example.com"));
+        assertEquals(1, pruner.getSubsumedByParent().get("other.org"));
+    }
+
+    @Test
+    void countsSubsumedRulesByType() {
+        DomainPruner pruner = new DomainPruner();
+        for (String line : List.of("||example.com^", "||ads.example.com^", "cdn.example.com",
+                "0.0.0.0 a.example.com", "0.0.0.0 other.org")) {
+            add(pruner, line);
+        }
+        assertEquals(3, pruner.prune().size());
+        assertEquals(2, pruner.getSubsumed(RuleType.DOMAIN));
+        assertEquals(1, pruner.getSubsumed(RuleType.HOSTS));
+    }
+
+    @Test
+    void samplesSortedDomainsWithoutExceptions() {
+        DomainPruner pruner = new DomainPruner();
+        for (String line : List.of("||d.com^", "@@||c.com^", "||a.com^", "b.com", "||a.com^$important")) {
+            add(pruner, line);
+        }
+        assertEquals(List.of("a.com", "b.com", "d.com"), pruner.sample(10));
+        assertEquals(List.of("a.com", "b.com"), pruner.sample(2));
+        assertTrue(pruner.sample(0).isEmpty());
+    }
+}